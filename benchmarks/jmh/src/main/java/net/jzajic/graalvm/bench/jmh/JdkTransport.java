@@ -0,0 +1,35 @@
+package net.jzajic.graalvm.bench.jmh;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import net.jzajic.graalvm.bench.Transport;
+
+/**
+ * The unix domain channels built into the JDK since 16
+ */
+final class JdkTransport implements Transport {
+
+	static final JdkTransport INSTANCE = new JdkTransport();
+
+	@Override
+	public String name() {
+		return "jdk";
+	}
+
+	@Override
+	public ServerSocketChannel bind(String path) throws IOException {
+		ServerSocketChannel ssc = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		ssc.bind(UnixDomainSocketAddress.of(path));
+		return ssc;
+	}
+
+	@Override
+	public SocketChannel connect(String path) throws IOException {
+		return SocketChannel.open(UnixDomainSocketAddress.of(path));
+	}
+
+}
@@ -0,0 +1,81 @@
+package net.jzajic.graalvm.bench.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.jzajic.graalvm.bench.ChannelPair;
+import net.jzajic.graalvm.bench.Workloads;
+
+/**
+ * Round trip latency of a message echoed by a peer thread, and the cost of
+ * connecting, accepting and closing a connection.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LatencyBenchmark {
+
+	@State(Scope.Thread)
+	public static class Echo {
+		@Param({ "1", "64", "1024", "16384" })
+		int messageSize;
+
+		ChannelPair pair;
+		ByteBuffer buf;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			pair = ChannelPair.open(JdkTransport.INSTANCE);
+			buf = Workloads.buffer(messageSize, true);
+			Workloads.startEcho(pair.server, messageSize);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			pair.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Listener {
+		ChannelPair pair;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			pair = ChannelPair.open(JdkTransport.INSTANCE);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			pair.close();
+		}
+	}
+
+	@Benchmark
+	public void pingPong(Echo s) throws IOException {
+		Workloads.pingPong(s.pair.client, s.buf);
+	}
+
+	@Benchmark
+	public void connectClose(Listener s) throws IOException {
+		Workloads.connectClose(JdkTransport.INSTANCE, s.pair);
+	}
+
+}
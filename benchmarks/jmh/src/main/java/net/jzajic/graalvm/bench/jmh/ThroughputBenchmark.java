@@ -0,0 +1,111 @@
+package net.jzajic.graalvm.bench.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.jzajic.graalvm.bench.ChannelPair;
+import net.jzajic.graalvm.bench.Workloads;
+
+/**
+ * Stream throughput of single-buffer and vectored reads and writes, for
+ * heap and direct buffers of several sizes. Bytes per second are the
+ * operation rate times bufferSize.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputBenchmark {
+
+	// number of buffers of a vectored operation, bufferSize is split among them
+	static final int VECTOR = 4;
+
+	@State(Scope.Thread)
+	public static class Writer {
+		@Param({ "64", "1024", "8192", "65536" })
+		int bufferSize;
+
+		@Param({ "true", "false" })
+		boolean direct;
+
+		ChannelPair pair;
+		ByteBuffer buf;
+		ByteBuffer[] bufs;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			pair = ChannelPair.open(JdkTransport.INSTANCE);
+			buf = Workloads.buffer(bufferSize, direct);
+			bufs = Workloads.vector(VECTOR, Math.max(1, bufferSize / VECTOR), direct);
+			Workloads.startSink(pair.server, 65536);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			pair.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Reader {
+		@Param({ "64", "1024", "8192", "65536" })
+		int bufferSize;
+
+		@Param({ "true", "false" })
+		boolean direct;
+
+		ChannelPair pair;
+		ByteBuffer buf;
+		ByteBuffer[] bufs;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			pair = ChannelPair.open(JdkTransport.INSTANCE);
+			buf = Workloads.buffer(bufferSize, direct);
+			bufs = Workloads.vector(VECTOR, Math.max(1, bufferSize / VECTOR), direct);
+			Workloads.startSource(pair.server, 65536);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			pair.close();
+		}
+	}
+
+	@Benchmark
+	public void write(Writer s) throws IOException {
+		Workloads.writeFully(s.pair.client, s.buf);
+	}
+
+	@Benchmark
+	public void read(Reader s) throws IOException {
+		Workloads.readFully(s.pair.client, s.buf);
+	}
+
+	@Benchmark
+	public void writeVectored(Writer s) throws IOException {
+		Workloads.writeVector(s.pair.client, s.bufs);
+	}
+
+	@Benchmark
+	public void readVectored(Reader s) throws IOException {
+		Workloads.readVector(s.pair.client, s.bufs);
+	}
+
+}
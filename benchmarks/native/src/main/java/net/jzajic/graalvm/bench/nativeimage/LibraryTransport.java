@@ -0,0 +1,42 @@
+package net.jzajic.graalvm.bench.nativeimage;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import net.jzajic.graalvm.bench.Transport;
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+import net.jzajic.graalvm.socket.channel.UnixSocketSelectorProvider;
+
+/**
+ * The channels of this library
+ */
+final class LibraryTransport implements Transport {
+
+	static final LibraryTransport INSTANCE = new LibraryTransport();
+
+	@Override
+	public String name() {
+		return "graal-unixsocket";
+	}
+
+	@Override
+	public ServerSocketChannel bind(String path) throws IOException {
+		ServerSocketChannel ssc = UnixSocketSelectorProvider.provider().openServerSocketChannel();
+		ssc.bind(new UnixSocketAddress(path));
+		return ssc;
+	}
+
+	@Override
+	public SocketChannel connect(String path) throws IOException {
+		SocketChannel sc = UnixSocketSelectorProvider.provider().openSocketChannel();
+		try {
+			sc.connect(new UnixSocketAddress(path));
+			return sc;
+		} catch (IOException | RuntimeException x) {
+			sc.close();
+			throw x;
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package net.jzajic.graalvm.bench.nativeimage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.jzajic.graalvm.bench.ChannelPair;
+import net.jzajic.graalvm.bench.Transport;
+import net.jzajic.graalvm.bench.Workloads;
+
+/**
+ * Runs the workloads of the JMH benchmarks on this library in a native
+ * image, with the same parameters and iteration counts, and prints results
+ * in the units JMH uses: operations per second for throughput, and
+ * percentiles in microseconds for latency.
+ *
+ * Usage: unixsocket-benchmarks [filter]
+ *
+ * Only benchmarks whose name contains filter are run.
+ */
+public final class NativeBenchmarks {
+
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 2_000_000_000L;
+
+	private static final int[] BUFFER_SIZES = { 64, 1024, 8192, 65536 };
+	private static final int[] MESSAGE_SIZES = { 1, 64, 1024, 16384 };
+	private static final int VECTOR = 4;
+
+	// maximum number of latency samples kept per benchmark
+	private static final int MAX_SAMPLES = 1 << 22;
+
+	private interface Op {
+		void run() throws IOException;
+	}
+
+	private final Transport transport = LibraryTransport.INSTANCE;
+	private final String filter;
+
+	private NativeBenchmarks(String filter) {
+		this.filter = filter;
+	}
+
+	public static void main(String[] args) throws IOException {
+		new NativeBenchmarks(args.length > 0 ? args[0] : "").runAll();
+	}
+
+	private void runAll() throws IOException {
+		System.out.println("# transport: " + transport.name());
+		System.out.println(String.format(Locale.ROOT, "%-40s %-24s %5s %14s %14s  %s",
+				"Benchmark", "Params", "Mode", "Score", "Error", "Units"));
+		for (int size : BUFFER_SIZES) {
+			for (boolean direct : new boolean[] { true, false }) {
+				String params = "bufferSize=" + size + ",direct=" + direct;
+				ByteBuffer buf = Workloads.buffer(size, direct);
+				ByteBuffer[] bufs = Workloads.vector(VECTOR, Math.max(1, size / VECTOR), direct);
+				try (ChannelPair pair = writePair()) {
+					throughput("ThroughputBenchmark.write", params, () -> Workloads.writeFully(pair.client, buf));
+					throughput("ThroughputBenchmark.writeVectored", params,
+							() -> Workloads.writeVector(pair.client, bufs));
+				}
+				try (ChannelPair pair = readPair()) {
+					throughput("ThroughputBenchmark.read", params, () -> Workloads.readFully(pair.client, buf));
+					throughput("ThroughputBenchmark.readVectored", params,
+							() -> Workloads.readVector(pair.client, bufs));
+				}
+			}
+		}
+		for (int size : MESSAGE_SIZES) {
+			ByteBuffer buf = Workloads.buffer(size, true);
+			try (ChannelPair pair = ChannelPair.open(transport)) {
+				Workloads.startEcho(pair.server, size);
+				latency("LatencyBenchmark.pingPong", "messageSize=" + size, () -> Workloads.pingPong(pair.client, buf));
+			}
+		}
+		try (ChannelPair pair = ChannelPair.open(transport)) {
+			latency("LatencyBenchmark.connectClose", "", () -> Workloads.connectClose(transport, pair));
+		}
+	}
+
+	private ChannelPair writePair() throws IOException {
+		ChannelPair pair = ChannelPair.open(transport);
+		Workloads.startSink(pair.server, 65536);
+		return pair;
+	}
+
+	private ChannelPair readPair() throws IOException {
+		ChannelPair pair = ChannelPair.open(transport);
+		Workloads.startSource(pair.server, 65536);
+		return pair;
+	}
+
+	private boolean skip(String name) {
+		return !name.contains(filter);
+	}
+
+	private void throughput(String name, String params, Op op) throws IOException {
+		if (skip(name))
+			return;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			iteration(op, null);
+		double[] scores = new double[MEASUREMENT_ITERATIONS];
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+			scores[i] = iteration(op, null);
+		double mean = 0;
+		for (double s : scores)
+			mean += s;
+		mean /= scores.length;
+		double var = 0;
+		for (double s : scores)
+			var += (s - mean) * (s - mean);
+		double error = Math.sqrt(var / (scores.length - 1));
+		print(name, params, "thrpt", mean, error, "ops/s");
+	}
+
+	private void latency(String name, String params, Op op) throws IOException {
+		if (skip(name))
+			return;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			iteration(op, null);
+		Samples samples = new Samples();
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+			iteration(op, samples);
+		long[] s = Arrays.copyOf(samples.values, samples.count);
+		Arrays.sort(s);
+		print(name, params, "sample", mean(s) / 1000.0, Double.NaN, "us/op");
+		for (double p : new double[] { 0.50, 0.90, 0.99, 0.999, 1.0 }) {
+			long v = s[Math.min(s.length - 1, (int) (p * s.length))];
+			print(name + ":p" + (p * 100), params, "sample", v / 1000.0, Double.NaN, "us/op");
+		}
+	}
+
+	/**
+	 * Runs op for one iteration, recording the time of each invocation if
+	 * samples is not null.
+	 *
+	 * @return operations per second
+	 */
+	private static double iteration(Op op, Samples samples) throws IOException {
+		long ops = 0;
+		long start = System.nanoTime();
+		long deadline = start + ITERATION_NANOS;
+		long now = start;
+		do {
+			op.run();
+			long t = System.nanoTime();
+			if (samples != null)
+				samples.add(t - now);
+			now = t;
+			ops++;
+		} while (now < deadline);
+		return ops * 1e9 / (now - start);
+	}
+
+	private static double mean(long[] values) {
+		double sum = 0;
+		for (long v : values)
+			sum += v;
+		return (values.length == 0) ? 0 : sum / values.length;
+	}
+
+	private static void print(String name, String params, String mode, double score, double error, String units) {
+		System.out.println(String.format(Locale.ROOT, "%-40s %-24s %5s %14.3f %14s  %s", name, params, mode, score,
+				Double.isNaN(error) ? "" : String.format(Locale.ROOT, "+- %.3f", error), units));
+	}
+
+	private static final class Samples {
+		long[] values = new long[1024];
+		int count;
+
+		void add(long v) {
+			if (count == values.length) {
+				if (count == MAX_SAMPLES)
+					return;
+				values = Arrays.copyOf(values, Math.min(2 * count, MAX_SAMPLES));
+			}
+			values[count++] = v;
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package net.jzajic.graalvm.bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A listening socket in a temporary directory and one connection to it,
+ * both ends in blocking mode.
+ */
+public final class ChannelPair implements Closeable {
+
+	private final Path dir;
+	private final String path;
+	private final ServerSocketChannel listener;
+
+	public final SocketChannel client;
+	public final SocketChannel server;
+
+	private ChannelPair(Path dir, String path, ServerSocketChannel listener, SocketChannel client,
+			SocketChannel server) {
+		this.dir = dir;
+		this.path = path;
+		this.listener = listener;
+		this.client = client;
+		this.server = server;
+	}
+
+	public static ChannelPair open(Transport transport) throws IOException {
+		Path dir = Files.createTempDirectory("unixsocket-bench");
+		String path = dir.resolve("bench.sock").toString();
+		ServerSocketChannel listener = transport.bind(path);
+		SocketChannel client = null;
+		try {
+			client = transport.connect(path);
+			SocketChannel server = listener.accept();
+			return new ChannelPair(dir, path, listener, client, server);
+		} catch (IOException | RuntimeException x) {
+			if (client != null)
+				client.close();
+			listener.close();
+			throw x;
+		}
+	}
+
+	/**
+	 * Returns the path of the listening socket, for connect churn
+	 */
+	public String path() {
+		return path;
+	}
+
+	public ServerSocketChannel listener() {
+		return listener;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			client.close();
+			server.close();
+			listener.close();
+		} finally {
+			Files.deleteIfExists(dir.resolve("bench.sock"));
+			Files.deleteIfExists(dir);
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package net.jzajic.graalvm.bench;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Creates unix stream socket channels of one implementation, so the same
+ * workloads run on this library and on the JDK built-in channels.
+ */
+public interface Transport {
+
+	String name();
+
+	/**
+	 * Returns a blocking server channel bound to the socket path
+	 */
+	ServerSocketChannel bind(String path) throws IOException;
+
+	/**
+	 * Returns a blocking channel connected to the socket path
+	 */
+	SocketChannel connect(String path) throws IOException;
+
+}
@@ -0,0 +1,151 @@
+package net.jzajic.graalvm.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The measured operations and the peers that keep the other end of a
+ * {@link ChannelPair} busy. Each operation moves the whole buffer, so the
+ * throughput in bytes is the operation rate times the buffer size.
+ */
+public final class Workloads {
+
+	private Workloads() {
+	}
+
+	public static ByteBuffer buffer(int size, boolean direct) {
+		ByteBuffer b = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+		for (int i = 0; i < size; i++)
+			b.put(i, (byte) i);
+		return b;
+	}
+
+	/**
+	 * Returns count buffers of size bytes each, for vectored I/O
+	 */
+	public static ByteBuffer[] vector(int count, int size, boolean direct) {
+		ByteBuffer[] bufs = new ByteBuffer[count];
+		for (int i = 0; i < count; i++)
+			bufs[i] = buffer(size, direct);
+		return bufs;
+	}
+
+	public static void writeFully(SocketChannel ch, ByteBuffer buf) throws IOException {
+		buf.clear();
+		while (buf.hasRemaining())
+			ch.write(buf);
+	}
+
+	public static void readFully(SocketChannel ch, ByteBuffer buf) throws IOException {
+		buf.clear();
+		while (buf.hasRemaining()) {
+			if (ch.read(buf) < 0)
+				throw new EOFException();
+		}
+	}
+
+	public static void writeVector(SocketChannel ch, ByteBuffer[] bufs) throws IOException {
+		long remaining = 0;
+		for (ByteBuffer b : bufs) {
+			b.clear();
+			remaining += b.remaining();
+		}
+		while (remaining > 0)
+			remaining -= ch.write(bufs);
+	}
+
+	public static void readVector(SocketChannel ch, ByteBuffer[] bufs) throws IOException {
+		long remaining = 0;
+		for (ByteBuffer b : bufs) {
+			b.clear();
+			remaining += b.remaining();
+		}
+		while (remaining > 0) {
+			long n = ch.read(bufs);
+			if (n < 0)
+				throw new EOFException();
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Sends the buffer and waits for the echo of the peer started with
+	 * {@link #startEcho(SocketChannel, int)}.
+	 */
+	public static void pingPong(SocketChannel ch, ByteBuffer buf) throws IOException {
+		writeFully(ch, buf);
+		readFully(ch, buf);
+	}
+
+	/**
+	 * Connects to the listener of the pair, accepts the connection and
+	 * closes both ends.
+	 */
+	public static void connectClose(Transport transport, ChannelPair pair) throws IOException {
+		SocketChannel client = transport.connect(pair.path());
+		try {
+			pair.listener().accept().close();
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Starts a thread that reads and discards everything until the channel
+	 * is closed.
+	 */
+	public static Thread startSink(SocketChannel ch, int bufferSize) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(bufferSize);
+		return start("sink", () -> {
+			for (;;) {
+				buf.clear();
+				if (ch.read(buf) < 0)
+					return;
+			}
+		});
+	}
+
+	/**
+	 * Starts a thread that writes until the channel is closed.
+	 */
+	public static Thread startSource(SocketChannel ch, int bufferSize) {
+		ByteBuffer buf = buffer(bufferSize, true);
+		return start("source", () -> {
+			for (;;)
+				writeFully(ch, buf);
+		});
+	}
+
+	/**
+	 * Starts a thread that sends back every message of size bytes.
+	 */
+	public static Thread startEcho(SocketChannel ch, int size) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(size);
+		return start("echo", () -> {
+			for (;;) {
+				readFully(ch, buf);
+				writeFully(ch, buf);
+			}
+		});
+	}
+
+	private interface Peer {
+		void run() throws IOException;
+	}
+
+	private static Thread start(String name, Peer peer) {
+		Thread t = new Thread(() -> {
+			try {
+				peer.run();
+			} catch (IOException x) {
+				// the pair was closed
+			}
+		}, "bench-" + name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+}
@@ -0,0 +1,28 @@
+package net.jzajic.graalvm.headers;
+
+import java.nio.Buffer;
+
+import com.oracle.svm.core.SubstrateUtil;
+import com.oracle.svm.core.annotate.Alias;
+import com.oracle.svm.core.annotate.TargetClass;
+
+public class BufferUtils {
+
+	@TargetClass(java.nio.Buffer.class)
+	public static final class Target_java_nio_Buffer {
+
+		@Alias long address;
+	}
+
+	public static final class Util_java_nio_Buffer {
+
+		/**
+		 * Returns the native address of the first element of a direct
+		 * buffer.
+		 */
+		public static long getAddress(Buffer buffer) {
+			return SubstrateUtil.cast(buffer, Target_java_nio_Buffer.class).address;
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package net.jzajic.graalvm.headers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.graalvm.nativeimage.c.CContext;
+import org.graalvm.nativeimage.c.constant.CConstant;
+import org.graalvm.nativeimage.c.function.CFunction;
+
+import net.jzajic.graalvm.headers.Epoll.EpollHeaders;
+
+/**
+ * Parts of sys/epoll.h not exposed by LinuxEPoll
+ */
+@CContext(EpollHeaders.class)
+public class Epoll {
+
+	static class EpollHeaders implements CContext.Directives {
+		@Override
+		public List<String> getHeaderFiles() {
+			return Arrays.asList("<sys/epoll.h>");
+		}
+	}
+
+	@CConstant
+	public static native int EPOLL_CLOEXEC();
+
+	@CConstant
+	public static native int EPOLLONESHOT();
+
+	@CConstant
+	public static native int EPOLL_CTL_ADD();
+
+	@CConstant
+	public static native int EPOLL_CTL_MOD();
+
+	@CConstant
+	public static native int EPOLL_CTL_DEL();
+
+	@CFunction
+	public static native int epoll_create1(int flags);
+
+}
@@ -1,6 +1,7 @@
 package net.jzajic.graalvm.headers;
 
 import java.io.FileDescriptor;
+import java.nio.channels.FileChannel;
 
 import com.oracle.svm.core.SubstrateUtil;
 import com.oracle.svm.core.annotate.Alias;
@@ -26,5 +27,27 @@ public class FdUtils {
       	SubstrateUtil.cast(descriptor, Target_java_io_FileDescriptor.class).fd = fd;
       }
   }
+
+	@TargetClass(className = "sun.nio.ch.FileChannelImpl")
+  public static final class Target_sun_nio_ch_FileChannelImpl {
+
+      @Alias FileDescriptor fd;
+  }
+
+  public static final class Util_sun_nio_ch_FileChannelImpl {
+
+      /**
+       * Returns the file descriptor value of a FileChannel opened by the
+       * JDK, or -1 for other FileChannel implementations.
+       */
+      public static int getFD(FileChannel channel) {
+          // matched through the substitution, naming the JDK class would
+          // reference internal API
+          if (!((Object) channel instanceof Target_sun_nio_ch_FileChannelImpl))
+              return -1;
+          FileDescriptor descriptor = SubstrateUtil.cast(channel, Target_sun_nio_ch_FileChannelImpl.class).fd;
+          return Util_java_io_FileDescriptor.getFD(descriptor);
+      }
+  }
 	
 }
@@ -0,0 +1,74 @@
+package net.jzajic.graalvm.headers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.graalvm.nativeimage.c.CContext;
+import org.graalvm.nativeimage.c.constant.CConstant;
+import org.graalvm.nativeimage.c.function.CFunction;
+import org.graalvm.nativeimage.c.struct.CField;
+import org.graalvm.nativeimage.c.struct.CFieldAddress;
+import org.graalvm.nativeimage.c.struct.CStruct;
+import org.graalvm.word.PointerBase;
+
+import com.oracle.svm.core.posix.headers.Socket;
+
+import net.jzajic.graalvm.headers.LinuxSocket.LinuxSocketHeaders;
+
+/**
+ * Linux specific parts of sys/socket.h not exposed by Socket
+ */
+@CContext(LinuxSocketHeaders.class)
+public class LinuxSocket {
+
+	static class LinuxSocketHeaders implements CContext.Directives {
+		@Override
+		public List<String> getHeaderFiles() {
+			return Arrays.asList("<sys/socket.h>");
+		}
+
+		@Override
+		public List<String> getMacroDefinitions() {
+			return Arrays.asList("_GNU_SOURCE");
+		}
+	}
+
+	@CConstant
+	public static native int SOCK_NONBLOCK();
+
+	@CConstant
+	public static native int SOCK_CLOEXEC();
+
+	@CConstant
+	public static native int SOMAXCONN();
+
+	@CConstant
+	public static native int MSG_WAITFORONE();
+
+	@CConstant
+	public static native int MSG_CMSG_CLOEXEC();
+
+	/* Maximum number of descriptors in one SCM_RIGHTS message, see unix(7) */
+	public static final int SCM_MAX_FD = 253;
+
+	@CStruct(value = "mmsghdr", addStructKeyword = true)
+	public interface mmsghdr extends PointerBase {
+
+		@CFieldAddress
+		Socket.msghdr msg_hdr(); /* message header */
+
+		@CField
+		int msg_len(); /* number of bytes transmitted */
+
+		@CField
+		void set_msg_len(int value);
+
+	}
+
+	@CFunction
+	public static native int sendmmsg(int sockfd, mmsghdr msgvec, int vlen, int flags);
+
+	@CFunction
+	public static native int recvmmsg(int sockfd, mmsghdr msgvec, int vlen, int flags, PointerBase timeout);
+
+}
@@ -0,0 +1,96 @@
+package net.jzajic.graalvm.posix;
+
+import java.io.IOException;
+
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.word.Pointer;
+
+import com.oracle.svm.core.headers.Errno;
+import com.oracle.svm.core.posix.headers.linux.LinuxEPoll;
+
+import net.jzajic.graalvm.headers.Epoll;
+
+/**
+ * Provides access to the Linux epoll facility.
+ *
+ * The EPOLLIN/EPOLLOUT/EPOLLERR/EPOLLHUP bits have the same values as their
+ * poll counterparts on Linux, so callers use the Poll constants for events.
+ */
+public class EPoll {
+
+	public static final int SIZEOF_EPOLLEVENT = SizeOf.get(LinuxEPoll.epoll_event.class);
+
+	public static int create() throws IOException {
+		int epfd = Epoll.epoll_create1(Epoll.EPOLL_CLOEXEC());
+		if (epfd < 0) {
+			throw new IOException(Native.getLastErrorString());
+		}
+		return epfd;
+	}
+
+	/**
+	 * Adds, modifies or removes the registration of fd.
+	 *
+	 * @return 0 on success, otherwise the errno value
+	 */
+	public static int ctl(int epfd, int opcode, int fd, int events) {
+		LinuxEPoll.epoll_event event = StackValue.get(LinuxEPoll.epoll_event.class);
+		event.events(events);
+		event.addressOfdata().fd(fd);
+		if (LinuxEPoll.epoll_ctl(epfd, opcode, fd, event) < 0) {
+			return Errno.errno();
+		}
+		return 0;
+	}
+
+	public static int ctlAdd(int epfd, int fd, int events) {
+		return ctl(epfd, Epoll.EPOLL_CTL_ADD(), fd, events);
+	}
+
+	public static int ctlMod(int epfd, int fd, int events) {
+		return ctl(epfd, Epoll.EPOLL_CTL_MOD(), fd, events);
+	}
+
+	public static int ctlDel(int epfd, int fd) {
+		return ctl(epfd, Epoll.EPOLL_CTL_DEL(), fd, 0);
+	}
+
+	/**
+	 * Waits for events, an interrupted wait is reported as zero events.
+	 */
+	public static int wait(int epfd, LinuxEPoll.epoll_event pollArray, int numfds, int timeout) throws IOException {
+		long start = SyscallRecorder.begin();
+		int res = LinuxEPoll.epoll_wait(epfd, pollArray, numfds, timeout);
+		SyscallRecorder.end(start, SyscallRecorder.EPOLL_WAIT, epfd, timeout, res);
+		if (res < 0) {
+			if (Errno.errno() == Errno.EINTR()) {
+				return 0;
+			}
+			throw new IOException(Native.getLastErrorString());
+		}
+		return res;
+	}
+
+	public static LinuxEPoll.epoll_event allocatePollArray(int count) {
+		return UnmanagedMemory.malloc(count * SIZEOF_EPOLLEVENT);
+	}
+
+	public static void freePollArray(LinuxEPoll.epoll_event pollArray) {
+		UnmanagedMemory.free(pollArray);
+	}
+
+	public static LinuxEPoll.epoll_event getEvent(LinuxEPoll.epoll_event pollArray, int i) {
+		return (LinuxEPoll.epoll_event) ((Pointer) pollArray).add(i * SIZEOF_EPOLLEVENT);
+	}
+
+	public static int getDescriptor(LinuxEPoll.epoll_event event) {
+		return event.addressOfdata().fd();
+	}
+
+	public static int getEvents(LinuxEPoll.epoll_event event) {
+		return event.events();
+	}
+
+}
@@ -0,0 +1,62 @@
+package net.jzajic.graalvm.posix;
+
+import java.io.IOException;
+
+import org.graalvm.word.Pointer;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.posix.headers.Mman;
+import com.oracle.svm.core.posix.headers.Unistd;
+
+/**
+ * Memory mappings used for off-heap buffers.
+ */
+public class Mmap {
+
+	public static int pageSize() {
+		return Unistd.getpagesize();
+	}
+
+	/**
+	 * Maps size bytes of shared anonymous memory twice, at base and at
+	 * base + size, so that a range starting in the first half and wrapping
+	 * around the end is contiguous in the second. The mirror is created
+	 * with mremap of a zero length, which duplicates a shared mapping
+	 * without a backing file.
+	 *
+	 * @param size a multiple of the page size
+	 * @return the base of the 2 * size bytes mapped, released with
+	 *         {@link #unmap(PointerBase, long)}
+	 */
+	public static Pointer mapMirrored(long size) throws IOException {
+		if (size <= 0 || size % pageSize() != 0)
+			throw new IllegalArgumentException("Size not a multiple of the page size");
+		// reserve the address range for both halves
+		Pointer base = Mman.mmap(WordFactory.nullPointer(), WordFactory.unsigned(2 * size), Mman.PROT_NONE(),
+				Mman.MAP_PRIVATE() | Mman.MAP_ANONYMOUS() | Mman.MAP_NORESERVE(), -1, 0);
+		if (base.equal(Mman.MAP_FAILED()))
+			throw new IOException("mmap failed: " + Native.getLastErrorString());
+		int prot = Mman.PROT_READ() | Mman.PROT_WRITE();
+		Pointer first = Mman.mmap(base, WordFactory.unsigned(size), prot,
+				Mman.MAP_SHARED() | Mman.MAP_ANONYMOUS() | Mman.MAP_FIXED(), -1, 0);
+		if (first.equal(Mman.MAP_FAILED())) {
+			IOException x = new IOException("mmap failed: " + Native.getLastErrorString());
+			unmap(base, 2 * size);
+			throw x;
+		}
+		PointerBase second = Mman.mremap(first, WordFactory.zero(), WordFactory.unsigned(size),
+				Mman.MREMAP_MAYMOVE() | Mman.MREMAP_FIXED(), base.add(WordFactory.unsigned(size)));
+		if (second.equal(Mman.MAP_FAILED())) {
+			IOException x = new IOException("mremap failed: " + Native.getLastErrorString());
+			unmap(base, 2 * size);
+			throw x;
+		}
+		return base;
+	}
+
+	public static void unmap(PointerBase address, long size) {
+		Mman.munmap(address, WordFactory.unsigned(size));
+	}
+
+}
@@ -2,40 +2,196 @@ package net.jzajic.graalvm.posix;
 
 import java.io.IOException;
 
-import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.nativeimage.c.type.CIntPointer;
+import org.graalvm.nativeimage.c.type.CLongPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.PointerBase;
 import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.headers.Errno;
 import com.oracle.svm.core.posix.PosixUtils;
 import com.oracle.svm.core.posix.headers.Fcntl;
+import com.oracle.svm.core.posix.headers.Uio;
 import com.oracle.svm.core.posix.headers.Unistd;
+import com.oracle.svm.core.posix.headers.linux.LinuxSendfile;
 
+import net.jzajic.graalvm.socket.channel.ChannelMetrics;
+import net.jzajic.graalvm.socket.channel.IOStatus;
+
+/**
+ * System calls on file descriptors.
+ *
+ * Transfers return a byte count or an {@link IOStatus} value, so that
+ * EAGAIN and end-of-file cost no more than a successful call. errno is
+ * read once per failed call and calls interrupted by a signal are
+ * restarted. Only genuine failures are thrown.
+ */
 public class Native {
 
-	public static int read(int fd, int remaining, CCharPointer pointer) throws IOException {
-		int n;
-		int readed = 0;
-		do {
-			n = (int) Unistd.read(fd, pointer, WordFactory.unsigned(remaining-readed)).rawValue();
-			if(n >= 0) {
-				readed += n;
+	/**
+	 * Reads up to remaining bytes into the memory at pointer.
+	 *
+	 * @return the number of bytes read, IOStatus.EOF at end-of-file or
+	 *         IOStatus.UNAVAILABLE if a non-blocking descriptor has no bytes
+	 */
+	public static int read(int fd, int remaining, PointerBase pointer) throws IOException {
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			int n = (int) Unistd.read(fd, pointer, WordFactory.unsigned(remaining)).rawValue();
+			if (n > 0) {
+				SyscallRecorder.end(start, SyscallRecorder.READ, fd, remaining, n, 0);
+				return n;
 			}
-		} while (readed < remaining && n < 0 && Errno.EINTR() == getLastError());
-
-		return readed;
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.READ, fd, remaining, n, errno);
+			if (n == 0)
+				return IOStatus.EOF;
+			if (!restart(errno, true))
+				return status(errno);
+		}
 	}
 
-	public static int write(int fd, int size, CCharPointer pointer) throws IOException {
-		int n;
-		int written = 0;
-		do {
-			n = (int) Unistd.write(fd, pointer, WordFactory.unsigned(size-written)).rawValue();
-			if(n >= 0) {
-				written += n;
+	/**
+	 * Writes up to size bytes from the memory at pointer.
+	 *
+	 * @return the number of bytes written, or IOStatus.UNAVAILABLE if a
+	 *         non-blocking descriptor cannot take any bytes
+	 */
+	public static int write(int fd, int size, PointerBase pointer) throws IOException {
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			int n = (int) Unistd.write(fd, pointer, WordFactory.unsigned(size)).rawValue();
+			if (n >= 0) {
+				SyscallRecorder.end(start, SyscallRecorder.WRITE, fd, size, n, 0);
+				return n;
 			}
-		} while (written < size && n < 0 && Errno.EINTR() == getLastError());
+			int errno = Errno.errno();
+			SyscallRecorder.end(start, SyscallRecorder.WRITE, fd, size, n, errno);
+			if (!restart(errno, false))
+				return status(errno);
+		}
+	}
+
+	/**
+	 * Scattering read, see {@link #read(int, int, PointerBase)}.
+	 */
+	public static long readv(int fd, Uio.iovec iov, int iovcnt) throws IOException {
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			long n = Uio.readv(fd, iov, iovcnt).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			if (start != 0)
+				SyscallRecorder.end(start, SyscallRecorder.READV, fd, iovLength(iov, iovcnt), n, errno);
+			if (n > 0)
+				return n;
+			if (n == 0)
+				return IOStatus.EOF;
+			if (!restart(errno, true))
+				return status(errno);
+		}
+	}
+
+	/**
+	 * Gathering write, see {@link #write(int, int, PointerBase)}.
+	 */
+	public static long writev(int fd, Uio.iovec iov, int iovcnt) throws IOException {
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			long n = Uio.writev(fd, iov, iovcnt).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			if (start != 0)
+				SyscallRecorder.end(start, SyscallRecorder.WRITEV, fd, iovLength(iov, iovcnt), n, errno);
+			if (n >= 0)
+				return n;
+			if (!restart(errno, false))
+				return status(errno);
+		}
+	}
+
+	/**
+	 * Copies up to count bytes from position of inFd to outFd with
+	 * sendfile. The file offset of inFd is not changed.
+	 *
+	 * @return the number of bytes copied, 0 at end-of-file, or
+	 *         IOStatus.UNAVAILABLE if a non-blocking outFd cannot take any bytes
+	 */
+	public static long sendfile(int outFd, int inFd, long position, long count) throws IOException {
+		CLongPointer offset = StackValue.get(CLongPointer.class);
+		offset.write(position);
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			long n = LinuxSendfile.sendfile(outFd, inFd, offset, WordFactory.unsigned(count)).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.SENDFILE, outFd, count, n, errno);
+			if (n >= 0)
+				return n;
+			if (!restart(errno, false))
+				return status(errno);
+		}
+	}
+
+	/**
+	 * Moves up to len bytes between two descriptors, one of which must be a
+	 * pipe. An offset of -1 uses (and updates) the file offset of the
+	 * descriptor, otherwise the file offset is left unchanged.
+	 *
+	 * @return the number of bytes moved, IOStatus.EOF if fdIn is at
+	 *         end-of-file, or IOStatus.UNAVAILABLE if a non-blocking
+	 *         descriptor is not ready
+	 */
+	public static long splice(int fdIn, long offIn, int fdOut, long offOut, long len, int flags) throws IOException {
+		CLongPointer offInPtr = StackValue.get(CLongPointer.class);
+		CLongPointer offOutPtr = StackValue.get(CLongPointer.class);
+		offInPtr.write(offIn);
+		offOutPtr.write(offOut);
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			long n = Fcntl.splice(fdIn, offIn < 0 ? WordFactory.nullPointer() : (Pointer) offInPtr,
+					fdOut, offOut < 0 ? WordFactory.nullPointer() : (Pointer) offOutPtr,
+					WordFactory.signed(len), flags).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.SPLICE, fdIn, len, n, errno);
+			if (n > 0)
+				return n;
+			if (n == 0)
+				return IOStatus.EOF;
+			if (!restart(errno, true))
+				return status(errno);
+		}
+	}
+
+	// Total length of the buffers of an iovec array
+	private static long iovLength(Uio.iovec iov, int iovcnt) {
+		long len = 0;
+		for (int i = 0; i < iovcnt; i++) {
+			Uio.iovec vec = (Uio.iovec) ((Pointer) iov).add(i * SizeOf.get(Uio.iovec.class));
+			len += vec.iov_len().rawValue();
+		}
+		return len;
+	}
+
+	/**
+	 * Returns true if a call that failed with errno was interrupted by a
+	 * signal and has to be restarted.
+	 */
+	public static boolean restart(int errno, boolean reading) {
+		if (errno != Errno.EINTR())
+			return false;
+		if (ChannelMetrics.ENABLED)
+			ChannelMetrics.interrupted(reading);
+		return true;
+	}
 
-		return written;
+	/**
+	 * Translates the errno of a failed call that is not restarted into
+	 * IOStatus.UNAVAILABLE. Other errors are genuine failures and thrown.
+	 */
+	public static int status(int errno) throws IOException {
+		if (errno == Errno.EAGAIN() || errno == Errno.EWOULDBLOCK())
+			return IOStatus.UNAVAILABLE;
+		throw new IOException(PosixUtils.errorString(errno, "Unknown error"));
 	}
 
 	public static String getLastErrorString() {
@@ -58,10 +214,33 @@ public class Native {
 		Fcntl.fcntl(fd, Fcntl.F_SETFL(), flags);
 	}
 
+	/**
+	 * Returns two file descriptors for a pipe encoded in a long.
+	 * The read end of the pipe is returned in the high 32 bits,
+	 * while the write end is returned in the low 32 bits.
+	 */
+	public static long makePipe(boolean blocking) throws IOException {
+		CIntPointer fds = StackValue.get(2, CIntPointer.class);
+		if (Unistd.pipe(fds) < 0) {
+			throw new IOException(getLastErrorString());
+		}
+		int fd0 = fds.read(0);
+		int fd1 = fds.read(1);
+		if (!blocking) {
+			setBlocking(fd0, false);
+			setBlocking(fd1, false);
+		}
+		Fcntl.fcntl(fd0, Fcntl.F_SETFD(), Fcntl.FD_CLOEXEC());
+		Fcntl.fcntl(fd1, Fcntl.F_SETFD(), Fcntl.FD_CLOEXEC());
+		return ((long) fd0 << 32) | (long) fd1;
+	}
+
 	public static int close(int fdVal) {
 		int rc;
 		do {
+			long start = SyscallRecorder.begin();
 			rc = Unistd.close(fdVal);
+			SyscallRecorder.end(start, SyscallRecorder.CLOSE, fdVal, 0, rc);
 		} while (rc < 0 && Errno.EINTR() == getLastError());
 
 		if (rc < 0) {
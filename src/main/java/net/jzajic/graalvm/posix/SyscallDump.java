@@ -0,0 +1,111 @@
+package net.jzajic.graalvm.posix;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prints a file written by {@link SyscallRecorder#dump} as a timeline of
+ * the system calls of all threads, ordered by start time. This class has
+ * no native dependencies and runs on any JVM:
+ *
+ * <pre>
+ * java -cp graal-unixsocket.jar net.jzajic.graalvm.posix.SyscallDump dump.bin [min-micros]
+ * </pre>
+ *
+ * With min-micros only calls that took at least that many microseconds
+ * are printed. Times are in microseconds relative to the first call.
+ */
+public final class SyscallDump {
+
+	private static final String[] NAMES = {
+		"?", "read", "write", "readv", "writev", "sendfile", "splice",
+		"recv", "recvfrom", "recvmsg", "recvmmsg", "sendto", "sendmsg", "sendmmsg",
+		"connect", "accept", "poll", "epoll_wait", "close"
+	};
+
+	private static final class Record implements Comparable<Record> {
+		String thread;
+		long start;
+		long end;
+		long requested;
+		long result;
+		int fd;
+		int errno;
+		int type;
+
+		@Override
+		public int compareTo(Record o) {
+			return Long.compare(start, o.start);
+		}
+	}
+
+	private SyscallDump() { }
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: SyscallDump <file> [min-micros]");
+			System.exit(2);
+		}
+		long minNanos = (args.length > 1) ? Long.parseLong(args[1]) * 1000 : 0;
+		List<Record> records;
+		try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+			records = read(in);
+		}
+		print(records, minNanos, System.out);
+	}
+
+	private static List<Record> read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+		if (in.readInt() != SyscallRecorder.MAGIC)
+			throw new IOException("Not a system call dump");
+		short version = in.readShort();
+		if (version != SyscallRecorder.VERSION)
+			throw new IOException("Unsupported dump version " + version);
+		List<Record> records = new ArrayList<>();
+		while (in.readByte() != 0) {
+			long threadId = in.readLong();
+			String thread = in.readUTF() + "#" + threadId;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				Record r = new Record();
+				r.thread = thread;
+				r.start = in.readLong();
+				r.end = in.readLong();
+				r.requested = in.readLong();
+				r.result = in.readLong();
+				r.fd = in.readInt();
+				r.errno = in.readInt();
+				r.type = in.readUnsignedByte();
+				records.add(r);
+			}
+		}
+		Collections.sort(records);
+		return records;
+	}
+
+	private static void print(List<Record> records, long minNanos, PrintStream out) {
+		if (records.isEmpty())
+			return;
+		long origin = records.get(0).start;
+		out.printf("%14s %10s  %-24s %-10s %5s %10s %10s %6s%n",
+				"start(us)", "took(us)", "thread", "call", "fd", "requested", "result", "errno");
+		for (Record r : records) {
+			long took = r.end - r.start;
+			if (took < minNanos)
+				continue;
+			String name = (r.type < NAMES.length) ? NAMES[r.type] : NAMES[0];
+			out.printf("%14.3f %10.3f  %-24s %-10s %5d %10d %10d %6s%n",
+					(r.start - origin) / 1000.0, took / 1000.0, r.thread, name, r.fd,
+					r.requested, r.result, (r.result < 0) ? Integer.toString(r.errno) : "");
+		}
+	}
+
+}
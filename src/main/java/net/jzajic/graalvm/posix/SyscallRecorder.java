@@ -0,0 +1,242 @@
+package net.jzajic.graalvm.posix;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import com.oracle.svm.core.headers.Errno;
+
+/**
+ * A flight recorder of the system calls issued by the native layer.
+ *
+ * While recording, every system call is logged with its type, file
+ * descriptor, requested length, result, errno and start and end time in
+ * nanoseconds (System.nanoTime) into an off-heap ring buffer of the
+ * calling thread. When a ring is full the oldest records are overwritten,
+ * so a dump shows the last {@link #CAPACITY} calls of each thread. Each
+ * thread allocates its ring on its first recorded call, after that
+ * recording does not allocate. The rings of terminated threads are
+ * released when another thread allocates its ring, so their records only
+ * appear in a dump taken before that.
+ *
+ * Recording is off until {@link #start()} is called and costs a volatile
+ * read per system call while off. {@link #dump(Path)} writes the rings to
+ * a file that {@link SyscallDump} prints as a timeline. The records of a
+ * thread that is recording while the dump is taken may be incomplete at
+ * the end.
+ *
+ * The ring capacity is read from the system property
+ * {@value #CAPACITY_PROPERTY} when this class is initialized, which in a
+ * native image happens at image build time.
+ */
+public final class SyscallRecorder {
+
+	// System call types
+	public static final int READ = 1;
+	public static final int WRITE = 2;
+	public static final int READV = 3;
+	public static final int WRITEV = 4;
+	public static final int SENDFILE = 5;
+	public static final int SPLICE = 6;
+	public static final int RECV = 7;
+	public static final int RECVFROM = 8;
+	public static final int RECVMSG = 9;
+	public static final int RECVMMSG = 10;
+	public static final int SENDTO = 11;
+	public static final int SENDMSG = 12;
+	public static final int SENDMMSG = 13;
+	public static final int CONNECT = 14;
+	public static final int ACCEPT = 15;
+	public static final int POLL = 16;
+	public static final int EPOLL_WAIT = 17;
+	public static final int CLOSE = 18;
+
+	public static final String CAPACITY_PROPERTY = "net.jzajic.graalvm.socket.recorder.capacity";
+
+	/**
+	 * Number of records kept per thread, a power of two.
+	 */
+	public static final int CAPACITY = Integer.highestOneBit(
+			Math.max(16, Integer.getInteger(CAPACITY_PROPERTY, 4096)));
+
+	// Dump file format, all values big-endian:
+	//   int MAGIC, short VERSION,
+	//   for each thread: byte 1, long thread id, UTF thread name, int count,
+	//     count records of long start, long end, long requested,
+	//     long result, int fd, int errno, byte type
+	//   byte 0
+	static final int MAGIC = 0x55534652; // "USFR"
+	static final short VERSION = 1;
+
+	// Layout of a record in the ring
+	private static final int START = 0;
+	private static final int END = 8;
+	private static final int REQUESTED = 16;
+	private static final int RESULT = 24;
+	private static final int FD = 32;
+	private static final int ERRNO = 36;
+	private static final int TYPE = 40;
+	private static final int RECORD_SIZE = 48;
+
+	private static volatile boolean recording;
+
+	private static final ThreadLocal<Ring> RING = new ThreadLocal<Ring>() {
+		@Override
+		protected Ring initialValue() {
+			// drop the rings of terminated threads, so that their memory
+			// does not accumulate while recording without dumps
+			RINGS.removeIf(Ring::isDead);
+			Ring ring = new Ring(Thread.currentThread());
+			RINGS.add(ring);
+			return ring;
+		}
+	};
+
+	// Rings of all live threads that have recorded, and of threads that
+	// terminated since the last dump or the last ring allocated
+	private static final ConcurrentLinkedQueue<Ring> RINGS = new ConcurrentLinkedQueue<>();
+
+	private SyscallRecorder() { }
+
+	public static void start() {
+		recording = true;
+	}
+
+	public static void stop() {
+		recording = false;
+	}
+
+	public static boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Returns the start time of a system call about to be issued, or 0 if
+	 * not recording. The result is passed to {@link #end}.
+	 */
+	public static long begin() {
+		return recording ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records a system call that began at start and returned result. A
+	 * negative result records errno, which is preserved for the caller.
+	 */
+	public static void end(long start, int type, int fd, long requested, long result) {
+		if (start == 0)
+			return;
+		int errno = (result < 0) ? Errno.errno() : 0;
+		end(start, type, fd, requested, result, errno);
+		if (result < 0)
+			Errno.set_errno(errno);
+	}
+
+	/**
+	 * Records a system call that began at start and returned result, for
+	 * callers that have already read errno.
+	 */
+	public static void end(long start, int type, int fd, long requested, long result, int errno) {
+		if (start == 0)
+			return;
+		long end = System.nanoTime();
+		RING.get().add(start, end, type, fd, requested, result, errno);
+	}
+
+	/**
+	 * Writes the records of all threads to the file, oldest first. Rings of
+	 * terminated threads are discarded after they have been written.
+	 */
+	public static void dump(Path file) throws IOException {
+		try (OutputStream os = Files.newOutputStream(file)) {
+			dump(os);
+		}
+	}
+
+	public static void dump(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		for (Iterator<Ring> it = RINGS.iterator(); it.hasNext();) {
+			Ring ring = it.next();
+			ring.dump(out);
+			if (ring.isDead())
+				it.remove();
+		}
+		out.writeByte(0);
+		out.flush();
+	}
+
+	private static final class Ring {
+		private static final AtomicLongFieldUpdater<Ring> COUNT =
+				AtomicLongFieldUpdater.newUpdater(Ring.class, "count");
+
+		final WeakReference<Thread> thread;
+		final long threadId;
+		final String threadName;
+		final ByteBuffer buf;
+
+		// Number of records written, only advanced by the owning thread
+		volatile long count;
+
+		Ring(Thread t) {
+			thread = new WeakReference<>(t);
+			threadId = t.getId();
+			threadName = t.getName();
+			buf = ByteBuffer.allocateDirect(CAPACITY * RECORD_SIZE).order(ByteOrder.nativeOrder());
+		}
+
+		// true once the thread has terminated
+		boolean isDead() {
+			Thread t = thread.get();
+			return t == null || !t.isAlive();
+		}
+
+		void add(long start, long end, int type, int fd, long requested, long result, int errno) {
+			long c = count;
+			int off = (int) (c & (CAPACITY - 1)) * RECORD_SIZE;
+			buf.putLong(off + START, start);
+			buf.putLong(off + END, end);
+			buf.putLong(off + REQUESTED, requested);
+			buf.putLong(off + RESULT, result);
+			buf.putInt(off + FD, fd);
+			buf.putInt(off + ERRNO, errno);
+			buf.putInt(off + TYPE, type);
+			// publish the record
+			COUNT.lazySet(this, c + 1);
+		}
+
+		void dump(DataOutputStream out) throws IOException {
+			long last = count;
+			ByteBuffer copy = ByteBuffer.allocate(buf.capacity()).order(buf.order());
+			copy.put(buf.duplicate());
+			// records overwritten while copying, or being overwritten, are dropped
+			long first = Math.max(0, count - CAPACITY + 1);
+			if (first >= last)
+				return;
+			out.writeByte(1);
+			out.writeLong(threadId);
+			out.writeUTF(threadName);
+			out.writeInt((int) (last - first));
+			for (long i = first; i < last; i++) {
+				int off = (int) (i & (CAPACITY - 1)) * RECORD_SIZE;
+				out.writeLong(copy.getLong(off + START));
+				out.writeLong(copy.getLong(off + END));
+				out.writeLong(copy.getLong(off + REQUESTED));
+				out.writeLong(copy.getLong(off + RESULT));
+				out.writeInt(copy.getInt(off + FD));
+				out.writeInt(copy.getInt(off + ERRNO));
+				out.writeByte(copy.getInt(off + TYPE));
+			}
+		}
+	}
+
+}
@@ -6,28 +6,31 @@ import java.net.ProtocolFamily;
 import java.net.SocketException;
 import java.net.SocketOption;
 import java.net.StandardSocketOptions;
+import java.util.List;
 
 import org.graalvm.nativeimage.StackValue;
 import org.graalvm.nativeimage.c.struct.SizeOf;
 import org.graalvm.nativeimage.c.type.CCharPointer;
 import org.graalvm.nativeimage.c.type.CIntPointer;
 import org.graalvm.nativeimage.c.type.CTypeConversion;
-import org.graalvm.nativeimage.c.type.CTypeConversion.CCharPointerHolder;
 import org.graalvm.nativeimage.c.type.VoidPointer;
 import org.graalvm.nativeimage.c.type.WordPointer;
+import org.graalvm.word.PointerBase;
 import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.headers.Errno;
 import com.oracle.svm.core.os.IsDefined;
 import com.oracle.svm.core.posix.PosixUtils;
-import com.oracle.svm.core.posix.headers.LibC;
+import com.oracle.svm.core.posix.headers.Ioctl;
 import com.oracle.svm.core.posix.headers.NetinetIn;
 import com.oracle.svm.core.posix.headers.Poll;
 import com.oracle.svm.core.posix.headers.Socket;
 import com.oracle.svm.core.posix.headers.Socket.sockaddr;
 import com.oracle.svm.core.posix.headers.Time;
+import com.oracle.svm.core.posix.headers.Uio;
 
 import net.jzajic.graalvm.headers.FdUtils.Util_java_io_FileDescriptor;
+import net.jzajic.graalvm.headers.LinuxSocket;
 import net.jzajic.graalvm.headers.Un;
 import net.jzajic.graalvm.socket.UnixProtocolFamily;
 import net.jzajic.graalvm.socket.UnixSocketAddress;
@@ -48,14 +51,29 @@ public class UnixNet {
 
 	public static FileDescriptor socket(UnixProtocolFamily unix, boolean stream) throws IOException {
 		int fd = socketU(stream, false);
+		return newFD(fd);
+	}
+
+	public static FileDescriptor newFD(int fd) {
 		FileDescriptor javaFileDescriptor = new FileDescriptor();
 		Util_java_io_FileDescriptor.setFD(javaFileDescriptor, fd);
 		return javaFileDescriptor;
 	}
 
+	/**
+	 * Creates a socket of the given type (SOCK_STREAM, SOCK_DGRAM or
+	 * SOCK_SEQPACKET).
+	 */
+	public static FileDescriptor socket(UnixProtocolFamily unix, int type) throws IOException {
+		return newFD(socketU(type));
+	}
+
 	static int socketU(boolean stream, boolean reuse) throws IOException {
+		return socketU(stream ? Socket.SOCK_STREAM() : Socket.SOCK_DGRAM());
+	}
+
+	static int socketU(int type) throws IOException {
 		int fd;
-		int type = (stream ? Socket.SOCK_STREAM() : Socket.SOCK_DGRAM());
 		fd = Socket.socket(Socket.AF_UNIX(), type, 0);
 		if (fd < 0) {
 			return UnixNet.handleSocketError(Errno.errno());
@@ -63,6 +81,19 @@ public class UnixNet {
 		return fd;
 	}
 
+	/**
+	 * Creates a pair of connected sockets of the given type with
+	 * socketpair, the flags (SOCK_NONBLOCK, SOCK_CLOEXEC) are applied to
+	 * both sockets atomically.
+	 */
+	public static FileDescriptor[] socketpair(int type, int flags) throws IOException {
+		CIntPointer fds = StackValue.get(2, CIntPointer.class);
+		if (Socket.socketpair(Socket.AF_UNIX(), type | flags, 0, fds) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+		return new FileDescriptor[] { newFD(fds.read(0)), newFD(fds.read(1)) };
+	}
+
 	public static int connect(FileDescriptor fdo, UnixSocketAddress iao) throws IOException {
 		int rv;
 		sockaddr sa_Pointer = StackValue.get(SizeOf.get(Un.sockaddr_un.class));
@@ -71,24 +102,307 @@ public class UnixNet {
 		if (UnixNet.inetAddressToSockaddr(iao, sa_Pointer, sa_len_Pointer) != 0) {
 			return IOStatus.THROWN;
 		}
-		rv = Socket.connect(PosixUtils.getFD(fdo), sa_Pointer, sa_len_Pointer.read());
+		int fd = PosixUtils.getFD(fdo);
+		long start = SyscallRecorder.begin();
+		rv = Socket.connect(fd, sa_Pointer, sa_len_Pointer.read());
+		SyscallRecorder.end(start, SyscallRecorder.CONNECT, fd, 0, rv);
 		if (rv != 0) {
-			if (Errno.errno() == Errno.EINPROGRESS()) {
+			int err = Errno.errno();
+			if (err == Errno.EINPROGRESS() || err == Errno.EALREADY()) {
+				return IOStatus.UNAVAILABLE;
+			} else if (err == Errno.EAGAIN()) {
+				// AF_UNIX: the listen backlog is full (non-blocking) or the
+				// send timeout expired while waiting for room (blocking)
 				return IOStatus.UNAVAILABLE;
-			} else if (Errno.errno() == Errno.EINTR()) {
+			} else if (err == Errno.EISCONN()) {
+				// a retried connect that has completed in the meantime
+				return 1;
+			} else if (err == Errno.EINTR()) {
 				return IOStatus.INTERRUPTED;
 			}
-			return UnixNet.handleSocketError(Errno.errno());
+			return UnixNet.handleSocketError(err);
 		}
 		return 1;
 	}
 
+	/**
+	 * Returns and clears the pending error of the socket (SO_ERROR)
+	 */
+	public static int getSocketError(int fd) throws IOException {
+		CIntPointer value = StackValue.get(CIntPointer.class);
+		CIntPointer len = StackValue.get(CIntPointer.class);
+		value.write(0);
+		len.write(SizeOf.get(CIntPointer.class));
+		if (Socket.getsockopt(fd, Socket.SOL_SOCKET(), Socket.SO_ERROR(), value, len) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+		return value.read();
+	}
+
+	/**
+	 * Returns the send timeout (SO_SNDTIMEO) in milliseconds, 0 if none
+	 */
+	public static int getSendTimeout(int fd) throws IOException {
+		Time.timeval tv = StackValue.get(Time.timeval.class);
+		CIntPointer len = StackValue.get(CIntPointer.class);
+		len.write(SizeOf.get(Time.timeval.class));
+		if (Socket.getsockopt(fd, Socket.SOL_SOCKET(), Socket.SO_SNDTIMEO(), tv, len) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+		return (int) (tv.tv_sec() * 1000 + tv.tv_usec() / 1000);
+	}
+
+	/**
+	 * Sets the send timeout (SO_SNDTIMEO) in milliseconds, 0 for none. For
+	 * AF_UNIX stream sockets this also bounds a blocking connect waiting for
+	 * room in the listen backlog.
+	 */
+	public static void setSendTimeout(int fd, int millis) throws IOException {
+		Time.timeval tv = StackValue.get(Time.timeval.class);
+		tv.set_tv_sec(millis / 1000);
+		tv.set_tv_usec((millis % 1000) * 1000L);
+		if (Socket.setsockopt(fd, Socket.SOL_SOCKET(), Socket.SO_SNDTIMEO(), tv, SizeOf.get(Time.timeval.class)) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+	}
+
+	/**
+	 * Dissolves the association of a connected datagram socket by connecting
+	 * it to an AF_UNSPEC address.
+	 */
+	public static void disconnect(FileDescriptor fdo) throws IOException {
+		Un.sockaddr_un sa = StackValue.get(SOCKADDR_LEN);
+		sa.set_sun_family(Socket.AF_UNSPEC());
+		if (Socket.connect(fdval(fdo), (Socket.sockaddr) sa, SOCKADDR_LEN) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+	}
+
+	/**
+	 * Sends a datagram, to the connected peer when target is null.
+	 *
+	 * @return the number of bytes sent, or IOStatus.UNAVAILABLE
+	 */
+	public static int sendto(int fd, PointerBase buf, int len, UnixSocketAddress target) throws IOException {
+		Socket.sockaddr sa = WordFactory.nullPointer();
+		int sa_len = 0;
+		if (target != null) {
+			sa = StackValue.get(SOCKADDR_LEN);
+			CIntPointer sa_len_Pointer = StackValue.get(CIntPointer.class);
+			UnixNet.inetAddressToSockaddr(target, sa, sa_len_Pointer);
+			sa_len = sa_len_Pointer.read();
+		}
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			int n = (int) Socket.sendto(fd, buf, WordFactory.unsigned(len), 0, sa, sa_len).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.SENDTO, fd, len, n, errno);
+			if (n >= 0)
+				return n;
+			if (!Native.restart(errno, false))
+				return Native.status(errno);
+		}
+	}
+
+	/**
+	 * Receives a datagram, storing the sender's address into from.
+	 *
+	 * @return the length of the datagram, possibly zero, or
+	 *         IOStatus.UNAVAILABLE
+	 */
+	public static int recvfrom(int fd, PointerBase buf, int len, Un.sockaddr_un from, CIntPointer fromLen)
+			throws IOException {
+		for (;;) {
+			fromLen.write(SOCKADDR_LEN);
+			long start = SyscallRecorder.begin();
+			int n = (int) Socket.recvfrom(fd, buf, WordFactory.unsigned(len), 0, (Socket.sockaddr) from, fromLen).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.RECVFROM, fd, len, n, errno);
+			if (n >= 0)
+				return n;
+			if (!Native.restart(errno, true))
+				return Native.status(errno);
+		}
+	}
+
+	/**
+	 * Receives from a connected socket with the given flags.
+	 *
+	 * @return the recv result, IOStatus.EOF at end-of-stream or
+	 *         IOStatus.UNAVAILABLE
+	 */
+	public static int recv(int fd, PointerBase buf, int len, int flags) throws IOException {
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			int n = (int) Socket.recv(fd, buf, WordFactory.unsigned(len), flags).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.RECV, fd, len, n, errno);
+			if (n > 0)
+				return n;
+			if (n == 0)
+				return IOStatus.EOF;
+			if (!Native.restart(errno, true))
+				return Native.status(errno);
+		}
+	}
+
+	// CMSG_* macros of sys/socket.h
+	private static final int CMSGHDR_LEN = cmsgAlign(SizeOf.get(Socket.cmsghdr.class));
+
+	private static int cmsgAlign(int len) {
+		int align = SizeOf.get(WordPointer.class);
+		return (len + align - 1) & ~(align - 1);
+	}
+
+	private static int cmsgSpace(int len) {
+		return cmsgAlign(len) + CMSGHDR_LEN;
+	}
+
+	private static int cmsgLen(int len) {
+		return CMSGHDR_LEN + len;
+	}
+
+	// Room for the largest SCM_RIGHTS message
+	static final int SCM_CONTROL_LEN = cmsgSpace(LinuxSocket.SCM_MAX_FD * SizeOf.get(CIntPointer.class));
+
+	/**
+	 * Sends the buffer with the descriptors attached as SCM_RIGHTS ancillary
+	 * data. Stream sockets require at least one byte of payload.
+	 *
+	 * @return the number of bytes sent, or IOStatus.UNAVAILABLE
+	 */
+	public static int sendmsg(int fd, PointerBase buf, int len, FileDescriptor[] fds) throws IOException {
+		int nfds = fds.length;
+		if (nfds > LinuxSocket.SCM_MAX_FD)
+			throw new IllegalArgumentException("Too many file descriptors: " + nfds);
+
+		Socket.msghdr msg = StackValue.get(Socket.msghdr.class);
+		Uio.iovec iov = StackValue.get(Uio.iovec.class);
+		CCharPointer control = StackValue.get(SCM_CONTROL_LEN);
+		iov.iov_base(buf);
+		iov.iov_len(WordFactory.unsigned(len));
+		msg.msg_name(WordFactory.nullPointer());
+		msg.msg_namelen(0);
+		msg.msg_iov(iov);
+		msg.msg_iovlen(1);
+		msg.msg_flags(0);
+		if (nfds > 0) {
+			int dataLen = nfds * SizeOf.get(CIntPointer.class);
+			Socket.cmsghdr cmsg = (Socket.cmsghdr) control;
+			cmsg.cmsg_len(cmsgLen(dataLen));
+			cmsg.cmsg_level(Socket.SOL_SOCKET());
+			cmsg.cmsg_type(Socket.SCM_RIGHTS());
+			CIntPointer data = (CIntPointer) control.addressOf(CMSGHDR_LEN);
+			for (int i = 0; i < nfds; i++) {
+				data.write(i, fdval(fds[i]));
+			}
+			msg.msg_control(control);
+			msg.msg_controllen(cmsgSpace(dataLen));
+		} else {
+			msg.msg_control(WordFactory.nullPointer());
+			msg.msg_controllen(0);
+		}
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			int n = (int) Socket.sendmsg(fd, msg, Socket.MSG_NOSIGNAL()).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.SENDMSG, fd, len, n, errno);
+			if (n >= 0)
+				return n;
+			if (!Native.restart(errno, false))
+				return Native.status(errno);
+		}
+	}
+
+	/**
+	 * Receives into the buffer, adding descriptors passed as SCM_RIGHTS
+	 * ancillary data to fds. Received descriptors are close-on-exec.
+	 *
+	 * @return the number of bytes received, IOStatus.EOF at end-of-stream
+	 *         or IOStatus.UNAVAILABLE
+	 */
+	public static int recvmsg(int fd, PointerBase buf, int len, List<FileDescriptor> fds) throws IOException {
+		Socket.msghdr msg = StackValue.get(Socket.msghdr.class);
+		Uio.iovec iov = StackValue.get(Uio.iovec.class);
+		CCharPointer control = StackValue.get(SCM_CONTROL_LEN);
+		iov.iov_base(buf);
+		iov.iov_len(WordFactory.unsigned(len));
+		msg.msg_name(WordFactory.nullPointer());
+		msg.msg_namelen(0);
+		msg.msg_iov(iov);
+		msg.msg_iovlen(1);
+		msg.msg_control(control);
+		msg.msg_controllen(SCM_CONTROL_LEN);
+		msg.msg_flags(0);
+		int n;
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			n = (int) Socket.recvmsg(fd, msg, LinuxSocket.MSG_CMSG_CLOEXEC()).rawValue();
+			int errno = (n < 0) ? Errno.errno() : 0;
+			SyscallRecorder.end(start, SyscallRecorder.RECVMSG, fd, len, n, errno);
+			if (n > 0)
+				break;
+			if (n == 0)
+				return IOStatus.EOF;
+			if (!Native.restart(errno, true))
+				return Native.status(errno);
+		}
+
+		// walk the control messages (CMSG_FIRSTHDR/CMSG_NXTHDR)
+		long controllen = msg.msg_controllen();
+		int offset = 0;
+		while (offset + CMSGHDR_LEN <= controllen) {
+			Socket.cmsghdr cmsg = (Socket.cmsghdr) control.addressOf(offset);
+			int cmsgLen = (int) cmsg.cmsg_len();
+			if (cmsgLen < CMSGHDR_LEN)
+				break;
+			if (cmsg.cmsg_level() == Socket.SOL_SOCKET() && cmsg.cmsg_type() == Socket.SCM_RIGHTS()) {
+				int count = (cmsgLen - CMSGHDR_LEN) / SizeOf.get(CIntPointer.class);
+				CIntPointer data = (CIntPointer) control.addressOf(offset + CMSGHDR_LEN);
+				for (int i = 0; i < count; i++) {
+					fds.add(newFD(data.read(i)));
+				}
+			}
+			offset += cmsgAlign(cmsgLen);
+		}
+		return n;
+	}
+
+	/**
+	 * Decodes a sockaddr_un of the given length as returned by the kernel.
+	 * Unnamed sockets are reported with an empty path, abstract names with
+	 * their leading NUL.
+	 */
+	public static UnixSocketAddress toUnixSocketAddress(Un.sockaddr_un sa, int len) {
+		int pathLen = Math.min(len - SUN_PATH_OFFSET, Un.SUN_PATH_SIZE);
+		if (pathLen <= 0)
+			return new UnixSocketAddress();
+		CCharPointer sunPath = sa.sun_path();
+		if (sunPath.read(0) != 0) {
+			// filesystem path, the length may include the terminating NUL
+			int n = 0;
+			while (n < pathLen && sunPath.read(n) != 0)
+				n++;
+			pathLen = n;
+		}
+		byte[] bytes = new byte[pathLen];
+		for (int i = 0; i < pathLen; i++) {
+			bytes[i] = sunPath.read(i);
+		}
+		// kept as received, a name that is not valid UTF-8 would not survive
+		// decoding and encoding again
+		return new UnixSocketAddress(bytes);
+	}
+
 	public static int fdval(FileDescriptor fdo) {
 		return PosixUtils.getFD(fdo);
 	}
 
 	static final int SOCKADDR_LEN = SizeOf.get(Un.sockaddr_un.class);
 
+	// offsetof(struct sockaddr_un, sun_path)
+	static final int SUN_PATH_OFFSET = SOCKADDR_LEN - Un.SUN_PATH_SIZE;
+
 	public static void bind(FileDescriptor fd, UnixSocketAddress usa) throws IOException {
 		Socket.sockaddr sa = StackValue.get(SOCKADDR_LEN);
 		CIntPointer sa_len_Pointer = StackValue.get(CIntPointer.class);
@@ -103,16 +417,65 @@ public class UnixNet {
 		}
 	}
 
+	/**
+	 * Encodes the address into him and writes the exact address length to
+	 * len: offsetof(sun_path) plus the name, plus the terminating NUL of a
+	 * filesystem path when it fits. Abstract names are not terminated and
+	 * an empty path yields an unnamed address.
+	 */
 	public static int inetAddressToSockaddr(UnixSocketAddress iaObj, Socket.sockaddr him, CIntPointer len) throws SocketException {
 		Un.sockaddr_un himU = (Un.sockaddr_un) him;
 		himU.set_sun_family(Socket.AF_UNIX());
-		try (CCharPointerHolder filePath = CTypeConversion.toCString(iaObj.getPath())) {
-			LibC.strncpy(himU.sun_path(), filePath.get(), WordFactory.unsigned(Un.SUN_PATH_SIZE - 1));
-			len.write(SizeOf.get(Un.sockaddr_un.class));
+		byte[] path = iaObj.getEncoded();
+		CCharPointer sunPath = himU.sun_path();
+		for (int i = 0; i < path.length; i++) {
+			sunPath.write(i, path[i]);
+		}
+		int addrLen = SUN_PATH_OFFSET + path.length;
+		if (path.length > 0 && path[0] != 0 && path.length < Un.SUN_PATH_SIZE) {
+			sunPath.write(path.length, (byte) 0);
+			addrLen++;
 		}
+		len.write(addrLen);
 		return 0;
 	}
 
+	public static void listen(FileDescriptor fdo, int backlog) throws IOException {
+		if (Socket.listen(fdval(fdo), backlog) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+	}
+
+	/**
+	 * Accepts a new connection using accept4 so that the flags
+	 * (SOCK_NONBLOCK, SOCK_CLOEXEC) are applied atomically.
+	 *
+	 * @return the new file descriptor, or IOStatus.UNAVAILABLE / IOStatus.INTERRUPTED
+	 */
+	public static int accept(FileDescriptor fdo, int flags) throws IOException {
+		int newfd;
+		for (;;) {
+			long start = SyscallRecorder.begin();
+			newfd = Socket.accept4(fdval(fdo), WordFactory.nullPointer(), WordFactory.nullPointer(), flags);
+			SyscallRecorder.end(start, SyscallRecorder.ACCEPT, fdval(fdo), 0, newfd);
+			if (newfd >= 0) {
+				return newfd;
+			}
+			int errno = Errno.errno();
+			if (errno == Errno.ECONNABORTED()) {
+				// the connection was aborted before it was accepted, try the next one
+				continue;
+			}
+			if (errno == Errno.EAGAIN() || errno == Errno.EWOULDBLOCK()) {
+				return IOStatus.UNAVAILABLE;
+			}
+			if (errno == Errno.EINTR()) {
+				return IOStatus.INTERRUPTED;
+			}
+			return UnixNet.handleSocketError(errno);
+		}
+	}
+
 	public static Object getSocketOption(FileDescriptor fd, ProtocolFamily family, SocketOption<?> name)
 			throws IOException {
 		Class<?> type = name.type();
@@ -226,9 +589,6 @@ public class UnixNet {
 				linger.set_l_linger(0);
 			}
 		}
-		
-		System.out.println("SO_RCVTIMEO: "+Socket.SO_RCVTIMEO() + ", mayNeedConversion: " + mayNeedConversion + ", opt: "+opt);
-		
 		if (mayNeedConversion) {
 			CIntPointer bufsize = null;
 			if (IsDefined.__linux__()) {
@@ -241,7 +601,6 @@ public class UnixNet {
 			}
 			
 			if (opt == Socket.SO_RCVTIMEO() || opt == Socket.SO_SNDTIMEO()) {
-				System.out.println("Set timeval socket opt");
 				arglen = SizeOf.get(Time.timeval.class);
 				Time.timeval timeval = StackValue.get(Time.timeval.class);				
 				timeval.set_tv_sec(arg / 1000);
@@ -316,14 +675,30 @@ public class UnixNet {
 		}
 	}
 
+	/**
+	 * Returns the number of bytes that can be read without blocking
+	 * (FIONREAD).
+	 */
+	public static int available(FileDescriptor fdo) throws IOException {
+		CIntPointer n = StackValue.get(CIntPointer.class);
+		n.write(0);
+		if (Ioctl.ioctl(fdval(fdo), Ioctl.FIONREAD(), n) < 0) {
+			UnixNet.handleSocketError(Errno.errno());
+		}
+		return n.read();
+	}
+
 	public static int poll(FileDescriptor fdo, int events, long timeout) throws IOException {
 		Poll.pollfd pfd = StackValue.get(Poll.pollfd.class);
 		int rv;
 		pfd.set_fd(fdval(fdo));
 		pfd.set_events((short) events);
+		pfd.set_revents(0);
+		long start = SyscallRecorder.begin();
 		rv = Poll.poll(pfd, 1, (int) timeout);
+		SyscallRecorder.end(start, SyscallRecorder.POLL, fdval(fdo), timeout, rv);
 		if (rv >= 0) {
-			return pfd.events();
+			return pfd.revents();
 		} else if (Errno.errno() == Errno.EINTR()) {
 			return IOStatus.INTERRUPTED;
 		} else {
@@ -355,29 +730,23 @@ public class UnixNet {
 	}
 	
 	public static UnixSocketAddress getsockname(int sockfd) {
-		UnixSocketAddress local = new UnixSocketAddress();
 		Socket.sockaddr sa = StackValue.get(SOCKADDR_LEN);
 		CIntPointer sa_len_Pointer = StackValue.get(CIntPointer.class);
 		sa_len_Pointer.write(SOCKADDR_LEN);
 		if (Socket.getsockname(sockfd, sa, sa_len_Pointer) < 0) {
 			throw new Error(Native.getLastErrorString());
 		}
-		Un.sockaddr_un unAddr = (Un.sockaddr_un) sa;
-		local.setPath(CTypeConversion.toJavaString(unAddr.sun_path()));
-		return local;
+		return toUnixSocketAddress((Un.sockaddr_un) sa, sa_len_Pointer.read());
 	}
 
 	public static UnixSocketAddress getpeername(int sockfd) {
-		UnixSocketAddress remote = new UnixSocketAddress();
 		Socket.sockaddr sa = StackValue.get(SOCKADDR_LEN);
 		CIntPointer sa_len_Pointer = StackValue.get(CIntPointer.class);
 		sa_len_Pointer.write(SOCKADDR_LEN);
 		if (Socket.getpeername(sockfd, sa, sa_len_Pointer) < 0) {
 			throw new Error(Native.getLastErrorString());
 		}
-		Un.sockaddr_un unAddr = (Un.sockaddr_un) sa;
-		remote.setPath(CTypeConversion.toJavaString(unAddr.sun_path()));
-		return remote;
+		return toUnixSocketAddress((Un.sockaddr_un) sa, sa_len_Pointer.read());
 	}
 
 }
@@ -1,28 +1,129 @@
 package net.jzajic.graalvm.socket;
 
 import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import net.jzajic.graalvm.headers.Un;
+
+/**
+ * An AF_UNIX socket address.
+ *
+ * The address is either a filesystem path, a Linux abstract-namespace name
+ * (a path starting with a NUL character, see {@link #abstractAddress(String)})
+ * or empty for unnamed sockets. The bytes of sun_path are encoded once when
+ * the address is created and reused for every bind, connect and send.
+ *
+ * Addresses reported by the kernel keep the bytes of sun_path as they were
+ * received, so a name that is not valid UTF-8 still reaches its socket
+ * when it is used to reply. Two addresses are equal if their sun_path
+ * bytes are equal.
+ */
 public class UnixSocketAddress extends SocketAddress {
 
 	private static final long serialVersionUID = -1166004607034249624L;
-	
+
 	private String path;
-	
+
+	// content of sun_path without a terminating NUL, computed from path or
+	// as received from the kernel, null if deserialized from an older form
+	private byte[] encoded;
+
 	public UnixSocketAddress() {
 		this.path = "";
 	}
-	
+
 	public UnixSocketAddress(String path) {
 		super();
-		this.path = path;
+		setPath(path);
+	}
+
+	/**
+	 * Creates an address from the content of sun_path, without a terminating
+	 * NUL. The bytes are used as they are, the path is their UTF-8 decoding.
+	 */
+	public UnixSocketAddress(byte[] encoded) {
+		if (encoded.length > Un.SUN_PATH_SIZE)
+			throw new IllegalArgumentException("Path too long for sun_path");
+		this.encoded = encoded.clone();
+		this.path = new String(encoded, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an address in the Linux abstract namespace. Abstract names are
+	 * not bound to the filesystem, so neither path lookup nor permission
+	 * checks take place on connect, and they vanish with the last socket.
+	 */
+	public static UnixSocketAddress abstractAddress(String name) {
+		return new UnixSocketAddress('\0' + name);
 	}
 
 	public String getPath() {
 		return path;
 	}
-	
+
 	public void setPath(String path) {
+		byte[] bytes = encode(path);
 		this.path = path;
+		this.encoded = bytes;
+	}
+
+	/**
+	 * Tells whether this is a Linux abstract-namespace address
+	 */
+	public boolean isAbstract() {
+		return path.length() > 0 && path.charAt(0) == '\0';
 	}
-	
+
+	/**
+	 * Returns the name of an abstract address without the leading NUL
+	 */
+	public String getAbstractName() {
+		if (!isAbstract())
+			throw new IllegalStateException("Not an abstract address");
+		return path.substring(1);
+	}
+
+	/**
+	 * Returns the encoded content of sun_path, without a terminating NUL.
+	 * The array is shared and must not be modified.
+	 */
+	public byte[] getEncoded() {
+		byte[] bytes = encoded;
+		if (bytes == null) {
+			// deserialized
+			bytes = encode(path);
+			encoded = bytes;
+		}
+		return bytes;
+	}
+
+	private static byte[] encode(String path) {
+		if (path == null)
+			throw new NullPointerException();
+		byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Un.SUN_PATH_SIZE)
+			throw new IllegalArgumentException("Path too long for sun_path: " + path);
+		return bytes;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof UnixSocketAddress))
+			return false;
+		return Arrays.equals(getEncoded(), ((UnixSocketAddress) obj).getEncoded());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(getEncoded());
+	}
+
+	@Override
+	public String toString() {
+		return isAbstract() ? '@' + getAbstractName() : path;
+	}
+
 }
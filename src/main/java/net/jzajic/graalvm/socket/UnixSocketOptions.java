@@ -23,7 +23,8 @@ public class UnixSocketOptions {
   		new GenericOption<Credentials>("SO_PEERCRED", Credentials.class);
 	
   /**
-   * Get/Set receive timeout.
+   * Get/Set receive timeout in milliseconds. Socket channels enforce it
+   * with poll instead of setting the option on the socket.
    */
   public static final SocketOption<Integer> SO_RCVTIMEO =
   			new GenericOption<Integer>("SO_RCVTIMEO", Integer.class);
@@ -0,0 +1,285 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I/O counters and system call latency histograms of a channel, or of all
+ * channels of the provider.
+ *
+ * Metrics are compiled in but disabled unless the system property
+ * {@value #PROPERTY} is true. The property is read when this class is
+ * initialized, which in a native image happens at image build time, so
+ * it has to be passed to native-image as -D{@value #PROPERTY}=true. When
+ * disabled every recording site folds away and channels carry no metrics.
+ *
+ * Each read or write system call issued by a channel is counted with the
+ * bytes it transferred, whether it transferred less than requested, and
+ * whether it failed with EAGAIN (the descriptor was not ready). Calls
+ * interrupted by a signal (EINTR) are restarted by the native layer before
+ * a channel sees their result, so they are only counted for all channels,
+ * see {@link #readsRestarted()} and {@link #writesRestarted()}.
+ * Its duration is recorded in a histogram of {@value #BUCKETS} buckets,
+ * bucket i counting calls that took less than 2^i nanoseconds and at least
+ * 2^(i-1), the last bucket also counts all longer calls.
+ *
+ * Channel metrics are updated by the thread holding the read or write
+ * lock of the channel without further synchronization, other threads may
+ * observe slightly stale values.
+ *
+ * @see UnixSocketChannelImpl#metrics()
+ * @see UnixSocketSelectorProvider#metrics()
+ */
+public abstract class ChannelMetrics {
+
+	public static final String PROPERTY = "net.jzajic.graalvm.socket.metrics";
+
+	public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+	public static final int BUCKETS = 40;
+
+	// Counter indices, the write counters follow the read counters
+	private static final int CALLS = 0;
+	private static final int BYTES = 1;
+	private static final int SHORT = 2;
+	private static final int UNAVAILABLE = 3;
+	private static final int COUNTERS = 4;
+
+	private static final int READ = 0;
+	private static final int WRITE = COUNTERS;
+
+	// Totals of all channels, created only if metrics are enabled
+	private static final Aggregate TOTAL = ENABLED ? new Aggregate() : null;
+
+	// System calls restarted after EINTR, created only if metrics are enabled
+	private static final LongAdder READS_RESTARTED = ENABLED ? new LongAdder() : null;
+	private static final LongAdder WRITES_RESTARTED = ENABLED ? new LongAdder() : null;
+
+	ChannelMetrics() { }
+
+	abstract long counter(int index);
+
+	abstract void add(int index, long value);
+
+	abstract long bucket(int index);
+
+	abstract void increment(int bucket);
+
+	public long readCalls() {
+		return counter(READ + CALLS);
+	}
+
+	public long bytesRead() {
+		return counter(READ + BYTES);
+	}
+
+	/**
+	 * Returns the number of reads that returned fewer bytes than requested.
+	 */
+	public long shortReads() {
+		return counter(READ + SHORT);
+	}
+
+	/**
+	 * Returns the number of reads that failed with EAGAIN.
+	 */
+	public long readsUnavailable() {
+		return counter(READ + UNAVAILABLE);
+	}
+
+	public long writeCalls() {
+		return counter(WRITE + CALLS);
+	}
+
+	public long bytesWritten() {
+		return counter(WRITE + BYTES);
+	}
+
+	/**
+	 * Returns the number of writes that took fewer bytes than requested.
+	 */
+	public long shortWrites() {
+		return counter(WRITE + SHORT);
+	}
+
+	/**
+	 * Returns the number of writes that failed with EAGAIN.
+	 */
+	public long writesUnavailable() {
+		return counter(WRITE + UNAVAILABLE);
+	}
+
+	/**
+	 * Returns a copy of the read latency histogram.
+	 */
+	public long[] readLatency() {
+		return histogram(READ);
+	}
+
+	/**
+	 * Returns a copy of the write latency histogram.
+	 */
+	public long[] writeLatency() {
+		return histogram(WRITE);
+	}
+
+	private long[] histogram(int direction) {
+		int base = (direction == READ) ? 0 : BUCKETS;
+		long[] h = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			h[i] = bucket(base + i);
+		return h;
+	}
+
+	/**
+	 * Returns the exclusive upper bound in nanoseconds of the durations
+	 * counted by the histogram bucket.
+	 */
+	public static long bucketLimit(int bucket) {
+		return 1L << bucket;
+	}
+
+	static int bucketOf(long nanos) {
+		int b = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+		return Math.min(b, BUCKETS - 1);
+	}
+
+	// Records a read system call that returned n, a byte count or an
+	// IOStatus value. partial is true if fewer bytes than requested were
+	// transferred.
+	void read(long n, boolean partial, long nanos) {
+		record(READ, n, partial, nanos);
+	}
+
+	void write(long n, boolean partial, long nanos) {
+		record(WRITE, n, partial, nanos);
+	}
+
+	private void record(int direction, long n, boolean partial, long nanos) {
+		add(direction + CALLS, 1);
+		if (n > 0) {
+			add(direction + BYTES, n);
+			if (partial)
+				add(direction + SHORT, 1);
+		} else if (n == IOStatus.UNAVAILABLE) {
+			add(direction + UNAVAILABLE, 1);
+		}
+		increment(((direction == READ) ? 0 : BUCKETS) + bucketOf(nanos));
+	}
+
+	/**
+	 * Counts a system call that the native layer restarted after EINTR.
+	 * These retries are not attributed to a channel. Must only be called if
+	 * metrics are enabled.
+	 */
+	public static void interrupted(boolean reading) {
+		(reading ? READS_RESTARTED : WRITES_RESTARTED).increment();
+	}
+
+	/**
+	 * Returns the number of reads of all channels that were interrupted by
+	 * a signal (EINTR) and restarted, zero if metrics are disabled.
+	 */
+	public static long readsRestarted() {
+		return ENABLED ? READS_RESTARTED.sum() : 0;
+	}
+
+	/**
+	 * Returns the number of writes of all channels that were interrupted by
+	 * a signal (EINTR) and restarted, zero if metrics are disabled.
+	 */
+	public static long writesRestarted() {
+		return ENABLED ? WRITES_RESTARTED.sum() : 0;
+	}
+
+	// Returns the totals of all channels, or null if metrics are disabled
+	static ChannelMetrics total() {
+		return TOTAL;
+	}
+
+	// Returns new metrics for a channel, or null if metrics are disabled
+	static ChannelMetrics forChannel() {
+		return ENABLED ? new PerChannel(TOTAL) : null;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName()
+				+ "[reads=" + readCalls() + ", bytesRead=" + bytesRead()
+				+ ", shortReads=" + shortReads() + ", readsUnavailable=" + readsUnavailable()
+				+ ", writes=" + writeCalls() + ", bytesWritten=" + bytesWritten()
+				+ ", shortWrites=" + shortWrites() + ", writesUnavailable=" + writesUnavailable() + "]";
+	}
+
+	/**
+	 * Metrics of one channel. Reads and writes each have a single updating
+	 * thread at a time, the holder of the channel's read or write lock, so
+	 * plain fields suffice. Every update is forwarded to the totals.
+	 */
+	private static final class PerChannel extends ChannelMetrics {
+		private final long[] counters = new long[2 * COUNTERS];
+		private final long[] buckets = new long[2 * BUCKETS];
+		private final ChannelMetrics total;
+
+		PerChannel(ChannelMetrics total) {
+			this.total = total;
+		}
+
+		@Override
+		long counter(int index) {
+			return counters[index];
+		}
+
+		@Override
+		void add(int index, long value) {
+			counters[index] += value;
+			total.add(index, value);
+		}
+
+		@Override
+		long bucket(int index) {
+			return buckets[index];
+		}
+
+		@Override
+		void increment(int bucket) {
+			buckets[bucket]++;
+			total.increment(bucket);
+		}
+	}
+
+	/**
+	 * Totals of all channels, updated concurrently.
+	 */
+	private static final class Aggregate extends ChannelMetrics {
+		private final LongAdder[] counters = adders(2 * COUNTERS);
+		private final LongAdder[] buckets = adders(2 * BUCKETS);
+
+		private static LongAdder[] adders(int n) {
+			LongAdder[] a = new LongAdder[n];
+			for (int i = 0; i < n; i++)
+				a[i] = new LongAdder();
+			return a;
+		}
+
+		@Override
+		long counter(int index) {
+			return counters[index].sum();
+		}
+
+		@Override
+		void add(int index, long value) {
+			counters[index].add(value);
+		}
+
+		@Override
+		long bucket(int index) {
+			return buckets[index].sum();
+		}
+
+		@Override
+		void increment(int bucket) {
+			buckets[bucket].increment();
+		}
+	}
+
+}
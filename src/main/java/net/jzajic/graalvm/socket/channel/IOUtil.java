@@ -0,0 +1,220 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.graalvm.nativeimage.PinnedObject;
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.posix.headers.Uio;
+
+import net.jzajic.graalvm.headers.BufferUtils;
+import net.jzajic.graalvm.posix.Native;
+import net.jzajic.graalvm.posix.UnixNet;
+
+/**
+ * File-descriptor based I/O utilities shared by the channel implementations.
+ *
+ * Direct buffers are handed to the kernel by their native address, heap buffers
+ * are pinned for the duration of the system call, so neither path allocates or
+ * copies on the steady state.
+ */
+final class IOUtil {
+
+	// Maximum number of buffers passed to a single readv/writev call
+	static final int IOV_MAX = 64;
+
+	private IOUtil() { }
+
+	static int read(int fd, ByteBuffer dst) throws IOException {
+		if (dst.isReadOnly())
+			throw new IllegalArgumentException("Read-only buffer");
+		int pos = dst.position();
+		int lim = dst.limit();
+		int rem = (pos <= lim ? lim - pos : 0);
+		if (rem == 0)
+			return 0;
+
+		int n;
+		if (dst.isDirect()) {
+			n = Native.read(fd, rem, address(dst, pos));
+		} else {
+			try (PinnedObject pin = PinnedObject.create(dst.array())) {
+				n = Native.read(fd, rem, pin.addressOfArrayElement(dst.arrayOffset() + pos));
+			}
+		}
+		if (n > 0)
+			dst.position(pos + n);
+		return n;
+	}
+
+	static int write(int fd, ByteBuffer src) throws IOException {
+		int pos = src.position();
+		int lim = src.limit();
+		int rem = (pos <= lim ? lim - pos : 0);
+		if (rem == 0)
+			return 0;
+
+		int n;
+		if (src.isDirect()) {
+			n = Native.write(fd, rem, address(src, pos));
+		} else if (src.hasArray()) {
+			try (PinnedObject pin = PinnedObject.create(src.array())) {
+				n = Native.write(fd, rem, pin.addressOfArrayElement(src.arrayOffset() + pos));
+			}
+		} else {
+			// read-only heap buffer, the backing array is not accessible
+			byte[] buffer = new byte[rem];
+			src.duplicate().get(buffer);
+			try (PinnedObject pin = PinnedObject.create(buffer)) {
+				n = Native.write(fd, rem, pin.addressOfArrayElement(0));
+			}
+		}
+		if (n > 0)
+			src.position(pos + n);
+		return n;
+	}
+
+	// Sends the buffer with the descriptors as SCM_RIGHTS ancillary data
+	static int write(int fd, ByteBuffer src, FileDescriptor[] fds) throws IOException {
+		int pos = src.position();
+		int lim = src.limit();
+		int rem = (pos <= lim ? lim - pos : 0);
+		if (rem == 0)
+			throw new IllegalArgumentException("Descriptors must be sent with at least one byte");
+
+		PinnedObject[] pins = src.isDirect() ? null : new PinnedObject[1];
+		int n;
+		try {
+			n = UnixNet.sendmsg(fd, bufferAddress(src, pos, rem, pins, 0), rem, fds);
+		} finally {
+			unpin(pins, 1);
+		}
+		if (n > 0)
+			src.position(pos + n);
+		return n;
+	}
+
+	// Receives into the buffer, descriptors passed with the data are added to fds
+	static int read(int fd, ByteBuffer dst, List<FileDescriptor> fds) throws IOException {
+		if (dst.isReadOnly())
+			throw new IllegalArgumentException("Read-only buffer");
+		int pos = dst.position();
+		int lim = dst.limit();
+		int rem = (pos <= lim ? lim - pos : 0);
+		if (rem == 0)
+			return 0;
+
+		PinnedObject[] pins = dst.isDirect() ? null : new PinnedObject[1];
+		int n;
+		try {
+			n = UnixNet.recvmsg(fd, bufferAddress(dst, pos, rem, pins, 0), rem, fds);
+		} finally {
+			unpin(pins, 1);
+		}
+		if (n > 0)
+			dst.position(pos + n);
+		return n;
+	}
+
+	static long read(int fd, ByteBuffer[] bufs, int offset, int length) throws IOException {
+		return vectoredIO(fd, bufs, offset, length, true);
+	}
+
+	static long write(int fd, ByteBuffer[] bufs, int offset, int length) throws IOException {
+		return vectoredIO(fd, bufs, offset, length, false);
+	}
+
+	// Builds the iovec array on the stack and issues a single readv/writev.
+	// At most IOV_MAX buffers with remaining bytes are transferred per call.
+	private static long vectoredIO(int fd, ByteBuffer[] bufs, int offset, int length, boolean reading) throws IOException {
+		Uio.iovec iov = StackValue.get(IOV_MAX, Uio.iovec.class);
+		PinnedObject[] pins = null;
+		int iovcnt = 0;
+		try {
+			int end = offset + length;
+			for (int i = offset; i < end && iovcnt < IOV_MAX; i++) {
+				ByteBuffer buf = bufs[i];
+				if (reading && buf.isReadOnly())
+					throw new IllegalArgumentException("Read-only buffer");
+				int pos = buf.position();
+				int lim = buf.limit();
+				int rem = (pos <= lim ? lim - pos : 0);
+				if (rem == 0)
+					continue;
+
+				if (pins == null && !buf.isDirect())
+					pins = new PinnedObject[IOV_MAX];
+				PointerBase base = bufferAddress(buf, pos, rem, pins, iovcnt);
+				Uio.iovec vec = iovecAt(iov, iovcnt);
+				vec.iov_base(base);
+				vec.iov_len(WordFactory.unsigned(rem));
+				iovcnt++;
+			}
+			if (iovcnt == 0)
+				return 0;
+
+			long n = reading ? Native.readv(fd, iov, iovcnt) : Native.writev(fd, iov, iovcnt);
+			if (n > 0)
+				advance(bufs, offset, end, n);
+			return n;
+		} finally {
+			unpin(pins, iovcnt);
+		}
+	}
+
+	/**
+	 * Returns the native address of the buffer at the given position. Heap
+	 * buffers are pinned into pins[slot] and must be released with unpin.
+	 */
+	static PointerBase bufferAddress(ByteBuffer buf, int pos, int rem, PinnedObject[] pins, int slot) {
+		if (buf.isDirect())
+			return address(buf, pos);
+		if (buf.hasArray()) {
+			pins[slot] = PinnedObject.create(buf.array());
+			return pins[slot].addressOfArrayElement(buf.arrayOffset() + pos);
+		}
+		// read-only heap buffer, the backing array is not accessible
+		byte[] buffer = new byte[rem];
+		buf.duplicate().get(buffer);
+		pins[slot] = PinnedObject.create(buffer);
+		return pins[slot].addressOfArrayElement(0);
+	}
+
+	static void unpin(PinnedObject[] pins, int count) {
+		if (pins != null) {
+			for (int i = 0; i < count; i++) {
+				if (pins[i] != null) {
+					pins[i].close();
+					pins[i] = null;
+				}
+			}
+		}
+	}
+
+	// Moves buffer positions forward by the number of bytes transferred
+	private static void advance(ByteBuffer[] bufs, int offset, int end, long n) {
+		for (int i = offset; i < end && n > 0; i++) {
+			ByteBuffer buf = bufs[i];
+			int rem = buf.remaining();
+			int step = (int) Math.min(rem, n);
+			buf.position(buf.position() + step);
+			n -= step;
+		}
+	}
+
+	static Uio.iovec iovecAt(Uio.iovec iov, int index) {
+		return (Uio.iovec) ((Pointer) iov).add(index * SizeOf.get(Uio.iovec.class));
+	}
+
+	static PointerBase address(ByteBuffer bb, int pos) {
+		return WordFactory.pointer(BufferUtils.Util_java_nio_Buffer.getAddress(bb) + pos);
+	}
+
+}
@@ -0,0 +1,108 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A read, write, connect or accept operation of an asynchronous channel.
+ *
+ * The operation is completed exactly once, either by the thread that
+ * performs the I/O, by its timeout, by cancellation or by closing the
+ * channel. The result is delivered to the completion handler or, if there
+ * is none, to the Future.
+ */
+final class PendingOp<V, A> {
+
+	// returned by a Task that would block
+	static final Object WOULD_BLOCK = new Object();
+
+	interface Task {
+		/**
+		 * Attempts the I/O without blocking.
+		 *
+		 * @return the result or WOULD_BLOCK
+		 */
+		Object perform() throws IOException;
+	}
+
+	final UnixPollableChannel channel;
+	final Task task;
+	final A attachment;
+	final CompletionHandler<V, ? super A> handler;
+	final PendingFuture<V> future;
+
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	// true while the operation waits for readiness, protected by the
+	// channel's update lock
+	boolean armed;
+
+	volatile ScheduledFuture<?> timer;
+
+	PendingOp(UnixPollableChannel channel, Task task, A attachment, CompletionHandler<V, ? super A> handler) {
+		this.channel = channel;
+		this.task = task;
+		this.attachment = attachment;
+		this.handler = handler;
+		this.future = (handler == null) ? new PendingFuture<V>(this) : null;
+	}
+
+	boolean isDone() {
+		return done.get();
+	}
+
+	/**
+	 * Claims the completion of this operation.
+	 *
+	 * @return true if the caller must complete the operation
+	 */
+	boolean tryFinish() {
+		if (!done.compareAndSet(false, true))
+			return false;
+		ScheduledFuture<?> t = timer;
+		if (t != null)
+			t.cancel(false);
+		return true;
+	}
+
+	/**
+	 * Delivers the result of an operation claimed with tryFinish
+	 */
+	@SuppressWarnings("unchecked")
+	void deliver(UnixAsynchronousChannelGroup group, Object result, Throwable exc) {
+		if (handler == null) {
+			if (exc != null)
+				future.completeExceptionally(exc);
+			else
+				future.complete((V) result);
+		} else {
+			group.invoke(handler, attachment, (V) result, exc);
+		}
+	}
+
+	/**
+	 * Future of an operation started without a completion handler
+	 */
+	static final class PendingFuture<V> extends CompletableFuture<V> {
+
+		private final PendingOp<V, ?> op;
+
+		PendingFuture(PendingOp<V, ?> op) {
+			this.op = op;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!op.tryFinish())
+				return isCancelled();
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			op.channel.onCancel(op, mayInterruptIfRunning);
+			return cancelled;
+		}
+
+	}
+
+}
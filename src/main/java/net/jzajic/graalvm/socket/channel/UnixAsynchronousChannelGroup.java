@@ -0,0 +1,207 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannel;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ShutdownChannelGroupException;
+import java.nio.channels.spi.AsynchronousChannelProvider;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An AsynchronousChannelGroup of epoll event loops, each polled by its own
+ * thread. Channels are assigned to the loops round-robin and stay on their
+ * loop. Completion handlers are invoked on the loop threads, directly when
+ * the operation completes there (up to a bounded nesting depth) and
+ * otherwise through the loop's task queue, so handlers must not block.
+ */
+final class UnixAsynchronousChannelGroup extends AsynchronousChannelGroup {
+
+	// maximum nesting of completion handlers invoked directly
+	private static final int MAX_HANDLER_DEPTH = 16;
+
+	private final UnixEventLoop[] loops;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+
+	// executor that runs the loops, null if the group created its threads
+	private final ExecutorService executor;
+
+	// open channels, closed by shutdownNow
+	private final Set<AsynchronousChannel> channels = ConcurrentHashMap.newKeySet();
+
+	private final Object timerLock = new Object();
+	private ScheduledThreadPoolExecutor timer; // created on demand
+
+	// the default group ignores shutdown
+	private final boolean isDefault;
+
+	private volatile boolean shutdown;
+	private final AtomicBoolean terminateInitiated = new AtomicBoolean();
+	private final CountDownLatch terminated;
+
+	UnixAsynchronousChannelGroup(AsynchronousChannelProvider provider, int nThreads, ThreadFactory factory,
+			boolean isDefault) throws IOException {
+		super(provider);
+		this.executor = null;
+		this.isDefault = isDefault;
+		this.loops = createLoops(nThreads);
+		this.terminated = new CountDownLatch(loops.length);
+		for (UnixEventLoop loop : loops) {
+			Thread t = factory.newThread(loop);
+			t.start();
+		}
+	}
+
+	UnixAsynchronousChannelGroup(AsynchronousChannelProvider provider, ExecutorService executor, int initialSize)
+			throws IOException {
+		super(provider);
+		this.executor = executor;
+		this.isDefault = false;
+		this.loops = createLoops(initialSize);
+		this.terminated = new CountDownLatch(loops.length);
+		for (UnixEventLoop loop : loops) {
+			executor.execute(loop);
+		}
+	}
+
+	private UnixEventLoop[] createLoops(int n) throws IOException {
+		UnixEventLoop[] result = new UnixEventLoop[Math.max(n, 1)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new UnixEventLoop(this);
+		}
+		return result;
+	}
+
+	/**
+	 * Assigns the next event loop to a new channel
+	 */
+	UnixEventLoop register(AsynchronousChannel ch) {
+		if (shutdown)
+			throw new ShutdownChannelGroupException();
+		channels.add(ch);
+		return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+	}
+
+	void unregister(AsynchronousChannel ch) {
+		if (channels.remove(ch) && shutdown && channels.isEmpty())
+			terminate();
+	}
+
+	ScheduledFuture<?> schedule(Runnable task, long timeout, TimeUnit unit) {
+		ScheduledExecutorService t;
+		synchronized (timerLock) {
+			if (timer == null) {
+				timer = new ScheduledThreadPoolExecutor(1, r -> {
+					Thread thread = new Thread(r, "unix-aio-timer");
+					thread.setDaemon(true);
+					return thread;
+				});
+				timer.setRemoveOnCancelPolicy(true);
+			}
+			t = timer;
+		}
+		return t.schedule(task, timeout, unit);
+	}
+
+	/**
+	 * Invokes the completion handler, directly on a loop thread of this
+	 * group or through the task queue of a loop otherwise.
+	 */
+	<V, A> void invoke(CompletionHandler<V, ? super A> handler, A attachment, V result, Throwable exc) {
+		UnixEventLoop current = UnixEventLoop.current();
+		if (current != null && current.group == this && current.handlerDepth < MAX_HANDLER_DEPTH) {
+			current.handlerDepth++;
+			try {
+				invokeDirect(handler, attachment, result, exc);
+			} finally {
+				current.handlerDepth--;
+			}
+		} else {
+			UnixEventLoop loop = (current != null && current.group == this) ? current
+					: loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+			try {
+				loop.execute(() -> invokeDirect(handler, attachment, result, exc));
+			} catch (RejectedExecutionException x) {
+				// group terminated
+				invokeDirect(handler, attachment, result, exc);
+			}
+		}
+	}
+
+	private static <V, A> void invokeDirect(CompletionHandler<V, ? super A> handler, A attachment, V result,
+			Throwable exc) {
+		try {
+			if (exc == null)
+				handler.completed(result, attachment);
+			else
+				handler.failed(exc, attachment);
+		} catch (Throwable x) {
+			UnixEventLoop.uncaught(x);
+		}
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return terminated.getCount() == 0;
+	}
+
+	@Override
+	public void shutdown() {
+		if (isDefault)
+			return;
+		shutdown = true;
+		if (channels.isEmpty())
+			terminate();
+	}
+
+	@Override
+	public void shutdownNow() throws IOException {
+		if (isDefault)
+			return;
+		shutdown = true;
+		for (AsynchronousChannel ch : channels) {
+			ch.close();
+		}
+		terminate();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	private void terminate() {
+		if (!terminateInitiated.compareAndSet(false, true))
+			return;
+		for (UnixEventLoop loop : loops) {
+			loop.stop();
+		}
+		synchronized (timerLock) {
+			if (timer != null)
+				timer.shutdownNow();
+		}
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	void loopTerminated(UnixEventLoop loop) {
+		terminated.countDown();
+	}
+
+}
@@ -0,0 +1,87 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.IllegalChannelGroupException;
+import java.nio.channels.spi.AsynchronousChannelProvider;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provider of asynchronous AF_UNIX channels and of the epoll event loop
+ * groups that drive them.
+ *
+ * Channels opened without a group use a default group with one event loop
+ * per available processor, running on daemon threads. The default group
+ * cannot be shut down.
+ */
+public class UnixAsynchronousChannelProvider extends AsynchronousChannelProvider {
+
+	private static final UnixAsynchronousChannelProvider INSTANCE = new UnixAsynchronousChannelProvider();
+
+	private final Object defaultGroupLock = new Object();
+	private UnixAsynchronousChannelGroup defaultGroup; // created on demand
+
+	public static AsynchronousChannelProvider provider() {
+		return INSTANCE;
+	}
+
+	@Override
+	public AsynchronousChannelGroup openAsynchronousChannelGroup(int nThreads, ThreadFactory threadFactory)
+			throws IOException {
+		if (nThreads <= 0)
+			throw new IllegalArgumentException("'nThreads' must be > 0");
+		return new UnixAsynchronousChannelGroup(this, nThreads, threadFactory, false);
+	}
+
+	/**
+	 * Creates a group whose event loops run on the executor, one loop per
+	 * initialSize (at least one). Each loop occupies an executor thread for
+	 * the lifetime of the group.
+	 */
+	@Override
+	public AsynchronousChannelGroup openAsynchronousChannelGroup(ExecutorService executor, int initialSize)
+			throws IOException {
+		return new UnixAsynchronousChannelGroup(this, executor, initialSize);
+	}
+
+	@Override
+	public AsynchronousServerSocketChannel openAsynchronousServerSocketChannel(AsynchronousChannelGroup group)
+			throws IOException {
+		return new UnixAsynchronousServerSocketChannel(toUnixGroup(group));
+	}
+
+	@Override
+	public AsynchronousSocketChannel openAsynchronousSocketChannel(AsynchronousChannelGroup group)
+			throws IOException {
+		return new UnixAsynchronousSocketChannel(toUnixGroup(group));
+	}
+
+	private UnixAsynchronousChannelGroup toUnixGroup(AsynchronousChannelGroup group) throws IOException {
+		if (group == null)
+			return defaultGroup();
+		if (!(group instanceof UnixAsynchronousChannelGroup))
+			throw new IllegalChannelGroupException();
+		return (UnixAsynchronousChannelGroup) group;
+	}
+
+	private UnixAsynchronousChannelGroup defaultGroup() throws IOException {
+		synchronized (defaultGroupLock) {
+			if (defaultGroup == null) {
+				AtomicInteger count = new AtomicInteger();
+				ThreadFactory factory = r -> {
+					Thread t = new Thread(r, "unix-aio-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				};
+				defaultGroup = new UnixAsynchronousChannelGroup(this,
+						Runtime.getRuntime().availableProcessors(), factory, true);
+			}
+			return defaultGroup;
+		}
+	}
+
+}
@@ -0,0 +1,256 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.AcceptPendingException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.NotYetBoundException;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.oracle.svm.core.posix.PosixUtils;
+import com.oracle.svm.core.posix.headers.Poll;
+
+/**
+ * An AsynchronousServerSocketChannel for AF_UNIX stream sockets.
+ *
+ * Connections are accepted with accept4 on a non-blocking
+ * {@link UnixServerSocketChannel}, when the accept queue is empty the
+ * pending accept is armed on the channel's {@link UnixEventLoop}. Accepted
+ * channels belong to the same group.
+ */
+public class UnixAsynchronousServerSocketChannel
+		extends AsynchronousServerSocketChannel
+		implements UnixPollableChannel {
+
+	private final UnixAsynchronousChannelGroup group;
+	private final UnixEventLoop loop;
+
+	// the underlying channel, in non-blocking mode
+	private final UnixServerSocketChannel ssc;
+	private final int fdVal;
+
+	// Lock held when updating the pending accept and the poll registration
+	private final Object updateLock = new Object();
+
+	// -- The following fields are protected by updateLock
+
+	private boolean closed;
+	private PendingOp<AsynchronousSocketChannel, ?> acceptOp;
+
+	// -- End of fields protected by updateLock
+
+	UnixAsynchronousServerSocketChannel(UnixAsynchronousChannelGroup group) throws IOException {
+		super(group.provider());
+		this.group = group;
+		this.ssc = new UnixServerSocketChannel(UnixSocketSelectorProvider.provider());
+		this.fdVal = ssc.getFDVal();
+		try {
+			ssc.configureBlocking(false);
+			this.loop = group.register(this);
+		} catch (IOException | RuntimeException x) {
+			ssc.close();
+			throw x;
+		}
+		loop.register(fdVal, this);
+	}
+
+	public static UnixAsynchronousServerSocketChannel open() throws IOException {
+		return open(null);
+	}
+
+	public static UnixAsynchronousServerSocketChannel open(AsynchronousChannelGroup group) throws IOException {
+		return (UnixAsynchronousServerSocketChannel) UnixAsynchronousChannelProvider.provider()
+				.openAsynchronousServerSocketChannel(group);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return ssc.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		PendingOp<AsynchronousSocketChannel, ?> pending;
+		synchronized (updateLock) {
+			if (closed)
+				return;
+			closed = true;
+			pending = acceptOp;
+			acceptOp = null;
+		}
+		loop.unregister(fdVal, this);
+		try {
+			ssc.close();
+		} finally {
+			group.unregister(this);
+			if (pending != null && pending.tryFinish())
+				pending.deliver(group, null, new AsynchronousCloseException());
+		}
+	}
+
+	@Override
+	public AsynchronousServerSocketChannel bind(SocketAddress local, int backlog) throws IOException {
+		ssc.bind(local, backlog);
+		return this;
+	}
+
+	@Override
+	public <T> AsynchronousServerSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+		ssc.setOption(name, value);
+		return this;
+	}
+
+	@Override
+	public <T> T getOption(SocketOption<T> name) throws IOException {
+		return ssc.getOption(name);
+	}
+
+	@Override
+	public Set<SocketOption<?>> supportedOptions() {
+		return ssc.supportedOptions();
+	}
+
+	@Override
+	public SocketAddress getLocalAddress() throws IOException {
+		return ssc.getLocalAddress();
+	}
+
+	@Override
+	public <A> void accept(A attachment, CompletionHandler<AsynchronousSocketChannel, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		implAccept(attachment, handler);
+	}
+
+	@Override
+	public Future<AsynchronousSocketChannel> accept() {
+		return implAccept(null, null);
+	}
+
+	private <A> Future<AsynchronousSocketChannel> implAccept(A attachment,
+			CompletionHandler<AsynchronousSocketChannel, ? super A> handler) {
+		PendingOp<AsynchronousSocketChannel, A> op = new PendingOp<>(this, () -> {
+			SocketChannel sc = ssc.acceptNonBlocking();
+			if (sc == null)
+				return PendingOp.WOULD_BLOCK;
+			return new UnixAsynchronousSocketChannel(group, (UnixSocketChannelImpl) sc);
+		}, attachment, handler);
+		boolean isClosed;
+		synchronized (updateLock) {
+			isClosed = closed;
+			if (!isClosed) {
+				if (!ssc.isBound())
+					throw new NotYetBoundException();
+				if (acceptOp != null)
+					throw new AcceptPendingException();
+				acceptOp = op;
+			}
+		}
+		if (isClosed) {
+			if (op.tryFinish())
+				op.deliver(group, null, new ClosedChannelException());
+			return op.future;
+		}
+		if (!attempt(op))
+			arm(op);
+		return op.future;
+	}
+
+	/**
+	 * Accepts a connection for the operation.
+	 *
+	 * @return true if the operation completed, false if it would block
+	 */
+	private boolean attempt(PendingOp<AsynchronousSocketChannel, ?> op) {
+		Object result;
+		try {
+			result = op.task.perform();
+		} catch (Throwable x) {
+			finish(op, null, x);
+			return true;
+		}
+		if (result == PendingOp.WOULD_BLOCK)
+			return false;
+		if (!finish(op, result, null)) {
+			// cancelled or closed in the meantime
+			try {
+				((AsynchronousSocketChannel) result).close();
+			} catch (IOException x) {
+				// ignore
+			}
+		}
+		return true;
+	}
+
+	private boolean finish(PendingOp<?, ?> op, Object result, Throwable exc) {
+		if (!op.tryFinish())
+			return false;
+		clear(op);
+		op.deliver(group, result, exc);
+		return true;
+	}
+
+	private void clear(PendingOp<?, ?> op) {
+		synchronized (updateLock) {
+			op.armed = false;
+			if (acceptOp == op)
+				acceptOp = null;
+		}
+	}
+
+	private void arm(PendingOp<AsynchronousSocketChannel, ?> op) {
+		int err;
+		synchronized (updateLock) {
+			if (closed || op.isDone())
+				return;
+			op.armed = true;
+			err = loop.arm(fdVal, Poll.POLLIN());
+		}
+		if (err != 0)
+			finish(op, null, new IOException(PosixUtils.errorString(err, "epoll_ctl failed")));
+	}
+
+	@Override
+	public void onEvent(int events) {
+		PendingOp<AsynchronousSocketChannel, ?> op;
+		synchronized (updateLock) {
+			op = acceptOp;
+			if (op == null || !op.armed)
+				return;
+			op.armed = false;
+		}
+		if (!attempt(op))
+			arm(op);
+	}
+
+	@Override
+	public void onCancel(PendingOp<?, ?> op, boolean mayInterruptIfRunning) {
+		clear(op);
+		if (mayInterruptIfRunning) {
+			try {
+				close();
+			} catch (IOException x) {
+				// ignore
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.getClass().getName());
+		sb.append('[');
+		sb.append(ssc.toString());
+		sb.append(']');
+		return sb.toString();
+	}
+
+}
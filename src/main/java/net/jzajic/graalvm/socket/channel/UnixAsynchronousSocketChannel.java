@@ -0,0 +1,579 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ConnectionPendingException;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.ReadPendingException;
+import java.nio.channels.ShutdownChannelGroupException;
+import java.nio.channels.WritePendingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.oracle.svm.core.posix.PosixUtils;
+import com.oracle.svm.core.posix.headers.Poll;
+
+/**
+ * An AsynchronousSocketChannel for AF_UNIX stream sockets.
+ *
+ * The channel drives a non-blocking {@link UnixSocketChannelImpl}. An
+ * operation is first attempted on the calling thread; if it would block it
+ * is armed on the channel's {@link UnixEventLoop} and completed on the loop
+ * thread once the socket is ready. At most one read and one write may be
+ * outstanding at any time.
+ *
+ * A timed out read or write completes with InterruptedByTimeoutException.
+ * As the I/O may still be in progress on the event loop, the state of the
+ * buffer and of the socket is then undefined: further reads (or writes
+ * after a timed out write) throw IllegalStateException. The same applies
+ * to a read or write whose Future is cancelled.
+ */
+public class UnixAsynchronousSocketChannel
+		extends AsynchronousSocketChannel
+		implements UnixPollableChannel {
+
+	// bounds of the backoff between connect attempts
+	private static final long CONNECT_RETRY_MIN_MILLIS = 1;
+	private static final long CONNECT_RETRY_MAX_MILLIS = 100;
+
+	private final UnixAsynchronousChannelGroup group;
+	private final UnixEventLoop loop;
+
+	// the underlying channel, in non-blocking mode
+	private final UnixSocketChannelImpl ch;
+	private final int fdVal;
+
+	// Read lock held while performing I/O, the write lock is taken by close
+	// so that the descriptor is not closed (and its number reused) under an
+	// operation in progress
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+	// Lock held when updating the pending operations and the poll registration
+	private final Object updateLock = new Object();
+
+	// -- The following fields are protected by updateLock
+
+	private boolean closed;
+	private PendingOp<Void, ?> connectOp;
+	private PendingOp<?, ?> readOp;
+	private PendingOp<?, ?> writeOp;
+
+	// set when a read or write timed out or was cancelled
+	private boolean readKilled;
+	private boolean writeKilled;
+
+	// -- End of fields protected by updateLock
+
+	UnixAsynchronousSocketChannel(UnixAsynchronousChannelGroup group) throws IOException {
+		this(group, new UnixSocketChannelImpl(UnixSocketSelectorProvider.provider()));
+	}
+
+	// Constructor for channels accepted by UnixAsynchronousServerSocketChannel
+	UnixAsynchronousSocketChannel(UnixAsynchronousChannelGroup group, UnixSocketChannelImpl ch) throws IOException {
+		super(group.provider());
+		this.group = group;
+		this.ch = ch;
+		this.fdVal = ch.getFDVal();
+		try {
+			ch.configureBlocking(false);
+			this.loop = group.register(this);
+		} catch (IOException | RuntimeException x) {
+			ch.close();
+			throw x;
+		}
+		loop.register(fdVal, this);
+	}
+
+	public static UnixAsynchronousSocketChannel open() throws IOException {
+		return open(null);
+	}
+
+	public static UnixAsynchronousSocketChannel open(AsynchronousChannelGroup group) throws IOException {
+		return (UnixAsynchronousSocketChannel) UnixAsynchronousChannelProvider.provider()
+				.openAsynchronousSocketChannel(group);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return ch.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<PendingOp<?, ?>> pending = new ArrayList<>(3);
+		synchronized (updateLock) {
+			if (closed)
+				return;
+			closed = true;
+			if (connectOp != null)
+				pending.add(connectOp);
+			if (readOp != null)
+				pending.add(readOp);
+			if (writeOp != null)
+				pending.add(writeOp);
+			connectOp = null;
+			readOp = null;
+			writeOp = null;
+		}
+		loop.unregister(fdVal, this);
+		closeLock.writeLock().lock();
+		try {
+			ch.close();
+		} finally {
+			closeLock.writeLock().unlock();
+			group.unregister(this);
+			for (PendingOp<?, ?> op : pending) {
+				if (op.tryFinish())
+					op.deliver(group, null, new AsynchronousCloseException());
+			}
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException x) {
+			// ignore
+		}
+	}
+
+	@Override
+	public AsynchronousSocketChannel bind(SocketAddress local) throws IOException {
+		ch.bind(local);
+		return this;
+	}
+
+	@Override
+	public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+		ch.setOption(name, value);
+		return this;
+	}
+
+	@Override
+	public <T> T getOption(SocketOption<T> name) throws IOException {
+		return ch.getOption(name);
+	}
+
+	@Override
+	public Set<SocketOption<?>> supportedOptions() {
+		return ch.supportedOptions();
+	}
+
+	@Override
+	public AsynchronousSocketChannel shutdownInput() throws IOException {
+		ch.shutdownInput();
+		return this;
+	}
+
+	@Override
+	public AsynchronousSocketChannel shutdownOutput() throws IOException {
+		ch.shutdownOutput();
+		return this;
+	}
+
+	@Override
+	public SocketAddress getRemoteAddress() throws IOException {
+		return ch.getRemoteAddress();
+	}
+
+	@Override
+	public SocketAddress getLocalAddress() throws IOException {
+		return ch.getLocalAddress();
+	}
+
+	@Override
+	public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		implConnect(remote, attachment, handler);
+	}
+
+	@Override
+	public Future<Void> connect(SocketAddress remote) {
+		return implConnect(remote, null, null);
+	}
+
+	private <A> Future<Void> implConnect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+		if (remote == null)
+			throw new NullPointerException();
+		boolean[] started = new boolean[1];
+		PendingOp<Void, A> op = new PendingOp<>(this, () -> {
+			if (!started[0]) {
+				started[0] = true;
+				return ch.connect(remote) ? null : PendingOp.WOULD_BLOCK;
+			}
+			return ch.finishConnect() ? null : PendingOp.WOULD_BLOCK;
+		}, attachment, handler);
+		boolean isClosed;
+		synchronized (updateLock) {
+			isClosed = closed;
+			if (!isClosed) {
+				if (ch.isConnected())
+					throw new AlreadyConnectedException();
+				if (connectOp != null || ch.isConnectionPending())
+					throw new ConnectionPendingException();
+				connectOp = op;
+			}
+		}
+		if (isClosed)
+			return failed(op, new ClosedChannelException());
+		if (!attempt(op))
+			retryConnect(op, CONNECT_RETRY_MIN_MILLIS);
+		return op.future;
+	}
+
+	/**
+	 * A non-blocking AF_UNIX connect fails with EAGAIN while the listen
+	 * backlog of the peer is full and the unconnected socket polls as
+	 * writable, so readiness cannot signal room in the backlog. The connect
+	 * is retried on the event loop with exponential backoff instead.
+	 */
+	private void retryConnect(PendingOp<Void, ?> op, long delay) {
+		op.timer = group.schedule(() -> {
+			try {
+				loop.execute(() -> {
+					if (!op.isDone() && !attempt(op))
+						retryConnect(op, Math.min(delay * 2, CONNECT_RETRY_MAX_MILLIS));
+				});
+			} catch (RejectedExecutionException x) {
+				finish(op, null, new ShutdownChannelGroupException());
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Integer, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		implRead(dst, timeout, unit, attachment, handler);
+	}
+
+	@Override
+	public Future<Integer> read(ByteBuffer dst) {
+		return implRead(dst, 0, null, null, null);
+	}
+
+	private <A> Future<Integer> implRead(ByteBuffer dst, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Integer, ? super A> handler) {
+		if (dst.isReadOnly())
+			throw new IllegalArgumentException("Read-only buffer");
+		PendingOp<Integer, A> op = new PendingOp<>(this, () -> {
+			int n = ch.read(dst);
+			return (n == 0 && dst.hasRemaining()) ? PendingOp.WOULD_BLOCK : n;
+		}, attachment, handler);
+		return startRead(op, timeout, unit);
+	}
+
+	@Override
+	public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Long, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		if ((offset < 0) || (length < 0) || (offset > dsts.length - length))
+			throw new IndexOutOfBoundsException();
+		for (int i = offset; i < offset + length; i++) {
+			if (dsts[i].isReadOnly())
+				throw new IllegalArgumentException("Read-only buffer");
+		}
+		PendingOp<Long, A> op = new PendingOp<>(this, () -> {
+			long n = ch.read(dsts, offset, length);
+			return (n == 0 && hasRemaining(dsts, offset, length)) ? PendingOp.WOULD_BLOCK : n;
+		}, attachment, handler);
+		startRead(op, timeout, unit);
+	}
+
+	private <V, A> Future<V> startRead(PendingOp<V, A> op, long timeout, TimeUnit unit) {
+		boolean isClosed;
+		synchronized (updateLock) {
+			isClosed = closed;
+			if (!isClosed) {
+				if (!ch.isConnected())
+					throw new NotYetConnectedException();
+				if (readKilled)
+					throw new IllegalStateException("Reading not allowed due to timeout or cancellation");
+				if (readOp != null)
+					throw new ReadPendingException();
+				readOp = op;
+			}
+		}
+		if (isClosed)
+			return failed(op, new ClosedChannelException());
+		start(op, timeout, unit);
+		return op.future;
+	}
+
+	@Override
+	public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Integer, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		implWrite(src, timeout, unit, attachment, handler);
+	}
+
+	@Override
+	public Future<Integer> write(ByteBuffer src) {
+		return implWrite(src, 0, null, null, null);
+	}
+
+	private <A> Future<Integer> implWrite(ByteBuffer src, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Integer, ? super A> handler) {
+		PendingOp<Integer, A> op = new PendingOp<>(this, () -> {
+			int n = ch.write(src);
+			return (n == 0 && src.hasRemaining()) ? PendingOp.WOULD_BLOCK : n;
+		}, attachment, handler);
+		return startWrite(op, timeout, unit);
+	}
+
+	@Override
+	public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment,
+			CompletionHandler<Long, ? super A> handler) {
+		if (handler == null)
+			throw new NullPointerException("'handler' is null");
+		if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
+			throw new IndexOutOfBoundsException();
+		PendingOp<Long, A> op = new PendingOp<>(this, () -> {
+			long n = ch.write(srcs, offset, length);
+			return (n == 0 && hasRemaining(srcs, offset, length)) ? PendingOp.WOULD_BLOCK : n;
+		}, attachment, handler);
+		startWrite(op, timeout, unit);
+	}
+
+	private <V, A> Future<V> startWrite(PendingOp<V, A> op, long timeout, TimeUnit unit) {
+		boolean isClosed;
+		synchronized (updateLock) {
+			isClosed = closed;
+			if (!isClosed) {
+				if (!ch.isConnected())
+					throw new NotYetConnectedException();
+				if (writeKilled)
+					throw new IllegalStateException("Writing not allowed due to timeout or cancellation");
+				if (writeOp != null)
+					throw new WritePendingException();
+				writeOp = op;
+			}
+		}
+		if (isClosed)
+			return failed(op, new ClosedChannelException());
+		start(op, timeout, unit);
+		return op.future;
+	}
+
+	/**
+	 * Attempts the operation and arms it for readiness if it would block
+	 */
+	private void start(PendingOp<?, ?> op, long timeout, TimeUnit unit) {
+		if (attempt(op))
+			return;
+		if (timeout > 0) {
+			op.timer = group.schedule(() -> {
+				if (op.tryFinish()) {
+					kill(op);
+					op.deliver(group, null, new InterruptedByTimeoutException());
+				}
+			}, timeout, unit);
+		}
+		arm(op);
+	}
+
+	/**
+	 * Performs the I/O of the operation.
+	 *
+	 * @return true if the operation completed, false if it would block
+	 */
+	private boolean attempt(PendingOp<?, ?> op) {
+		// timed out, cancelled or failed by close
+		if (op.isDone())
+			return true;
+		Object result;
+		Throwable exc = null;
+		try {
+			begin();
+			result = op.task.perform();
+		} catch (Throwable x) {
+			result = null;
+			exc = x;
+		} finally {
+			end();
+		}
+		// completed outside the close lock, the handler may close the channel
+		if (exc != null) {
+			finish(op, null, exc);
+			// the underlying channel closes itself when a connect fails,
+			// release the registration and the pending operations with it
+			if (!ch.isOpen())
+				closeQuietly();
+			return true;
+		}
+		if (result == PendingOp.WOULD_BLOCK)
+			return false;
+		finish(op, result, null);
+		return true;
+	}
+
+	private void finish(PendingOp<?, ?> op, Object result, Throwable exc) {
+		if (op.tryFinish()) {
+			clear(op);
+			op.deliver(group, result, exc);
+		}
+	}
+
+	private void begin() throws IOException {
+		closeLock.readLock().lock();
+		if (!isOpen())
+			throw new ClosedChannelException();
+	}
+
+	private void end() {
+		closeLock.readLock().unlock();
+	}
+
+	/**
+	 * Clears a read or write that timed out or was cancelled. Its I/O may
+	 * still be in progress, so no further operation is allowed in its
+	 * direction.
+	 */
+	private void kill(PendingOp<?, ?> op) {
+		synchronized (updateLock) {
+			if (readOp == op)
+				readKilled = true;
+			if (writeOp == op)
+				writeKilled = true;
+		}
+		clear(op);
+	}
+
+	private void clear(PendingOp<?, ?> op) {
+		synchronized (updateLock) {
+			op.armed = false;
+			if (connectOp == op)
+				connectOp = null;
+			if (readOp == op)
+				readOp = null;
+			if (writeOp == op)
+				writeOp = null;
+		}
+	}
+
+	private void arm(PendingOp<?, ?> op) {
+		synchronized (updateLock) {
+			if (op.isDone())
+				return;
+			op.armed = true;
+		}
+		rearm();
+	}
+
+	/**
+	 * Registers for the events of the armed operations, failing them if
+	 * the descriptor cannot be polled
+	 */
+	private void rearm() {
+		List<PendingOp<?, ?>> failed = null;
+		int err;
+		synchronized (updateLock) {
+			if (closed)
+				return;
+			int events = 0;
+			if (readOp != null && readOp.armed)
+				events |= Poll.POLLIN();
+			if ((writeOp != null && writeOp.armed) || (connectOp != null && connectOp.armed))
+				events |= Poll.POLLOUT();
+			if (events == 0)
+				return;
+			err = loop.arm(fdVal, events);
+			if (err != 0) {
+				failed = new ArrayList<>(2);
+				for (PendingOp<?, ?> op : new PendingOp<?, ?>[] { connectOp, readOp, writeOp }) {
+					if (op != null && op.armed)
+						failed.add(op);
+				}
+			}
+		}
+		if (failed != null) {
+			for (PendingOp<?, ?> op : failed) {
+				finish(op, null, new IOException(PosixUtils.errorString(err, "epoll_ctl failed")));
+			}
+		}
+	}
+
+	@Override
+	public void onEvent(int events) {
+		boolean error = (events & (Poll.POLLERR() | Poll.POLLHUP())) != 0;
+		PendingOp<?, ?> r = null;
+		PendingOp<?, ?> w = null;
+		synchronized (updateLock) {
+			if (readOp != null && readOp.armed && (error || (events & Poll.POLLIN()) != 0)) {
+				r = readOp;
+				r.armed = false;
+			}
+			PendingOp<?, ?> o = (writeOp != null) ? writeOp : connectOp;
+			if (o != null && o.armed && (error || (events & Poll.POLLOUT()) != 0)) {
+				w = o;
+				w.armed = false;
+			}
+		}
+		if (r != null && !attempt(r))
+			armQuietly(r);
+		if (w != null && !attempt(w))
+			armQuietly(w);
+		// the registration is one-shot, operations that did not fire must
+		// be registered again
+		rearm();
+	}
+
+	private void armQuietly(PendingOp<?, ?> op) {
+		synchronized (updateLock) {
+			if (!op.isDone())
+				op.armed = true;
+		}
+	}
+
+	@Override
+	public void onCancel(PendingOp<?, ?> op, boolean mayInterruptIfRunning) {
+		kill(op);
+		if (mayInterruptIfRunning) {
+			closeQuietly();
+		}
+	}
+
+	private static boolean hasRemaining(ByteBuffer[] bufs, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (bufs[i].hasRemaining())
+				return true;
+		}
+		return false;
+	}
+
+	private <V> Future<V> failed(PendingOp<V, ?> op, Throwable exc) {
+		if (op.tryFinish())
+			op.deliver(group, null, exc);
+		return op.future;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.getClass().getName());
+		sb.append('[');
+		sb.append(ch.toString());
+		sb.append(']');
+		return sb.toString();
+	}
+
+}
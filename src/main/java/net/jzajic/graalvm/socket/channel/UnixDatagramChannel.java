@@ -0,0 +1,687 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyBoundException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.graalvm.nativeimage.PinnedObject;
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.nativeimage.c.type.CIntPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.headers.Errno;
+import com.oracle.svm.core.posix.headers.Poll;
+import com.oracle.svm.core.posix.headers.Socket;
+import com.oracle.svm.core.posix.headers.Uio;
+
+import net.jzajic.graalvm.headers.LinuxSocket;
+import net.jzajic.graalvm.headers.Un;
+import net.jzajic.graalvm.posix.Native;
+import net.jzajic.graalvm.posix.SyscallRecorder;
+import net.jzajic.graalvm.posix.UnixNet;
+import net.jzajic.graalvm.socket.UnixProtocolFamily;
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+
+/**
+ * An implementation of DatagramChannels for AF_UNIX (SOCK_DGRAM) sockets.
+ *
+ * Besides the single datagram operations it offers batch variants of
+ * {@link #send(ByteBuffer[], int, int, SocketAddress) send} and
+ * {@link #receive(ByteBuffer[], int, int, SocketAddress[]) receive} that
+ * transfer many datagrams per system call using sendmmsg/recvmmsg.
+ */
+public class UnixDatagramChannel
+		extends DatagramChannel
+		implements UnixSelChImpl {
+
+	// Maximum number of datagrams transferred by one sendmmsg/recvmmsg call
+	public static final int MAX_BATCH = 64;
+
+	private static final int SOCKADDR_LEN = SizeOf.get(Un.sockaddr_un.class);
+
+	// Our file descriptor
+	private final FileDescriptor fd;
+
+	// fd value needed for dev/poll. This value will remain valid
+	// even after the value in the file descriptor object has been set to -1
+	private final int fdVal;
+
+	// Lock held by current reading or connecting thread
+	private final Object readLock = new Object();
+
+	// Lock held by current writing or connecting thread
+	private final Object writeLock = new Object();
+
+	// Lock held by any thread that modifies the state fields declared below
+	// DO NOT invoke a blocking I/O operation while holding this lock!
+	private final Object stateLock = new Object();
+
+	// -- The following fields are protected by stateLock
+
+	// State (does not necessarily increase monotonically)
+	private static final int ST_UNINITIALIZED = -1;
+	private static final int ST_UNCONNECTED = 0;
+	private static final int ST_CONNECTED = 1;
+	private static final int ST_KILLED = 2;
+	private int state = ST_UNINITIALIZED;
+
+	// Binding
+	private UnixSocketAddress localAddress;
+	private UnixSocketAddress remoteAddress;
+
+	// -- End of fields protected by stateLock
+
+	UnixDatagramChannel(SelectorProvider sp) throws IOException {
+		super(sp);
+		this.fd = UnixNet.socket(UnixProtocolFamily.UNIX, false);
+		this.fdVal = UnixNet.fdval(fd);
+		this.state = ST_UNCONNECTED;
+	}
+
+	public static UnixDatagramChannel open() throws IOException {
+		return (UnixDatagramChannel) UnixSocketSelectorProvider.provider().openDatagramChannel();
+	}
+
+	@Override
+	public DatagramSocket socket() {
+		throw new UnsupportedOperationException("DatagramSocket adaptor not supported for AF_UNIX channels");
+	}
+
+	@Override
+	public SocketAddress getLocalAddress() throws IOException {
+		synchronized (stateLock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			return localAddress;
+		}
+	}
+
+	@Override
+	public SocketAddress getRemoteAddress() throws IOException {
+		synchronized (stateLock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			return remoteAddress;
+		}
+	}
+
+	@Override
+	public <T> DatagramChannel setOption(SocketOption<T> name, T value)
+			throws IOException {
+		if (name == null)
+			throw new NullPointerException();
+		if (!supportedOptions().contains(name))
+			throw new UnsupportedOperationException("'" + name + "' not supported");
+		synchronized (stateLock) {
+			ensureOpen();
+			UnixNet.setSocketOption(fd, UnixNet.UNSPEC, name, value);
+			return this;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getOption(SocketOption<T> name)
+			throws IOException {
+		if (name == null)
+			throw new NullPointerException();
+		if (!supportedOptions().contains(name))
+			throw new UnsupportedOperationException("'" + name + "' not supported");
+		synchronized (stateLock) {
+			ensureOpen();
+			return (T) UnixNet.getSocketOption(fd, UnixNet.UNSPEC, name);
+		}
+	}
+
+	private static class DefaultOptionsHolder {
+		static final Set<SocketOption<?>> defaultOptions = defaultOptions();
+
+		private static Set<SocketOption<?>> defaultOptions() {
+			HashSet<SocketOption<?>> set = new HashSet<SocketOption<?>>(2);
+			set.add(StandardSocketOptions.SO_SNDBUF);
+			set.add(StandardSocketOptions.SO_RCVBUF);
+			return Collections.unmodifiableSet(set);
+		}
+	}
+
+	@Override
+	public final Set<SocketOption<?>> supportedOptions() {
+		return DefaultOptionsHolder.defaultOptions;
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!isOpen())
+			throw new ClosedChannelException();
+	}
+
+	@Override
+	public DatagramChannel bind(SocketAddress local) throws IOException {
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				synchronized (stateLock) {
+					ensureOpen();
+					if (localAddress != null)
+						throw new AlreadyBoundException();
+					UnixSocketAddress usa = (local == null) ? new UnixSocketAddress() : (UnixSocketAddress) local;
+					UnixNet.bind(fd, usa);
+					localAddress = UnixNet.getsockname(fdVal);
+				}
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public boolean isConnected() {
+		synchronized (stateLock) {
+			return (state == ST_CONNECTED);
+		}
+	}
+
+	@Override
+	public DatagramChannel connect(SocketAddress sa) throws IOException {
+		UnixSocketAddress usa = (UnixSocketAddress) sa;
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				synchronized (stateLock) {
+					ensureOpen();
+					if (state != ST_UNCONNECTED)
+						throw new IllegalStateException("Connect already invoked");
+					int n = UnixNet.connect(fd, usa);
+					if (n <= 0)
+						throw new Error();      // Can't happen
+					state = ST_CONNECTED;
+					remoteAddress = usa;
+				}
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public DatagramChannel disconnect() throws IOException {
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				synchronized (stateLock) {
+					if (!isConnected() || !isOpen())
+						return this;
+					UnixNet.disconnect(fd);
+					remoteAddress = null;
+					state = ST_UNCONNECTED;
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Receives a datagram, returning the sender's address or null if no
+	 * datagram was immediately available in non-blocking mode. Unnamed
+	 * senders are reported with an empty path.
+	 */
+	@Override
+	public SocketAddress receive(ByteBuffer dst) throws IOException {
+		if (dst.isReadOnly())
+			throw new IllegalArgumentException("Read-only buffer");
+		synchronized (readLock) {
+			ensureOpen();
+			Un.sockaddr_un from = StackValue.get(SOCKADDR_LEN);
+			CIntPointer fromLen = StackValue.get(CIntPointer.class);
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return null;
+				int pos = dst.position();
+				int lim = dst.limit();
+				int rem = (pos <= lim ? lim - pos : 0);
+				PinnedObject[] pins = dst.isDirect() ? null : new PinnedObject[1];
+				try {
+					PointerBase address = IOUtil.bufferAddress(dst, pos, rem, pins, 0);
+					for (;;) {
+						n = UnixNet.recvfrom(fdVal, address, rem, from, fromLen);
+						if ((n == IOStatus.INTERRUPTED) && isOpen())
+							continue;
+						break;
+					}
+				} finally {
+					IOUtil.unpin(pins, 1);
+				}
+				if (n == IOStatus.UNAVAILABLE)
+					return null;
+				dst.position(pos + n);
+				return UnixNet.toUnixSocketAddress(from, fromLen.read());
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Sends a datagram to the given target.
+	 *
+	 * @return the number of bytes sent, zero if there was insufficient room
+	 *         in the socket buffer in non-blocking mode
+	 */
+	@Override
+	public int send(ByteBuffer src, SocketAddress target) throws IOException {
+		if (src == null)
+			throw new NullPointerException();
+		UnixSocketAddress usa = (UnixSocketAddress) target;
+		synchronized (writeLock) {
+			ensureOpen();
+			if (isConnected()) {
+				if (!usa.getPath().equals(remoteAddress.getPath()))
+					throw new IllegalArgumentException("Connected address not equal to target address");
+				return write(src);
+			}
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				int pos = src.position();
+				int lim = src.limit();
+				int rem = (pos <= lim ? lim - pos : 0);
+				PinnedObject[] pins = src.isDirect() ? null : new PinnedObject[1];
+				try {
+					PointerBase address = IOUtil.bufferAddress(src, pos, rem, pins, 0);
+					for (;;) {
+						n = UnixNet.sendto(fdVal, address, rem, usa);
+						if ((n == IOStatus.INTERRUPTED) && isOpen())
+							continue;
+						break;
+					}
+				} finally {
+					IOUtil.unpin(pins, 1);
+				}
+				if (n > 0)
+					src.position(pos + n);
+				return IOStatus.normalize(n);
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Sends up to {@link #MAX_BATCH} datagrams with a single sendmmsg call,
+	 * each remaining buffer becomes one datagram.
+	 *
+	 * @param target the destination, or null to send to the connected peer
+	 * @return the number of datagrams sent; the positions of the sent
+	 *         buffers are advanced
+	 */
+	public int send(ByteBuffer[] srcs, int offset, int length, SocketAddress target) throws IOException {
+		if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (writeLock) {
+			ensureOpen();
+			if (target == null && !isConnected())
+				throw new NotYetConnectedException();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = mmsg(srcs, offset, length, (UnixSocketAddress) target, null, false);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Receives up to {@link #MAX_BATCH} datagrams with a single recvmmsg
+	 * call, one datagram per buffer. In blocking mode the call waits for the
+	 * first datagram only (MSG_WAITFORONE).
+	 *
+	 * @param senders optional array receiving the sender address of each
+	 *                datagram at the same index as its buffer, may be null
+	 * @return the number of datagrams received, zero if none was available
+	 *         in non-blocking mode
+	 */
+	public int receive(ByteBuffer[] dsts, int offset, int length, SocketAddress[] senders) throws IOException {
+		if ((offset < 0) || (length < 0) || (offset > dsts.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (readLock) {
+			ensureOpen();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = mmsg(dsts, offset, length, null, senders, true);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	// Fills mmsghdr/iovec/sockaddr arrays on the stack and issues one
+	// sendmmsg or recvmmsg call
+	private int mmsg(ByteBuffer[] bufs, int offset, int length, UnixSocketAddress target,
+			SocketAddress[] senders, boolean receiving) throws IOException {
+		int vlen = Math.min(length, MAX_BATCH);
+		if (vlen == 0)
+			return 0;
+
+		LinuxSocket.mmsghdr msgs = StackValue.get(MAX_BATCH, LinuxSocket.mmsghdr.class);
+		Uio.iovec iovs = StackValue.get(MAX_BATCH, Uio.iovec.class);
+		Un.sockaddr_un addrs = StackValue.get(MAX_BATCH, Un.sockaddr_un.class);
+		CIntPointer targetLen = StackValue.get(CIntPointer.class);
+		if (target != null) {
+			UnixNet.inetAddressToSockaddr(target, (Socket.sockaddr) addrs, targetLen);
+		}
+
+		PinnedObject[] pins = null;
+		try {
+			for (int i = 0; i < vlen; i++) {
+				ByteBuffer buf = bufs[offset + i];
+				if (receiving && buf.isReadOnly())
+					throw new IllegalArgumentException("Read-only buffer");
+				int pos = buf.position();
+				int lim = buf.limit();
+				int rem = (pos <= lim ? lim - pos : 0);
+				if (pins == null && !buf.isDirect())
+					pins = new PinnedObject[MAX_BATCH];
+
+				Uio.iovec iov = IOUtil.iovecAt(iovs, i);
+				iov.iov_base(IOUtil.bufferAddress(buf, pos, rem, pins, i));
+				iov.iov_len(WordFactory.unsigned(rem));
+
+				Socket.msghdr hdr = mmsghdrAt(msgs, i).msg_hdr();
+				if (receiving && senders != null) {
+					hdr.msg_name(sockaddrAt(addrs, i));
+					hdr.msg_namelen(SOCKADDR_LEN);
+				} else if (target != null) {
+					hdr.msg_name(addrs);
+					hdr.msg_namelen(targetLen.read());
+				} else {
+					hdr.msg_name(WordFactory.nullPointer());
+					hdr.msg_namelen(0);
+				}
+				hdr.msg_iov(iov);
+				hdr.msg_iovlen(1);
+				hdr.msg_control(WordFactory.nullPointer());
+				hdr.msg_controllen(0);
+				hdr.msg_flags(0);
+				mmsghdrAt(msgs, i).set_msg_len(0);
+			}
+
+			int type = receiving ? SyscallRecorder.RECVMMSG : SyscallRecorder.SENDMMSG;
+			int n;
+			for (;;) {
+				long start = SyscallRecorder.begin();
+				n = receiving
+						? LinuxSocket.recvmmsg(fdVal, msgs, vlen, LinuxSocket.MSG_WAITFORONE(), WordFactory.nullPointer())
+						: LinuxSocket.sendmmsg(fdVal, msgs, vlen, 0);
+				int errno = (n < 0) ? Errno.errno() : 0;
+				SyscallRecorder.end(start, type, fdVal, vlen, n, errno);
+				if (n >= 0)
+					break;
+				if (!Native.restart(errno, receiving))
+					return Native.status(errno);
+			}
+
+			for (int i = 0; i < n; i++) {
+				ByteBuffer buf = bufs[offset + i];
+				LinuxSocket.mmsghdr msg = mmsghdrAt(msgs, i);
+				buf.position(buf.position() + Math.min(msg.msg_len(), buf.remaining()));
+				if (receiving && senders != null) {
+					senders[offset + i] = UnixNet.toUnixSocketAddress(sockaddrAt(addrs, i),
+							(int) msg.msg_hdr().msg_namelen());
+				}
+			}
+			return n;
+		} finally {
+			IOUtil.unpin(pins, vlen);
+		}
+	}
+
+	private static LinuxSocket.mmsghdr mmsghdrAt(LinuxSocket.mmsghdr msgs, int index) {
+		return (LinuxSocket.mmsghdr) ((Pointer) msgs).add(index * SizeOf.get(LinuxSocket.mmsghdr.class));
+	}
+
+	private static Un.sockaddr_un sockaddrAt(Un.sockaddr_un addrs, int index) {
+		return (Un.sockaddr_un) ((Pointer) addrs).add(index * SOCKADDR_LEN);
+	}
+
+	private void ensureConnected() throws IOException {
+		synchronized (stateLock) {
+			ensureOpen();
+			if (state != ST_CONNECTED)
+				throw new NotYetConnectedException();
+		}
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (dst == null)
+			throw new NullPointerException();
+		synchronized (readLock) {
+			ensureConnected();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = IOUtil.read(fdVal, dst);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					// a zero length datagram is not end-of-stream
+					return (n == IOStatus.EOF) ? 0 : IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		if ((offset < 0) || (length < 0) || (offset > dsts.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (readLock) {
+			ensureConnected();
+			long n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = IOUtil.read(fdVal, dsts, offset, length);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					return (n == IOStatus.EOF) ? 0 : IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (src == null)
+			throw new NullPointerException();
+		synchronized (writeLock) {
+			ensureConnected();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = IOUtil.write(fdVal, src);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (writeLock) {
+			ensureConnected();
+			long n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				for (;;) {
+					n = IOUtil.write(fdVal, srcs, offset, length);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	@Override
+	public MembershipKey join(InetAddress group, NetworkInterface interf) throws IOException {
+		throw new UnsupportedOperationException("Multicast not supported for AF_UNIX channels");
+	}
+
+	@Override
+	public MembershipKey join(InetAddress group, NetworkInterface interf, InetAddress source) throws IOException {
+		throw new UnsupportedOperationException("Multicast not supported for AF_UNIX channels");
+	}
+
+	protected void implConfigureBlocking(boolean block) throws IOException {
+		Native.setBlocking(fdVal, block);
+	}
+
+	protected void implCloseSelectableChannel() throws IOException {
+		synchronized (stateLock) {
+			// the fd is closed by kill() once the last selector has
+			// deregistered this channel
+			if (!isRegistered())
+				kill();
+		}
+	}
+
+	public void kill() throws IOException {
+		synchronized (stateLock) {
+			if (state == ST_KILLED)
+				return;
+			if (state == ST_UNINITIALIZED) {
+				state = ST_KILLED;
+				return;
+			}
+			assert !isOpen() && !isRegistered();
+			Native.close(fdVal);
+			state = ST_KILLED;
+		}
+	}
+
+	/**
+	 * Translates native poll revent set into a ready operation set
+	 */
+	public boolean translateReadyOps(int ops, int initialOps,
+			UnixSelectionKeyImpl sk) {
+		int intOps = sk.nioInterestOps(); // Do this just once, it synchronizes
+		int oldOps = sk.nioReadyOps();
+		int newOps = initialOps;
+
+		if ((ops & Poll.POLLNVAL()) != 0) {
+			// This should only happen if this channel is pre-closed while a
+			// selection operation is in progress
+			// ## Throw an error if this channel has not been pre-closed
+			return false;
+		}
+
+		if ((ops & (Poll.POLLERR() | Poll.POLLHUP())) != 0) {
+			newOps = intOps;
+			sk.nioReadyOps(newOps);
+			return (newOps & ~oldOps) != 0;
+		}
+
+		if (((ops & Poll.POLLIN()) != 0) &&
+				((intOps & SelectionKey.OP_READ) != 0))
+			newOps |= SelectionKey.OP_READ;
+
+		if (((ops & Poll.POLLOUT()) != 0) &&
+				((intOps & SelectionKey.OP_WRITE) != 0))
+			newOps |= SelectionKey.OP_WRITE;
+
+		sk.nioReadyOps(newOps);
+		return (newOps & ~oldOps) != 0;
+	}
+
+	public boolean translateAndUpdateReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, sk.nioReadyOps(), sk);
+	}
+
+	public boolean translateAndSetReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, 0, sk);
+	}
+
+	/**
+	 * Translates an interest operation set into a native poll event set
+	 */
+	public int translateInterestOps(int ops) {
+		int newOps = 0;
+		if ((ops & SelectionKey.OP_READ) != 0)
+			newOps |= Poll.POLLIN();
+		if ((ops & SelectionKey.OP_WRITE) != 0)
+			newOps |= Poll.POLLOUT();
+		return newOps;
+	}
+
+	public FileDescriptor getFD() {
+		return fd;
+	}
+
+	public int getFDVal() {
+		return fdVal;
+	}
+
+}
@@ -0,0 +1,61 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One end of a SOCK_DGRAM socket pair created by
+ * {@link UnixSocketSelectorProvider#socketpair(int)}.
+ *
+ * Every write sends one datagram and every read returns at most one. A
+ * read of a zero-length datagram returns 0, like
+ * {@link UnixDatagramChannel#read(ByteBuffer)}: closing the peer of a
+ * datagram socket does not end the stream, so a read only returns -1
+ * once input has been shut down.
+ */
+final class UnixDatagramPairChannel extends UnixSocketChannelImpl {
+
+	UnixDatagramPairChannel(SelectorProvider sp, FileDescriptor fd, boolean fdBlocking) throws IOException {
+		super(sp, fd, fdBlocking);
+	}
+
+	// The socket reports a zero-length datagram as end-of-file
+	private int datagram(int n) {
+		return (n < 0 && isInputOpen()) ? 0 : n;
+	}
+
+	private long datagram(long n) {
+		return (n < 0 && isInputOpen()) ? 0 : n;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return datagram(super.read(dst));
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+		return datagram(super.read(dst, timeout, unit));
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		return datagram(super.read(dsts, offset, length));
+	}
+
+	@Override
+	public int read(ByteBuffer dst, List<FileDescriptor> fds) throws IOException {
+		return datagram(super.read(dst, fds));
+	}
+
+	@Override
+	public long transferTo(FileChannel dst, long position, long count) throws IOException {
+		return datagram(super.transferTo(dst, position, count));
+	}
+
+}
@@ -0,0 +1,191 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+
+import com.oracle.svm.core.headers.Errno;
+import com.oracle.svm.core.posix.headers.Poll;
+import com.oracle.svm.core.posix.headers.linux.LinuxEPoll;
+
+import net.jzajic.graalvm.headers.Epoll;
+import net.jzajic.graalvm.posix.EPoll;
+import net.jzajic.graalvm.posix.Native;
+
+/**
+ * An epoll instance polled by a single thread of an
+ * {@link UnixAsynchronousChannelGroup}.
+ *
+ * Channels arm their descriptor with EPOLLONESHOT for the operations that
+ * are waiting for readiness, so an event is delivered to exactly one
+ * invocation of {@link UnixPollableChannel#onEvent(int)} and the channel
+ * re-arms as needed. Tasks submitted with {@link #execute(Runnable)} run on
+ * the loop thread between polls.
+ */
+final class UnixEventLoop implements Runnable {
+
+	// maximum number of events to poll in one call to epoll_wait
+	private static final int MAX_EVENTS = 512;
+
+	private static final ThreadLocal<UnixEventLoop> CURRENT = new ThreadLocal<>();
+
+	final UnixAsynchronousChannelGroup group;
+
+	// epoll file descriptor
+	private final int epfd;
+
+	// address of poll array when polling with epoll_wait
+	private final LinuxEPoll.epoll_event pollArray;
+
+	// file descriptors used for wakeup
+	private final int fd0;
+	private final int fd1;
+
+	private final ConcurrentHashMap<Integer, UnixPollableChannel> fdToChannel = new ConcurrentHashMap<>();
+
+	private final ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+	private volatile boolean stopped;
+
+	// nesting of completion handlers invoked directly, loop thread only
+	int handlerDepth;
+
+	UnixEventLoop(UnixAsynchronousChannelGroup group) throws IOException {
+		this.group = group;
+		this.epfd = EPoll.create();
+		this.pollArray = EPoll.allocatePollArray(MAX_EVENTS);
+		try {
+			long fds = Native.makePipe(false);
+			this.fd0 = (int) (fds >>> 32);
+			this.fd1 = (int) fds;
+		} catch (IOException ioe) {
+			EPoll.freePollArray(pollArray);
+			Native.close(epfd);
+			throw ioe;
+		}
+		EPoll.ctlAdd(epfd, fd0, Poll.POLLIN());
+	}
+
+	/**
+	 * Returns the event loop of the current thread, or null
+	 */
+	static UnixEventLoop current() {
+		return CURRENT.get();
+	}
+
+	void register(int fd, UnixPollableChannel ch) {
+		fdToChannel.put(fd, ch);
+	}
+
+	// Removes the mapping only if it is still the channel's, the descriptor
+	// may already have been closed and its number reused
+	void unregister(int fd, UnixPollableChannel ch) {
+		fdToChannel.remove(fd, ch);
+	}
+
+	/**
+	 * Arms fd for one notification of the given events.
+	 *
+	 * @return 0 on success, otherwise the errno value
+	 */
+	int arm(int fd, int events) {
+		int err = EPoll.ctlMod(epfd, fd, events | Epoll.EPOLLONESHOT());
+		if (err == Errno.ENOENT())
+			err = EPoll.ctlAdd(epfd, fd, events | Epoll.EPOLLONESHOT());
+		return err;
+	}
+
+	/**
+	 * Runs the task on the loop thread
+	 */
+	void execute(Runnable task) {
+		if (stopped)
+			throw new RejectedExecutionException();
+		taskQueue.offer(task);
+		wakeup();
+	}
+
+	void stop() {
+		stopped = true;
+		wakeup();
+	}
+
+	private void wakeup() {
+		if (wakeupPending.compareAndSet(false, true)) {
+			CCharPointer b = StackValue.get(CCharPointer.class);
+			b.write((byte) 1);
+			try {
+				Native.write(fd1, 1, b);
+			} catch (IOException ioe) {
+				throw new InternalError(ioe);
+			}
+		}
+	}
+
+	private void drainWakeup() throws IOException {
+		wakeupPending.set(false);
+		CCharPointer buf = StackValue.get(128);
+		while (Native.read(fd0, 128, buf) == 128) {
+			// drain
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = taskQueue.poll()) != null) {
+			try {
+				task.run();
+			} catch (Throwable x) {
+				uncaught(x);
+			}
+		}
+	}
+
+	static void uncaught(Throwable x) {
+		Thread t = Thread.currentThread();
+		t.getUncaughtExceptionHandler().uncaughtException(t, x);
+	}
+
+	@Override
+	public void run() {
+		CURRENT.set(this);
+		try {
+			while (!stopped) {
+				int n = EPoll.wait(epfd, pollArray, MAX_EVENTS, -1);
+				for (int i = 0; i < n; i++) {
+					LinuxEPoll.epoll_event event = EPoll.getEvent(pollArray, i);
+					int fd = EPoll.getDescriptor(event);
+					if (fd == fd0) {
+						drainWakeup();
+					} else {
+						UnixPollableChannel ch = fdToChannel.get(fd);
+						if (ch != null) {
+							try {
+								ch.onEvent(EPoll.getEvents(event));
+							} catch (Throwable x) {
+								uncaught(x);
+							}
+						}
+					}
+				}
+				runTasks();
+			}
+			runTasks();
+		} catch (IOException x) {
+			uncaught(x);
+		} finally {
+			CURRENT.remove();
+			Native.close(epfd);
+			EPoll.freePollArray(pollArray);
+			Native.close(fd0);
+			Native.close(fd1);
+			group.loopTerminated(this);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package net.jzajic.graalvm.socket.channel;
+
+/**
+ * Implemented by asynchronous channels that are polled by a
+ * {@link UnixEventLoop}.
+ */
+interface UnixPollableChannel {
+
+	/**
+	 * Invoked on the event loop thread when the armed events fired
+	 */
+	void onEvent(int events);
+
+	/**
+	 * Invoked when the Future of a pending operation is cancelled
+	 */
+	void onCancel(PendingOp<?, ?> op, boolean mayInterruptIfRunning);
+
+}
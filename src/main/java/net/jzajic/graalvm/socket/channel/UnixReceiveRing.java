@@ -0,0 +1,321 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ScatteringByteChannel;
+
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.type.CTypeConversion;
+import org.graalvm.word.Pointer;
+
+import net.jzajic.graalvm.posix.Mmap;
+
+/**
+ * An off-heap ring buffer that a channel receives into and a streaming
+ * parser consumes in place.
+ *
+ * {@link #receive(ScatteringByteChannel)} reads into the free region of
+ * the ring with one scattering read, without moving the bytes not consumed
+ * yet, so there is no compaction between reads. The parser reads from the
+ * current position with the get methods and calls {@link #commit()} once
+ * a message is complete, which frees the bytes up to the position. If a
+ * message is incomplete, {@link #reset()} rewinds to the last commit and
+ * parsing resumes after the next receive.
+ *
+ * A mirrored ring maps its memory twice back to back, so the bytes from
+ * the position are always contiguous: multi-byte values and slices that
+ * wrap around the end of the ring are read in place and the free region
+ * is filled with a single iovec. A ring that is not mirrored lives in
+ * malloc'ed memory and copies values and slices that wrap around.
+ *
+ * Multi-byte values are big-endian unless changed with
+ * {@link #order(ByteOrder)}. A ring is not safe for use by multiple
+ * threads.
+ */
+public final class UnixReceiveRing implements Closeable {
+
+	private static final int MAX_CAPACITY = 1 << 29;
+
+	private final Pointer base;
+	private final int capacity;
+	private final int mask;
+	private final boolean mirrored;
+
+	// view of the memory, both halves if mirrored
+	private final ByteBuffer view;
+
+	// views reused by receive and bulk gets
+	private final ByteBuffer[] iov = new ByteBuffer[2];
+	private final ByteBuffer reader;
+
+	// bytes received, committed and read, never wrapped
+	private long tail;
+	private long head;
+	private long position;
+
+	private boolean closed;
+
+	private UnixReceiveRing(Pointer base, int capacity, boolean mirrored) {
+		this.base = base;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.mirrored = mirrored;
+		this.view = CTypeConversion.asByteBuffer(base, mirrored ? 2 * capacity : capacity);
+		this.iov[0] = view.duplicate();
+		this.iov[1] = view.duplicate();
+		this.reader = view.duplicate();
+	}
+
+	/**
+	 * Allocates a ring of at least the given capacity, rounded up to a power
+	 * of two.
+	 */
+	public static UnixReceiveRing allocate(int capacity) {
+		int cap = roundUp(capacity);
+		return new UnixReceiveRing(UnmanagedMemory.malloc(cap), cap, false);
+	}
+
+	/**
+	 * Allocates a mirrored ring of at least the given capacity, rounded up to
+	 * a power of two and the page size.
+	 */
+	public static UnixReceiveRing allocateMirrored(int capacity) throws IOException {
+		int cap = roundUp(Math.max(capacity, Mmap.pageSize()));
+		return new UnixReceiveRing(Mmap.mapMirrored(cap), cap, true);
+	}
+
+	private static int roundUp(int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("Capacity out of range");
+		return capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public boolean isMirrored() {
+		return mirrored;
+	}
+
+	public ByteOrder order() {
+		return view.order();
+	}
+
+	/**
+	 * Sets the byte order of multi-byte values.
+	 */
+	public UnixReceiveRing order(ByteOrder bo) {
+		view.order(bo);
+		return this;
+	}
+
+	/**
+	 * Receives bytes from the channel into the free region of the ring.
+	 *
+	 * @return the number of bytes read, possibly zero if the ring is full
+	 *         or the channel is non-blocking, or -1 at end-of-stream
+	 */
+	public long receive(ScatteringByteChannel ch) throws IOException {
+		ensureOpen();
+		int free = free();
+		if (free == 0)
+			return 0;
+		int from = (int) (tail & mask);
+		int first = mirrored ? free : Math.min(free, capacity - from);
+		range(iov[0], from, first);
+		long n;
+		if (first < free) {
+			range(iov[1], 0, free - first);
+			n = ch.read(iov, 0, 2);
+		} else {
+			n = ch.read(iov, 0, 1);
+		}
+		if (n > 0)
+			tail += n;
+		return n;
+	}
+
+	/**
+	 * Returns the number of bytes received and not read yet.
+	 */
+	public int available() {
+		return (int) (tail - position);
+	}
+
+	/**
+	 * Returns the number of bytes that can be received, the capacity less
+	 * the bytes not committed yet.
+	 */
+	public int free() {
+		return capacity - (int) (tail - head);
+	}
+
+	/**
+	 * Returns the number of bytes read since the last commit.
+	 */
+	public int uncommitted() {
+		return (int) (position - head);
+	}
+
+	/**
+	 * Frees the bytes read so far for receiving.
+	 */
+	public void commit() {
+		head = position;
+	}
+
+	/**
+	 * Rewinds the position to the last commit, to parse an incomplete
+	 * message again once more bytes have been received.
+	 */
+	public void reset() {
+		position = head;
+	}
+
+	public byte get() {
+		return view.get(advance(1));
+	}
+
+	public short getShort() {
+		int i = advance(2);
+		return wraps(i, 2) ? (short) getWrapped(i, 2) : view.getShort(i);
+	}
+
+	public int getInt() {
+		int i = advance(4);
+		return wraps(i, 4) ? (int) getWrapped(i, 4) : view.getInt(i);
+	}
+
+	public long getLong() {
+		int i = advance(8);
+		return wraps(i, 8) ? getWrapped(i, 8) : view.getLong(i);
+	}
+
+	/**
+	 * Copies the next length bytes into the array.
+	 */
+	public UnixReceiveRing get(byte[] dst, int offset, int length) {
+		if ((offset < 0) || (length < 0) || (offset > dst.length - length))
+			throw new IndexOutOfBoundsException();
+		int i = advance(length);
+		int first = wraps(i, length) ? capacity - i : length;
+		range(reader, i, first);
+		reader.get(dst, offset, first);
+		if (first < length) {
+			range(reader, 0, length - first);
+			reader.get(dst, offset + first, length - first);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the next length bytes as a buffer and advances the position.
+	 * In a mirrored ring, or if the bytes do not wrap around, the buffer is
+	 * a view of the ring that is valid until the bytes are committed,
+	 * otherwise it is a copy.
+	 */
+	public ByteBuffer slice(int length) {
+		if (length < 0)
+			throw new IllegalArgumentException();
+		int i = advance(length);
+		if (wraps(i, length)) {
+			position -= length;
+			byte[] copy = new byte[length];
+			get(copy, 0, length);
+			return ByteBuffer.wrap(copy).order(view.order());
+		}
+		ByteBuffer s = view.duplicate();
+		range(s, i, length);
+		return s.slice().order(view.order());
+	}
+
+	public void skip(int n) {
+		advance(n);
+	}
+
+	/**
+	 * Returns the offset of the first occurrence of the byte from the
+	 * position, or -1 if it has not been received yet. The position is not
+	 * changed.
+	 */
+	public int indexOf(byte b) {
+		int n = available();
+		int i = (int) (position & mask);
+		if (mirrored) {
+			for (int k = 0; k < n; k++) {
+				if (view.get(i + k) == b)
+					return k;
+			}
+		} else {
+			for (int k = 0; k < n; k++) {
+				if (view.get((i + k) & mask) == b)
+					return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Releases the memory of the ring. Views returned by
+	 * {@link #slice(int)} must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		if (mirrored)
+			Mmap.unmap(base, 2L * capacity);
+		else
+			UnmanagedMemory.free(base);
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (closed)
+			throw new ClosedChannelException();
+	}
+
+	// Returns the index of the position and moves it forward by size bytes
+	private int advance(int size) {
+		if (closed)
+			throw new IllegalStateException("Ring closed");
+		if (size < 0)
+			throw new IllegalArgumentException();
+		if (tail - position < size)
+			throw new BufferUnderflowException();
+		int i = (int) (position & mask);
+		position += size;
+		return i;
+	}
+
+	private boolean wraps(int index, int size) {
+		return !mirrored && index + size > capacity;
+	}
+
+	private long getWrapped(int index, int size) {
+		long v = 0;
+		for (int k = 0; k < size; k++)
+			v = (v << 8) | (view.get((index + k) & mask) & 0xff);
+		if (view.order() == ByteOrder.LITTLE_ENDIAN)
+			v = Long.reverseBytes(v) >> (64 - 8 * size);
+		return v;
+	}
+
+	private static void range(ByteBuffer b, int from, int length) {
+		b.clear();
+		b.limit(from + length);
+		b.position(from);
+	}
+
+	@Override
+	public String toString() {
+		return "UnixReceiveRing[capacity=" + capacity + ", available=" + available() + ", free=" + free()
+				+ (mirrored ? ", mirrored" : "") + "]";
+	}
+
+}
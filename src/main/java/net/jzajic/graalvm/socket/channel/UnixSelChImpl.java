@@ -0,0 +1,42 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.Channel;
+
+/**
+ * An interface that allows translation (and more!).
+ *
+ * Implemented by every channel that can be registered with a
+ * {@link UnixSelectorImpl}.
+ */
+interface UnixSelChImpl extends Channel {
+
+	FileDescriptor getFD();
+
+	int getFDVal();
+
+	/**
+	 * Adds the specified ready operations to the ready set of the key.
+	 *
+	 * @return true iff the new ready set has ops not present in the old one
+	 */
+	boolean translateAndUpdateReadyOps(int ops, UnixSelectionKeyImpl sk);
+
+	/**
+	 * Sets the specified ready operations in the ready set of the key.
+	 *
+	 * @return true iff the new ready set has ops not present in the old one
+	 */
+	boolean translateAndSetReadyOps(int ops, UnixSelectionKeyImpl sk);
+
+	/**
+	 * Translates an interest operation set into native poll event set
+	 */
+	int translateInterestOps(int ops);
+
+	int validOps();
+
+	void kill() throws IOException;
+
+}
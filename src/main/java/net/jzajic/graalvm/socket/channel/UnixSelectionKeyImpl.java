@@ -0,0 +1,113 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectionKey;
+
+/**
+ * An implementation of SelectionKey for {@link UnixSelectorImpl}.
+ */
+final class UnixSelectionKeyImpl extends AbstractSelectionKey {
+
+	final UnixSelChImpl channel;
+	final UnixSelectorImpl selector;
+
+	private volatile int interestOps;
+	private volatile int readyOps;
+
+	// Events currently registered with epoll, accessed only by the selector
+	private int registeredEvents;
+
+	UnixSelectionKeyImpl(UnixSelChImpl ch, UnixSelectorImpl sel) {
+		channel = ch;
+		selector = sel;
+	}
+
+	private void ensureValid() {
+		if (!isValid())
+			throw new CancelledKeyException();
+	}
+
+	int getFDVal() {
+		return channel.getFDVal();
+	}
+
+	@Override
+	public SelectableChannel channel() {
+		return (SelectableChannel) channel;
+	}
+
+	@Override
+	public Selector selector() {
+		return selector;
+	}
+
+	@Override
+	public int interestOps() {
+		ensureValid();
+		return interestOps;
+	}
+
+	@Override
+	public UnixSelectionKeyImpl interestOps(int ops) {
+		ensureValid();
+		if ((ops & ~channel.validOps()) != 0)
+			throw new IllegalArgumentException();
+		int oldOps = interestOps;
+		interestOps = ops;
+		if (ops != oldOps) {
+			// applied lazily by the selector before the next epoll_wait
+			selector.setEventOps(this);
+		}
+		return this;
+	}
+
+	@Override
+	public int readyOps() {
+		ensureValid();
+		return readyOps;
+	}
+
+	// The nio versions of these operations do not care if a key
+	// has been invalidated. They are for internal use by nio code.
+
+	void nioReadyOps(int ops) {
+		readyOps = ops;
+	}
+
+	int nioReadyOps() {
+		return readyOps;
+	}
+
+	int nioInterestOps() {
+		return interestOps;
+	}
+
+	int translateInterestOps() {
+		return channel.translateInterestOps(interestOps);
+	}
+
+	void registeredEvents(int events) {
+		this.registeredEvents = events;
+	}
+
+	int registeredEvents() {
+		return registeredEvents;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("channel=").append(channel)
+				.append(", selector=").append(selector);
+		if (isValid()) {
+			sb.append(", interestOps=").append(interestOps)
+					.append(", readyOps=").append(readyOps);
+		} else {
+			sb.append(", invalid");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,416 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+
+import com.oracle.svm.core.posix.headers.Poll;
+import com.oracle.svm.core.posix.headers.linux.LinuxEPoll;
+
+import net.jzajic.graalvm.posix.EPoll;
+import net.jzajic.graalvm.posix.Native;
+
+/**
+ * Linux epoll based Selector implementation
+ *
+ * Changes to the interest set of a key are queued and applied in one batch
+ * before the next epoll_wait, the selected-key set is reused between
+ * selection operations.
+ */
+class UnixSelectorImpl extends AbstractSelector {
+
+	// maximum number of events to poll in one call to epoll_wait
+	private static final int NUM_EPOLLEVENTS = 1024;
+
+	// epoll file descriptor
+	private final int epfd;
+
+	// address of poll array when polling with epoll_wait
+	private final LinuxEPoll.epoll_event pollArray;
+
+	// file descriptors used for interrupt
+	private final int fd0;
+	private final int fd1;
+
+	// maps file descriptor to selection key, synchronize on selector
+	private final Map<Integer, UnixSelectionKeyImpl> fdToKey = new HashMap<>();
+
+	// the set of keys registered with this Selector
+	private final Set<SelectionKey> keys;
+
+	// the set of keys with data ready for an operation
+	private final Set<SelectionKey> selectedKeys;
+
+	// public views of the key sets
+	private final Set<SelectionKey> publicKeys;             // Immutable
+	private final Set<SelectionKey> publicSelectedKeys;     // Removal allowed, but not addition
+
+	// pending new registrations/updates, queued by setEventOps
+	private final Object updateLock = new Object();
+	private final ArrayDeque<UnixSelectionKeyImpl> updateKeys = new ArrayDeque<>();
+
+	// interrupt triggering and clearing
+	private final Object interruptLock = new Object();
+	private boolean interruptTriggered;
+
+	UnixSelectorImpl(SelectorProvider sp) throws IOException {
+		super(sp);
+		this.epfd = EPoll.create();
+		this.pollArray = EPoll.allocatePollArray(NUM_EPOLLEVENTS);
+		try {
+			long fds = Native.makePipe(false);
+			this.fd0 = (int) (fds >>> 32);
+			this.fd1 = (int) fds;
+		} catch (IOException ioe) {
+			EPoll.freePollArray(pollArray);
+			Native.close(epfd);
+			throw ioe;
+		}
+		// register one end of the socket pair for wakeups
+		EPoll.ctlAdd(epfd, fd0, Poll.POLLIN());
+
+		keys = ConcurrentHashMap.newKeySet();
+		selectedKeys = new HashSet<>();
+		publicKeys = Collections.unmodifiableSet(keys);
+		publicSelectedKeys = new UngrowableSet<>(selectedKeys);
+	}
+
+	private void ensureOpen() {
+		if (!isOpen())
+			throw new ClosedSelectorException();
+	}
+
+	@Override
+	public Set<SelectionKey> keys() {
+		ensureOpen();
+		return publicKeys;
+	}
+
+	@Override
+	public Set<SelectionKey> selectedKeys() {
+		ensureOpen();
+		return publicSelectedKeys;
+	}
+
+	@Override
+	public int select(long timeout) throws IOException {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Negative timeout");
+		return lockAndDoSelect((timeout == 0) ? -1 : timeout);
+	}
+
+	@Override
+	public int select() throws IOException {
+		return select(0);
+	}
+
+	@Override
+	public int selectNow() throws IOException {
+		return lockAndDoSelect(0);
+	}
+
+	private int lockAndDoSelect(long timeout) throws IOException {
+		synchronized (this) {
+			ensureOpen();
+			synchronized (publicSelectedKeys) {
+				return doSelect(timeout);
+			}
+		}
+	}
+
+	private int doSelect(long timeout) throws IOException {
+		assert Thread.holdsLock(this);
+
+		int to = (int) Math.min(timeout, Integer.MAX_VALUE); // timeout in ms
+		int numEntries;
+
+		processUpdateQueue();
+		processDeregisterQueue();
+		try {
+			begin();
+			numEntries = EPoll.wait(epfd, pollArray, NUM_EPOLLEVENTS, to);
+		} finally {
+			end();
+		}
+		processDeregisterQueue();
+		return processEvents(numEntries);
+	}
+
+	/**
+	 * Process changes to the interest ops.
+	 */
+	private void processUpdateQueue() {
+		assert Thread.holdsLock(this);
+
+		synchronized (updateLock) {
+			UnixSelectionKeyImpl ski;
+			while ((ski = updateKeys.pollFirst()) != null) {
+				if (ski.isValid()) {
+					int fd = ski.getFDVal();
+					// add to fdToKey if needed
+					UnixSelectionKeyImpl previous = fdToKey.putIfAbsent(fd, ski);
+					assert (previous == null) || (previous == ski);
+
+					int newEvents = ski.translateInterestOps();
+					int registeredEvents = ski.registeredEvents();
+					if (newEvents != registeredEvents) {
+						if (newEvents == 0) {
+							// remove from epoll
+							EPoll.ctlDel(epfd, fd);
+						} else {
+							if (registeredEvents == 0) {
+								// add to epoll
+								EPoll.ctlAdd(epfd, fd, newEvents);
+							} else {
+								// modify events
+								EPoll.ctlMod(epfd, fd, newEvents);
+							}
+						}
+						ski.registeredEvents(newEvents);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Update the keys of file descriptors that were polled and add them to
+	 * the selected-key set.
+	 * If the interrupt fd has been selected, drain it and clear the interrupt.
+	 */
+	private int processEvents(int numEntries) throws IOException {
+		assert Thread.holdsLock(this);
+
+		boolean interrupted = false;
+		int numKeysUpdated = 0;
+		for (int i = 0; i < numEntries; i++) {
+			LinuxEPoll.epoll_event event = EPoll.getEvent(pollArray, i);
+			int fd = EPoll.getDescriptor(event);
+			if (fd == fd0) {
+				interrupted = true;
+			} else {
+				UnixSelectionKeyImpl ski = fdToKey.get(fd);
+				if (ski != null) {
+					int rOps = EPoll.getEvents(event);
+					if (selectedKeys.contains(ski)) {
+						if (ski.channel.translateAndUpdateReadyOps(rOps, ski)) {
+							numKeysUpdated++;
+						}
+					} else {
+						if (ski.channel.translateAndSetReadyOps(rOps, ski)) {
+							selectedKeys.add(ski);
+							numKeysUpdated++;
+						}
+					}
+				}
+			}
+		}
+
+		if (interrupted) {
+			clearInterrupt();
+		}
+
+		return numKeysUpdated;
+	}
+
+	/**
+	 * Invoked by selection operations to handle cancelled keys.
+	 */
+	private void processDeregisterQueue() throws IOException {
+		assert Thread.holdsLock(this);
+		assert Thread.holdsLock(publicSelectedKeys);
+
+		Set<SelectionKey> cks = cancelledKeys();
+		synchronized (cks) {
+			if (!cks.isEmpty()) {
+				Iterator<SelectionKey> i = cks.iterator();
+				while (i.hasNext()) {
+					UnixSelectionKeyImpl ski = (UnixSelectionKeyImpl) i.next();
+					i.remove();
+					implDereg(ski);
+				}
+			}
+		}
+	}
+
+	private void implDereg(UnixSelectionKeyImpl ski) throws IOException {
+		assert !ski.isValid();
+		int fd = ski.getFDVal();
+		if (fdToKey.remove(fd) != null) {
+			if (ski.registeredEvents() != 0) {
+				EPoll.ctlDel(epfd, fd);
+				ski.registeredEvents(0);
+			}
+		} else {
+			assert ski.registeredEvents() == 0;
+		}
+
+		keys.remove(ski);
+		selectedKeys.remove(ski);
+		deregister(ski);
+
+		SelectableChannel ch = ski.channel();
+		if (!ch.isOpen() && !ch.isRegistered())
+			((UnixSelChImpl) ch).kill();
+	}
+
+	@Override
+	protected SelectionKey register(AbstractSelectableChannel ch, int ops, Object attachment) {
+		if (!(ch instanceof UnixSelChImpl))
+			throw new IllegalSelectorException();
+		UnixSelectionKeyImpl k = new UnixSelectionKeyImpl((UnixSelChImpl) ch, this);
+		k.attach(attachment);
+
+		// register (if needed) before adding to key set
+		ensureOpen();
+		keys.add(k);
+		try {
+			k.interestOps(ops);
+		} catch (ClosedSelectorException e) {
+			assert ch.keyFor(this) == null;
+			keys.remove(k);
+			k.cancel();
+			throw e;
+		}
+		return k;
+	}
+
+	/**
+	 * Queues the key so that its interest ops are applied on the next
+	 * selection operation.
+	 */
+	void setEventOps(UnixSelectionKeyImpl ski) {
+		ensureOpen();
+		synchronized (updateLock) {
+			updateKeys.addLast(ski);
+		}
+	}
+
+	@Override
+	public Selector wakeup() {
+		synchronized (interruptLock) {
+			if (!interruptTriggered) {
+				CCharPointer b = StackValue.get(CCharPointer.class);
+				b.write((byte) 1);
+				try {
+					Native.write(fd1, 1, b);
+				} catch (IOException ioe) {
+					throw new InternalError(ioe);
+				}
+				interruptTriggered = true;
+			}
+		}
+		return this;
+	}
+
+	private void clearInterrupt() throws IOException {
+		synchronized (interruptLock) {
+			CCharPointer buf = StackValue.get(128);
+			while (Native.read(fd0, 128, buf) == 128) {
+				// drain
+			}
+			interruptTriggered = false;
+		}
+	}
+
+	@Override
+	protected void implCloseSelector() throws IOException {
+		wakeup();
+		synchronized (this) {
+			synchronized (interruptLock) {
+				interruptTriggered = true;
+			}
+
+			Native.close(epfd);
+			EPoll.freePollArray(pollArray);
+			Native.close(fd0);
+			Native.close(fd1);
+
+			synchronized (publicSelectedKeys) {
+				synchronized (updateLock) {
+					updateKeys.clear();
+				}
+				// Deregister channels
+				Iterator<SelectionKey> i = keys.iterator();
+				while (i.hasNext()) {
+					UnixSelectionKeyImpl ski = (UnixSelectionKeyImpl) i.next();
+					deregister(ski);
+					SelectableChannel selch = ski.channel();
+					if (!selch.isOpen() && !selch.isRegistered())
+						((UnixSelChImpl) selch).kill();
+					i.remove();
+				}
+				selectedKeys.clear();
+				fdToKey.clear();
+			}
+		}
+	}
+
+	/**
+	 * Set view that allows removal but not addition, used for the public
+	 * selected-key set.
+	 */
+	private static class UngrowableSet<E> extends AbstractSet<E> {
+
+		private final Set<E> s;
+
+		UngrowableSet(Set<E> s) {
+			this.s = s;
+		}
+
+		@Override
+		public int size() {
+			return s.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return s.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return s.contains(o);
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return s.iterator();
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return s.remove(o);
+		}
+
+		@Override
+		public void clear() {
+			s.clear();
+		}
+
+		@Override
+		public boolean add(E o) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
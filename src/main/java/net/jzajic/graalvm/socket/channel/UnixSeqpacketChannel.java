@@ -0,0 +1,90 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.nativeimage.PinnedObject;
+import org.graalvm.word.PointerBase;
+
+import com.oracle.svm.core.posix.headers.Socket;
+
+import net.jzajic.graalvm.posix.UnixNet;
+
+/**
+ * A connection-oriented AF_UNIX channel of type SOCK_SEQPACKET.
+ *
+ * The kernel preserves message boundaries: every {@link #write(ByteBuffer)}
+ * (including gathering writes) sends exactly one record and every read
+ * returns at most one record. {@link #receive(ByteBuffer)} additionally
+ * reports the full length of the record so that truncation can be detected.
+ */
+public class UnixSeqpacketChannel extends UnixSocketChannelImpl {
+
+	UnixSeqpacketChannel(SelectorProvider sp) throws IOException {
+		super(sp, Socket.SOCK_SEQPACKET());
+	}
+
+	// Constructor for sockets obtained from seqpacket server sockets
+	UnixSeqpacketChannel(SelectorProvider sp, FileDescriptor fd, boolean fdBlocking) throws IOException {
+		super(sp, fd, fdBlocking);
+	}
+
+	public static UnixSeqpacketChannel open() throws IOException {
+		return ((UnixSocketSelectorProvider) UnixSocketSelectorProvider.provider()).openSeqpacketChannel();
+	}
+
+	/**
+	 * Receives exactly one record into the buffer.
+	 *
+	 * A record of length zero cannot be told apart from end-of-stream and is
+	 * reported as end-of-stream, as it is by {@link #read(ByteBuffer)}.
+	 *
+	 * @return the length of the record, or -1 at end-of-stream, or 0 if no
+	 *         record was available in non-blocking mode. If the returned
+	 *         length is greater than the number of bytes that were remaining
+	 *         in dst the record was truncated (MSG_TRUNC) and its tail is lost.
+	 */
+	public int receive(ByteBuffer dst) throws IOException {
+		if (dst == null)
+			throw new NullPointerException();
+		if (dst.isReadOnly())
+			throw new IllegalArgumentException("Read-only buffer");
+		synchronized (readLock) {
+			int pos = dst.position();
+			int lim = dst.limit();
+			int rem = (pos <= lim ? lim - pos : 0);
+			int n;
+			PinnedObject[] pins = dst.isDirect() ? null : new PinnedObject[1];
+			try {
+				PointerBase address = IOUtil.bufferAddress(dst, pos, rem, pins, 0);
+				n = read(() -> {
+					// with MSG_TRUNC the real length of the record is returned
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					int r = UnixNet.recv(getFDVal(), address, rem, Socket.MSG_TRUNC());
+					if (ChannelMetrics.ENABLED)
+						metrics.read(r, false, System.nanoTime() - start);
+					return r;
+				}, TimeUnit.MILLISECONDS.toNanos(getReadTimeout()));
+			} finally {
+				IOUtil.unpin(pins, 1);
+			}
+			if (n > 0)
+				dst.position(pos + Math.min(n, rem));
+			return n;
+		}
+	}
+
+	/**
+	 * Sends the remaining bytes of the buffers as a single record.
+	 *
+	 * @return the number of bytes sent, zero if the record did not fit into
+	 *         the socket buffer in non-blocking mode
+	 */
+	public long send(ByteBuffer... srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+}
@@ -0,0 +1,371 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AlreadyBoundException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.NotYetBoundException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.oracle.svm.core.posix.headers.Poll;
+import com.oracle.svm.core.posix.headers.Socket;
+
+import net.jzajic.graalvm.headers.LinuxSocket;
+import net.jzajic.graalvm.posix.Native;
+import net.jzajic.graalvm.posix.UnixNet;
+import net.jzajic.graalvm.socket.UnixProtocolFamily;
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+
+/**
+ * An implementation of ServerSocketChannels for AF_UNIX sockets.
+ *
+ * Connections are accepted with accept4, so close-on-exec and (for
+ * {@link #acceptNonBlocking()} and {@link #acceptAll(Collection, int)})
+ * non-blocking mode are set without additional fcntl calls.
+ */
+public class UnixServerSocketChannel
+		extends ServerSocketChannel
+		implements UnixSelChImpl {
+
+	// Our file descriptor
+	private final FileDescriptor fd;
+
+	// fd value needed for dev/poll. This value will remain valid
+	// even after the value in the file descriptor object has been set to -1
+	private final int fdVal;
+
+	// SOCK_STREAM or SOCK_SEQPACKET
+	private final int type;
+
+	// Lock held by thread currently blocked in this channel
+	private final Object lock = new Object();
+
+	// Lock held by any thread that modifies the state fields declared below
+	// DO NOT invoke a blocking I/O operation while holding this lock!
+	private final Object stateLock = new Object();
+
+	// -- The following fields are protected by stateLock
+
+	// Channel state, increases monotonically
+	private static final int ST_UNINITIALIZED = -1;
+	private static final int ST_INUSE = 0;
+	private static final int ST_KILLED = 1;
+	private int state = ST_UNINITIALIZED;
+
+	// Binding
+	private UnixSocketAddress localAddress; // null => unbound
+
+	// -- End of fields protected by stateLock
+
+	UnixServerSocketChannel(SelectorProvider sp) throws IOException {
+		this(sp, Socket.SOCK_STREAM());
+	}
+
+	// Constructor for listening sockets of the given type, connections
+	// accepted from a SOCK_SEQPACKET socket are UnixSeqpacketChannels
+	UnixServerSocketChannel(SelectorProvider sp, int type) throws IOException {
+		super(sp);
+		this.type = type;
+		this.fd = UnixNet.socket(UnixProtocolFamily.UNIX, type);
+		this.fdVal = UnixNet.fdval(fd);
+		this.state = ST_INUSE;
+	}
+
+	public static UnixServerSocketChannel open() throws IOException {
+		return (UnixServerSocketChannel) UnixSocketSelectorProvider.provider().openServerSocketChannel();
+	}
+
+	@Override
+	public ServerSocket socket() {
+		throw new UnsupportedOperationException("ServerSocket adaptor not supported for AF_UNIX channels");
+	}
+
+	@Override
+	public SocketAddress getLocalAddress() throws IOException {
+		synchronized (stateLock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			return localAddress;
+		}
+	}
+
+	@Override
+	public <T> ServerSocketChannel setOption(SocketOption<T> name, T value)
+			throws IOException {
+		if (name == null)
+			throw new NullPointerException();
+		if (!supportedOptions().contains(name))
+			throw new UnsupportedOperationException("'" + name + "' not supported");
+		synchronized (stateLock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			UnixNet.setSocketOption(fd, UnixNet.UNSPEC, name, value);
+			return this;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getOption(SocketOption<T> name)
+			throws IOException {
+		if (name == null)
+			throw new NullPointerException();
+		if (!supportedOptions().contains(name))
+			throw new UnsupportedOperationException("'" + name + "' not supported");
+		synchronized (stateLock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			return (T) UnixNet.getSocketOption(fd, UnixNet.UNSPEC, name);
+		}
+	}
+
+	private static class DefaultOptionsHolder {
+		static final Set<SocketOption<?>> defaultOptions = defaultOptions();
+
+		private static Set<SocketOption<?>> defaultOptions() {
+			HashSet<SocketOption<?>> set = new HashSet<SocketOption<?>>(2);
+			set.add(StandardSocketOptions.SO_SNDBUF);
+			set.add(StandardSocketOptions.SO_RCVBUF);
+			return Collections.unmodifiableSet(set);
+		}
+	}
+
+	@Override
+	public final Set<SocketOption<?>> supportedOptions() {
+		return DefaultOptionsHolder.defaultOptions;
+	}
+
+	public boolean isBound() {
+		synchronized (stateLock) {
+			return localAddress != null;
+		}
+	}
+
+	public UnixSocketAddress localAddress() {
+		synchronized (stateLock) {
+			return localAddress;
+		}
+	}
+
+	/**
+	 * Binds the channel's socket to a local address and configures it to
+	 * listen for connections. A backlog of zero or less selects SOMAXCONN.
+	 */
+	@Override
+	public ServerSocketChannel bind(SocketAddress local, int backlog) throws IOException {
+		synchronized (lock) {
+			synchronized (stateLock) {
+				if (!isOpen())
+					throw new ClosedChannelException();
+				if (isBound())
+					throw new AlreadyBoundException();
+				UnixSocketAddress usa = (local == null) ? new UnixSocketAddress() : (UnixSocketAddress) local;
+				UnixNet.bind(fd, usa);
+				UnixNet.listen(fd, backlog < 1 ? LinuxSocket.SOMAXCONN() : backlog);
+				localAddress = UnixNet.getsockname(fdVal);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Accepts a connection. The returned channel is in blocking mode.
+	 */
+	@Override
+	public SocketChannel accept() throws IOException {
+		return accept(LinuxSocket.SOCK_CLOEXEC(), true);
+	}
+
+	/**
+	 * Accepts a connection with SOCK_NONBLOCK, the returned channel is
+	 * already configured non-blocking and ready to be registered with a
+	 * selector.
+	 */
+	public SocketChannel acceptNonBlocking() throws IOException {
+		return accept(LinuxSocket.SOCK_NONBLOCK() | LinuxSocket.SOCK_CLOEXEC(), false);
+	}
+
+	/**
+	 * Drains the accept queue of a non-blocking channel, typically called
+	 * once per OP_ACCEPT readiness event. Accepted channels are non-blocking.
+	 *
+	 * @param accepted receives the accepted channels
+	 * @param max the maximum number of connections to accept, zero or less
+	 *            for no limit
+	 * @return the number of accepted connections
+	 */
+	public int acceptAll(Collection<? super SocketChannel> accepted, int max) throws IOException {
+		if (isBlocking())
+			throw new IllegalBlockingModeException();
+		int count = 0;
+		while (max <= 0 || count < max) {
+			SocketChannel sc = acceptNonBlocking();
+			if (sc == null)
+				break;
+			accepted.add(sc);
+			count++;
+		}
+		return count;
+	}
+
+	private SocketChannel accept(int flags, boolean blocking) throws IOException {
+		synchronized (lock) {
+			if (!isOpen())
+				throw new ClosedChannelException();
+			if (!isBound())
+				throw new NotYetBoundException();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return null;
+				for (;;) {
+					n = UnixNet.accept(fd, flags);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					break;
+				}
+			} finally {
+				end(n >= 0);
+				assert IOStatus.check(n);
+			}
+
+			if (n < 0)
+				return null;
+
+			FileDescriptor newfd = UnixNet.newFD(n);
+			UnixSocketChannelImpl sc;
+			try {
+				if (type == Socket.SOCK_SEQPACKET())
+					sc = new UnixSeqpacketChannel(provider(), newfd, blocking);
+				else
+					sc = new UnixSocketChannelImpl(provider(), newfd, blocking);
+			} catch (IOException x) {
+				Native.close(n);
+				throw x;
+			}
+			if (!blocking) {
+				// fd is already non-blocking, this only updates the channel's mode
+				sc.configureBlocking(false);
+			}
+			return sc;
+		}
+	}
+
+	protected void implConfigureBlocking(boolean block) throws IOException {
+		Native.setBlocking(fdVal, block);
+	}
+
+	protected void implCloseSelectableChannel() throws IOException {
+		synchronized (stateLock) {
+			// the fd is closed by kill() once the last selector has
+			// deregistered this channel
+			if (!isRegistered())
+				kill();
+		}
+	}
+
+	public void kill() throws IOException {
+		synchronized (stateLock) {
+			if (state == ST_KILLED)
+				return;
+			if (state == ST_UNINITIALIZED) {
+				state = ST_KILLED;
+				return;
+			}
+			assert !isOpen() && !isRegistered();
+			Native.close(fdVal);
+			state = ST_KILLED;
+		}
+	}
+
+	/**
+	 * Translates native poll revent set into a ready operation set
+	 */
+	public boolean translateReadyOps(int ops, int initialOps,
+			UnixSelectionKeyImpl sk) {
+		int intOps = sk.nioInterestOps(); // Do this just once, it synchronizes
+		int oldOps = sk.nioReadyOps();
+		int newOps = initialOps;
+
+		if ((ops & Poll.POLLNVAL()) != 0) {
+			// This should only happen if this channel is pre-closed while a
+			// selection operation is in progress
+			// ## Throw an error if this channel has not been pre-closed
+			return false;
+		}
+
+		if ((ops & (Poll.POLLERR() | Poll.POLLHUP())) != 0) {
+			newOps = intOps;
+			sk.nioReadyOps(newOps);
+			return (newOps & ~oldOps) != 0;
+		}
+
+		if (((ops & Poll.POLLIN()) != 0) &&
+				((intOps & SelectionKey.OP_ACCEPT) != 0))
+			newOps |= SelectionKey.OP_ACCEPT;
+
+		sk.nioReadyOps(newOps);
+		return (newOps & ~oldOps) != 0;
+	}
+
+	public boolean translateAndUpdateReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, sk.nioReadyOps(), sk);
+	}
+
+	public boolean translateAndSetReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, 0, sk);
+	}
+
+	/**
+	 * Translates an interest operation set into a native poll event set
+	 */
+	public int translateInterestOps(int ops) {
+		int newOps = 0;
+		if ((ops & SelectionKey.OP_ACCEPT) != 0)
+			newOps |= Poll.POLLIN();
+		return newOps;
+	}
+
+	public FileDescriptor getFD() {
+		return fd;
+	}
+
+	public int getFDVal() {
+		return fdVal;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(this.getClass().getName());
+		sb.append('[');
+		if (!isOpen()) {
+			sb.append("closed");
+		} else {
+			synchronized (stateLock) {
+				UnixSocketAddress addr = localAddress;
+				if (addr == null) {
+					sb.append("unbound");
+				} else {
+					sb.append(addr.getPath());
+				}
+			}
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+
+}
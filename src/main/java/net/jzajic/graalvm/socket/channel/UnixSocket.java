@@ -7,7 +7,6 @@ import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.StandardSocketOptions;
-import java.nio.channels.Channels;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -23,13 +22,12 @@ public class UnixSocket extends java.net.Socket {
   private AtomicBoolean indown = new AtomicBoolean(false);
   private AtomicBoolean outdown = new AtomicBoolean(false);
 
+  // streams, created on demand
   private InputStream in;
   private OutputStream out;
 
   public UnixSocket(UnixSocketChannelImpl chan) {
       this.chan = chan;
-      in = Channels.newInputStream(chan);
-      out = Channels.newOutputStream(chan);
   }
 
   @Override
@@ -66,8 +64,17 @@ public class UnixSocket extends java.net.Socket {
   }
 
   public void connect(SocketAddress addr, Integer timeout) throws IOException {
+      connect(addr, timeout.intValue());
+  }
+
+  /**
+   * Connects the socket, waiting at most timeout milliseconds (zero for no
+   * limit) for the server to accept the connection into its backlog.
+   */
+  @Override
+  public void connect(SocketAddress addr, int timeout) throws IOException {
       if (addr instanceof UnixSocketAddress) {
-          chan.connect((UnixSocketAddress) addr);
+          chan.connect(addr, timeout);
       } else {
           throw new IllegalArgumentException("address of type "
                   + addr.getClass() + " are not supported. Use "
@@ -85,8 +92,11 @@ public class UnixSocket extends java.net.Socket {
       return null;
   }
 
-  public InputStream getInputStream() throws IOException {
+  public synchronized InputStream getInputStream() throws IOException {
       if (chan.isConnected()) {
+          if (in == null) {
+              in = new UnixSocketInputStream(chan);
+          }
           return in;
       } else {
           throw new IOException("not connected");
@@ -104,8 +114,11 @@ public class UnixSocket extends java.net.Socket {
   }
 
   @Override
-  public OutputStream getOutputStream() throws IOException {
+  public synchronized OutputStream getOutputStream() throws IOException {
       if (chan.isConnected()) {
+          if (out == null) {
+              out = new UnixSocketOutputStream(chan);
+          }
           return out;
       } else {
           throw new IOException("not connected");
@@ -133,7 +146,7 @@ public class UnixSocket extends java.net.Socket {
 
   @Override
   public boolean isClosed() {
-      return closed.get();
+      return closed.get() || !chan.isOpen();
   }
 
   @Override
@@ -218,22 +231,19 @@ public class UnixSocket extends java.net.Socket {
 
   @Override
   public int getSoTimeout() throws SocketException {
-      try {
-          return chan.getOption(UnixSocketOptions.SO_RCVTIMEO).intValue();
-      } catch (IOException e) {
-          throw (SocketException)new SocketException().initCause(e);
+      if (isClosed()) {
+          throw new SocketException("Socket is closed");
       }
+      return chan.getReadTimeout();
   }
 
   @Override
   public void setKeepAlive(boolean on) throws SocketException {
-  		/* BUG: temporarily disabled
       try {
           chan.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.valueOf(on));
       } catch (IOException e) {
           throw (SocketException)new SocketException().initCause(e);
       }
-      */
   }
 
   @Override
@@ -254,15 +264,19 @@ public class UnixSocket extends java.net.Socket {
       }
   }
 
+  /**
+   * Sets the read timeout of the input stream. The timeout is enforced
+   * with poll by the channel, changing it does not call into the kernel.
+   */
   @Override
   public void setSoTimeout(int timeout) throws SocketException {
-  		/* BUG: temporarily disabled
-      try {
-          chan.setOption(UnixSocketOptions.SO_RCVTIMEO, Integer.valueOf(timeout));
-      } catch (IOException e) {
-          throw (SocketException)new SocketException().initCause(e);
+      if (isClosed()) {
+          throw new SocketException("Socket is closed");
+      }
+      if (timeout < 0) {
+          throw new IllegalArgumentException("timeout can't be negative");
       }
-      */
+      chan.setReadTimeout(timeout);
   }
   
   private void ignore() {
@@ -6,29 +6,32 @@ import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketOption;
+import java.net.SocketTimeoutException;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.AlreadyBoundException;
 import java.nio.channels.AlreadyConnectedException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ConnectionPendingException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
 import java.nio.channels.NoConnectionPendingException;
 import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.graalvm.nativeimage.PinnedObject;
-import org.graalvm.nativeimage.UnmanagedMemory;
-import org.graalvm.nativeimage.c.type.CCharPointer;
-import org.graalvm.nativeimage.c.type.CIntPointer;
-import org.graalvm.nativeimage.c.type.CTypeConversion;
-import org.graalvm.word.WordFactory;
-
-import com.oracle.svm.core.headers.Errno;
+import com.oracle.svm.core.posix.headers.Fcntl;
+import com.oracle.svm.core.posix.headers.Poll;
 
+import net.jzajic.graalvm.headers.FdUtils;
 import net.jzajic.graalvm.posix.Native;
 import net.jzajic.graalvm.posix.UnixNet;
 import net.jzajic.graalvm.socket.UnixProtocolFamily;
@@ -37,9 +40,20 @@ import net.jzajic.graalvm.socket.UnixSocketOptions;
 
 /**
  * An implementation of SocketChannels
+ *
+ * In addition to the SocketChannel API, open file descriptors can be passed
+ * to the peer as SCM_RIGHTS ancillary data, see
+ * {@link #write(ByteBuffer, FileDescriptor[])} and
+ * {@link #read(ByteBuffer, List)}.
+ *
+ * Blocking reads and writes can be given a timeout, either for the channel
+ * with {@link #setReadTimeout(int)} and {@link #setWriteTimeout(int)} or
+ * for a single operation with {@link #read(ByteBuffer, long, TimeUnit)} and
+ * {@link #write(ByteBuffer, long, TimeUnit)}.
  */
-class UnixSocketChannelImpl
-		extends SocketChannel {
+public class UnixSocketChannelImpl
+		extends SocketChannel
+		implements UnixSelChImpl {
 	// Our file descriptor object
 	private final FileDescriptor fd;
 
@@ -47,43 +61,92 @@ class UnixSocketChannelImpl
 	// even after the value in the file descriptor object has been set to -1
 	private final int fdVal;
 
+	// Lock held by current reading or connecting thread
+	final Object readLock = new Object();
+
+	// Lock held by current writing or connecting thread
+	final Object writeLock = new Object();
+
 	// Lock held by any thread that modifies the state fields declared below
 	// DO NOT invoke a blocking I/O operation while holding this lock!
 	private final Object stateLock = new Object();
 
-	// -- The following fields are protected by stateLock
-
-	// State, increases monotonically
+	// State, increases monotonically. Written with STATE, either under
+	// stateLock or with compareAndSet, and read without locking.
 	private static final int ST_UNINITIALIZED = -1;
 	private static final int ST_UNCONNECTED = 0;
 	private static final int ST_PENDING = 1;
 	private static final int ST_CONNECTED = 2;
 	private static final int ST_KILLPENDING = 3;
 	private static final int ST_KILLED = 4;
-	private int state = ST_UNINITIALIZED;
+	private volatile int state = ST_UNINITIALIZED;
+
+	private static final AtomicIntegerFieldUpdater<UnixSocketChannelImpl> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(UnixSocketChannelImpl.class, "state");
+
+	// Input/Output open, only ever cleared
+	private volatile boolean isInputOpen = true;
+	private volatile boolean isOutputOpen = true;
+
+	// -- The following fields are protected by stateLock
 
 	// Binding
 	private UnixSocketAddress remoteAddress = null;
 	private UnixSocketAddress localAddress = null;
 
-	// Input/Output open
-	private boolean isInputOpen = true;
-	private boolean isOutputOpen = true;
-
 	// Socket adaptor, created on demand
 	private Socket socket;
 
 	// -- End of fields protected by stateLock
 
+	// Pipe used to splice from the socket into files, created on demand.
+	// The pipe is closed by kill() or, if a transfer is in progress at that
+	// time, by the transferring thread.
+	private final ReentrantLock spliceLock = new ReentrantLock();
+	private int spliceReadFd = -1;  // protected by spliceLock
+	private int spliceWriteFd = -1; // protected by spliceLock
+
+	// Maximum number of bytes moved by a single sendfile/splice call
+	private static final long MAX_TRANSFER = 1 << 20;
+
+	// Blocking mode of the file descriptor itself, sockets accepted with
+	// SOCK_NONBLOCK start out non-blocking
+	private volatile boolean fdBlocking = true;
+
+	// Timeouts of blocking reads and writes in milliseconds, 0 for none. A
+	// timed operation switches the file descriptor to non-blocking mode and
+	// waits for readiness in poll, so changing a timeout costs no system call.
+	private volatile int readTimeout;
+	private volatile int writeTimeout;
+
+	// I/O metrics, null unless ChannelMetrics.ENABLED
+	final ChannelMetrics metrics = ChannelMetrics.forChannel();
+
 	// Constructor for normal connecting sockets
 	//
 	UnixSocketChannelImpl(SelectorProvider sp) throws IOException {
+		this(sp, com.oracle.svm.core.posix.headers.Socket.SOCK_STREAM());
+	}
+
+	// Constructor for connecting sockets of other connection-oriented types
+	//
+	UnixSocketChannelImpl(SelectorProvider sp, int type) throws IOException {
 		super(sp);
-		this.fd = UnixNet.socket(UnixProtocolFamily.UNIX, true);
+		this.fd = UnixNet.socket(UnixProtocolFamily.UNIX, type);
 		this.fdVal = UnixNet.fdval(fd);
 		this.state = ST_UNCONNECTED;
 	}
 
+	// Constructor for sockets obtained from server sockets
+	//
+	UnixSocketChannelImpl(SelectorProvider sp, FileDescriptor fd, boolean fdBlocking) throws IOException {
+		super(sp);
+		this.fd = fd;
+		this.fdVal = UnixNet.fdval(fd);
+		this.fdBlocking = fdBlocking;
+		this.state = ST_CONNECTED;
+	}
+
 	@Override
 	public SocketAddress getRemoteAddress() throws IOException {
 		return remoteAddress;
@@ -105,6 +168,10 @@ class UnixSocketChannelImpl
 		synchronized (stateLock) {
 			if (!isOpen())
 				throw new ClosedChannelException();
+			if (name == UnixSocketOptions.SO_RCVTIMEO) {
+				setReadTimeout(((Integer) value).intValue());
+				return this;
+			}
 			UnixNet.setSocketOption(fd, UnixNet.UNSPEC, name, value);
 			return this;
 		}
@@ -122,6 +189,8 @@ class UnixSocketChannelImpl
 		synchronized (stateLock) {
 			if (!isOpen())
 				throw new ClosedChannelException();
+			if (name == UnixSocketOptions.SO_RCVTIMEO)
+				return (T) Integer.valueOf(readTimeout);
 			return (T) UnixNet.getSocketOption(fd, UnixNet.UNSPEC, name);
 		}
 	}
@@ -145,93 +214,614 @@ class UnixSocketChannelImpl
 		return DefaultOptionsHolder.defaultOptions;
 	}
 
+	/**
+	 * Sets the timeout of blocking reads in milliseconds, zero for none. A
+	 * read that finds no bytes within the timeout throws
+	 * SocketTimeoutException, the channel remains open.
+	 */
+	public void setReadTimeout(int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		readTimeout = millis;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the timeout of blocking writes in milliseconds, zero for none. A
+	 * write that cannot complete within the timeout throws
+	 * SocketTimeoutException, the bytes written so far are reflected in the
+	 * position of the buffer and the channel remains open.
+	 */
+	public void setWriteTimeout(int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		writeTimeout = millis;
+	}
+
+	public int getWriteTimeout() {
+		return writeTimeout;
+	}
+
+	/**
+	 * Returns the I/O metrics of this channel, or null if metrics are not
+	 * enabled.
+	 *
+	 * @see ChannelMetrics
+	 */
+	public ChannelMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the deadline of a blocking operation with the given timeout in
+	 * nanoseconds, or 0 if the operation is not timed. The file descriptor
+	 * of a timed operation is put into non-blocking mode.
+	 */
+	long deadline(long nanos) throws IOException { // package-private
+		if (nanos <= 0 || !isBlocking())
+			return 0;
+		if (fdBlocking) {
+			synchronized (blockingLock()) {
+				if (fdBlocking && isBlocking()) {
+					Native.setBlocking(fdVal, false);
+					fdBlocking = false;
+				}
+			}
+		}
+		long deadline = System.nanoTime() + nanos;
+		return (deadline == 0) ? 1 : deadline;
+	}
+
+	/**
+	 * Waits in poll until the file descriptor is ready for the event, for
+	 * blocking operations that found a non-blocking descriptor not ready.
+	 *
+	 * @throws SocketTimeoutException if the deadline has passed
+	 */
+	void park(int event, long deadline) throws IOException { // package-private
+		long millis = -1;
+		if (deadline != 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				throw new SocketTimeoutException();
+			// round up so that a short remainder does not become a busy poll
+			millis = Math.min(TimeUnit.NANOSECONDS.toMillis(remaining + 999_999L), Integer.MAX_VALUE);
+		}
+		UnixNet.poll(fd, event, millis);
+	}
+
+	// Returns true if the deadline of a timed operation has passed
+	private static boolean expired(long deadline) {
+		return (deadline != 0) && (deadline - System.nanoTime() <= 0);
+	}
+
+	// Returns true if a blocking operation got IOStatus.UNAVAILABLE from a
+	// non-blocking file descriptor and has to wait for readiness
+	boolean mustPark(long n) { // package-private
+		return (n == IOStatus.UNAVAILABLE) && isBlocking() && isOpen();
+	}
+
+	private static long remaining(ByteBuffer[] bufs, int offset, int length) {
+		long rem = 0;
+		for (int i = offset; i < offset + length; i++)
+			rem += bufs[i].remaining();
+		return rem;
+	}
+
+	// Returns false if input has been shut down, in which case reads
+	// report end-of-stream
+	private boolean ensureReadOpen() throws ClosedChannelException {
+		if (!isOpen())
+			throw new ClosedChannelException();
+		if (state != ST_CONNECTED)
+			throw new NotYetConnectedException();
+		return isInputOpen;
+	}
+
+	private void ensureWriteOpen() throws ClosedChannelException {
+		if (!isOpen() || !isOutputOpen)
+			throw new ClosedChannelException();
+		if (state != ST_CONNECTED)
+			throw new NotYetConnectedException();
+	}
+
 	private void readerCleanup() throws IOException {
-		synchronized (stateLock) {
-			if (state == ST_KILLPENDING)
-				kill();
+		if (state == ST_KILLPENDING) {
+			synchronized (stateLock) {
+				if (state == ST_KILLPENDING)
+					kill();
+			}
+		}
+	}
+
+	/**
+	 * A single receive system call of a subclass
+	 */
+	interface Receive { // package-private
+		/**
+		 * @return the number of bytes received or an IOStatus code
+		 */
+		int receive() throws IOException;
+	}
+
+	// Runs the read loop of this channel around a receive of a subclass:
+	// the open and connected checks, end-of-stream after shutdownInput,
+	// waiting for readiness and the cleanup of an asynchronous close
+	int read(Receive recv, long timeoutNanos) throws IOException { // package-private
+		synchronized (readLock) {
+			if (!ensureReadOpen())
+				return -1;
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(timeoutNanos);
+				for (;;) {
+					n = recv.receive();
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						park(Poll.POLLIN(), deadline);
+						continue;
+					}
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				readerCleanup();
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
 		}
 	}
 
 	@Override
 	public int read(ByteBuffer dst) throws IOException {
-		byte[] buffer = new byte[dst.remaining()]; 
-		try (PinnedObject pin = PinnedObject.create(buffer)) {
-			int n = Native.read(this.fdVal, buffer.length, pin.addressOfArrayElement(0));
-			dst.put(buffer);
-			switch (n) {
-			case 0:
-				return -1;
+		return read(dst, TimeUnit.MILLISECONDS.toNanos(readTimeout));
+	}
 
-			case -1:
-				int lastError = Errno.errno();
-				if (lastError == Errno.EAGAIN() || lastError == Errno.EWOULDBLOCK()) {
+	/**
+	 * Reads like {@link #read(ByteBuffer)}, waiting at most the given time
+	 * for bytes instead of the read timeout of the channel. A timeout of
+	 * zero waits without limit. The channel must be in blocking mode.
+	 *
+	 * @throws SocketTimeoutException if no bytes arrived within the timeout
+	 */
+	public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		if (!isBlocking())
+			throw new IllegalBlockingModeException();
+		return read(dst, unit.toNanos(timeout));
+	}
+
+	private int read(ByteBuffer dst, long timeoutNanos) throws IOException {
+		if (dst == null)
+			throw new NullPointerException();
+		synchronized (readLock) {
+			if (!ensureReadOpen())
+				return -1;
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
 					return 0;
-				} else {
-					throw new IOException(Native.getLastErrorString());
+				long deadline = deadline(timeoutNanos);
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.read(fdVal, dst);
+					if (ChannelMetrics.ENABLED)
+						metrics.read(n, dst.hasRemaining(), System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						park(Poll.POLLIN(), deadline);
+						continue;
+					}
+					return IOStatus.normalize(n);
 				}
-			default: {
-				return n;
-			}
+			} finally {
+				readerCleanup();
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
 			}
 		}
 	}
 
 	public long read(ByteBuffer[] dsts, int offset, int length)
 			throws IOException {
-		long total = 0;
-
-		for (int i = 0; i < length; i++) {
-			ByteBuffer dst = dsts[offset + i];
-			long read = read(dst);
-			if (read == -1) {
-				return read;
+		if ((offset < 0) || (length < 0) || (offset > dsts.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (readLock) {
+			if (!ensureReadOpen())
+				return -1;
+			long n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(readTimeout));
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.read(fdVal, dsts, offset, length);
+					if (ChannelMetrics.ENABLED)
+						metrics.read(n, remaining(dsts, offset, length) > 0, System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						park(Poll.POLLIN(), deadline);
+						continue;
+					}
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				readerCleanup();
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
 			}
-			total += read;
 		}
-
-		return total;
 	}
 
 	public int write(ByteBuffer src) throws IOException {
-		int r = src.remaining();
-		int n;
+		return write(src, TimeUnit.MILLISECONDS.toNanos(writeTimeout));
+	}
 
-		byte[] buffer = new byte[r];
-		ByteBuffer.wrap(buffer).put(src);
-		try (PinnedObject pin = PinnedObject.create(buffer)) {
-			n = Native.write(fdVal, r, pin.addressOfArrayElement(0));
+	/**
+	 * Writes like {@link #write(ByteBuffer)}, waiting at most the given time
+	 * for the bytes to be written instead of the write timeout of the
+	 * channel. A timeout of zero waits without limit. The channel must be in
+	 * blocking mode.
+	 *
+	 * @throws SocketTimeoutException if not all bytes could be written within
+	 *         the timeout, the position of the buffer reflects the bytes
+	 *         that were written
+	 */
+	public int write(ByteBuffer src, long timeout, TimeUnit unit) throws IOException {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		if (!isBlocking())
+			throw new IllegalBlockingModeException();
+		return write(src, unit.toNanos(timeout));
+	}
 
-			if (n >= 0) {
-				if (n < r) {
-					src.position(src.position() - (r - n));
-				}
-			} else {
-				int lastError = Errno.errno();
-				if (lastError == Errno.EAGAIN() || lastError == Errno.EWOULDBLOCK()) {
-					src.position(src.position() - r);
-				} else {
-					throw new IOException(Native.getLastErrorString());
+	private int write(ByteBuffer src, long timeoutNanos) throws IOException {
+		if (src == null)
+			throw new NullPointerException();
+		synchronized (writeLock) {
+			ensureWriteOpen();
+			int n = 0;
+			int written = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(timeoutNanos);
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.write(fdVal, src);
+					if (ChannelMetrics.ENABLED)
+						metrics.write(n, src.hasRemaining(), System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (n > 0) {
+						written += n;
+						// a blocking write completes, a non-blocking descriptor
+						// may have taken only part of the bytes
+						if (src.hasRemaining() && isBlocking() && isOpen()) {
+							park(Poll.POLLOUT(), deadline);
+							continue;
+						}
+					} else if (mustPark(n)) {
+						park(Poll.POLLOUT(), deadline);
+						continue;
+					}
+					return (written > 0) ? written : IOStatus.normalize(n);
 				}
+			} finally {
+				end((written > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
 			}
 		}
-
-		return n;
 	}
 
 	public long write(ByteBuffer[] srcs, int offset, int length)
 			throws IOException {
-		long result = 0;
-		int index = 0;
+		if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
+			throw new IndexOutOfBoundsException();
+		synchronized (writeLock) {
+			ensureWriteOpen();
+			long n = 0;
+			long written = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(writeTimeout));
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.write(fdVal, srcs, offset, length);
+					if (ChannelMetrics.ENABLED)
+						metrics.write(n, remaining(srcs, offset, length) > 0, System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (n > 0) {
+						written += n;
+						// a blocking write completes, a non-blocking descriptor
+						// may have taken only part of the bytes
+						if (remaining(srcs, offset, length) > 0 && isBlocking() && isOpen()) {
+							park(Poll.POLLOUT(), deadline);
+							continue;
+						}
+					} else if (mustPark(n)) {
+						park(Poll.POLLOUT(), deadline);
+						continue;
+					}
+					return (written > 0) ? written : IOStatus.normalize(n);
+				}
+			} finally {
+				end((written > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Writes bytes from the buffer and passes the descriptors to the peer.
+	 * The descriptors travel with the first byte written, so the buffer
+	 * must have at least one byte remaining. The caller keeps ownership of
+	 * its descriptors, the peer receives duplicates.
+	 *
+	 * @return the number of bytes written, zero if nothing (and no
+	 *         descriptor) was sent in non-blocking mode
+	 */
+	public int write(ByteBuffer src, FileDescriptor[] fds) throws IOException {
+		if (src == null || fds == null)
+			throw new NullPointerException();
+		synchronized (writeLock) {
+			ensureWriteOpen();
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(writeTimeout));
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.write(fdVal, src, fds);
+					if (ChannelMetrics.ENABLED)
+						metrics.write(n, src.hasRemaining(), System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						park(Poll.POLLOUT(), deadline);
+						continue;
+					}
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Reads bytes into the buffer, descriptors passed by the peer with these
+	 * bytes are added to fds. Received descriptors have close-on-exec set
+	 * and are owned by the caller. Descriptors beyond SCM_MAX_FD in a single
+	 * message are discarded by the kernel.
+	 *
+	 * @return the number of bytes read, or -1 at end-of-stream
+	 */
+	public int read(ByteBuffer dst, List<FileDescriptor> fds) throws IOException {
+		if (dst == null || fds == null)
+			throw new NullPointerException();
+		synchronized (readLock) {
+			if (!ensureReadOpen())
+				return -1;
+			int n = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(readTimeout));
+				for (;;) {
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = IOUtil.read(fdVal, dst, fds);
+					if (ChannelMetrics.ENABLED)
+						metrics.read(n, dst.hasRemaining(), System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						park(Poll.POLLIN(), deadline);
+						continue;
+					}
+					return IOStatus.normalize(n);
+				}
+			} finally {
+				readerCleanup();
+				end((n > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Transfers bytes from the file to this channel with sendfile, without
+	 * copying them through user space. The position of the file is not
+	 * modified.
+	 *
+	 * In blocking mode the transfer completes unless end-of-file is reached
+	 * or the write timeout expires after some bytes were sent, in
+	 * non-blocking mode it stops as soon as the socket buffer is full.
+	 *
+	 * @return the number of bytes transferred, possibly zero
+	 * @throws SocketTimeoutException if the write timeout expired before any
+	 *         byte was transferred
+	 */
+	public long transferFrom(FileChannel src, long position, long count) throws IOException {
+		if (src == null)
+			throw new NullPointerException();
+		if ((position < 0) || (count < 0))
+			throw new IllegalArgumentException();
+		int srcFd = FdUtils.Util_sun_nio_ch_FileChannelImpl.getFD(src);
+		if (srcFd < 0)
+			return src.transferTo(position, count, this);
+
+		synchronized (writeLock) {
+			ensureWriteOpen();
+			long n = 0;
+			long total = 0;
+			try {
+				begin();
+				if (!isOpen())
+					return 0;
+				long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(writeTimeout));
+				while (total < count) {
+					long chunk = Math.min(count - total, MAX_TRANSFER);
+					long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+					n = Native.sendfile(fdVal, srcFd, position + total, chunk);
+					if (ChannelMetrics.ENABLED)
+						metrics.write(n, n < chunk, System.nanoTime() - start);
+					if ((n == IOStatus.INTERRUPTED) && isOpen())
+						continue;
+					if (mustPark(n)) {
+						// the bytes already sent cannot be reported by an exception
+						if (total > 0 && expired(deadline))
+							break;
+						park(Poll.POLLOUT(), deadline);
+						continue;
+					}
+					if (n <= 0)
+						break; // end-of-file or socket buffer full
+					total += n;
+				}
+				return total;
+			} finally {
+				end((total > 0) || (n == IOStatus.UNAVAILABLE));
+				assert IOStatus.check(n);
+			}
+		}
+	}
+
+	/**
+	 * Transfers bytes from this channel to the file with splice through a
+	 * pipe owned by the channel, without copying them through user space.
+	 * The position of the file is not modified.
+	 *
+	 * In blocking mode the transfer completes unless end-of-stream is
+	 * reached or the read timeout expires after some bytes were transferred,
+	 * in non-blocking mode it stops as soon as no more bytes are available.
+	 *
+	 * @return the number of bytes transferred, possibly zero, or -1 if the
+	 *         channel has reached end-of-stream before any byte was transferred
+	 * @throws SocketTimeoutException if the read timeout expired before any
+	 *         byte was transferred
+	 */
+	public long transferTo(FileChannel dst, long position, long count) throws IOException {
+		if (dst == null)
+			throw new NullPointerException();
+		if ((position < 0) || (count < 0))
+			throw new IllegalArgumentException();
+		int dstFd = FdUtils.Util_sun_nio_ch_FileChannelImpl.getFD(dst);
+		if (dstFd < 0)
+			return dst.transferFrom(this, position, count);
+
+		synchronized (readLock) {
+			if (!ensureReadOpen())
+				return -1;
+			spliceLock.lock();
+			try {
+				long n = 0;
+				long total = 0;
+				try {
+					begin();
+					if (!isOpen())
+						return 0;
+					if (spliceReadFd < 0) {
+						long fds = Native.makePipe(true);
+						spliceReadFd = (int) (fds >>> 32);
+						spliceWriteFd = (int) fds;
+					}
+					long deadline = deadline(TimeUnit.MILLISECONDS.toNanos(readTimeout));
+					while (total < count) {
+						long chunk = Math.min(count - total, MAX_TRANSFER);
+						long start = ChannelMetrics.ENABLED ? System.nanoTime() : 0;
+						n = Native.splice(fdVal, -1, spliceWriteFd, -1, chunk, Fcntl.SPLICE_F_MOVE());
+						if (ChannelMetrics.ENABLED)
+							metrics.read(n, n < chunk, System.nanoTime() - start);
+						if ((n == IOStatus.INTERRUPTED) && isOpen())
+							continue;
+						if (mustPark(n)) {
+							// the bytes already spliced cannot be reported by an exception
+							if (total > 0 && expired(deadline))
+								break;
+							park(Poll.POLLIN(), deadline);
+							continue;
+						}
+						if (n <= 0)
+							break; // end-of-stream or no bytes available
+						drainSplicePipe(dstFd, position + total, n);
+						total += n;
+					}
+					if (total == 0 && n == IOStatus.EOF)
+						return IOStatus.EOF;
+					return total;
+				} finally {
+					readerCleanup();
+					end((total > 0) || (n == IOStatus.UNAVAILABLE));
+					assert IOStatus.check(n);
+				}
+			} finally {
+				synchronized (stateLock) {
+					if (state == ST_KILLED)
+						closeSplicePipe();
+					spliceLock.unlock();
+				}
+			}
+		}
+	}
 
-		for (index = offset; index < length; index++) {
-			result += write(srcs[index]);
+	// Moves len bytes from the splice pipe to the file at the given position
+	private void drainSplicePipe(int dstFd, long position, long len) throws IOException {
+		assert spliceLock.isHeldByCurrentThread();
+		while (len > 0) {
+			long m;
+			try {
+				m = Native.splice(spliceReadFd, -1, dstFd, position, len, Fcntl.SPLICE_F_MOVE());
+			} catch (IOException x) {
+				closeSplicePipe();
+				throw x;
+			}
+			if (m <= 0) {
+				// the bytes left in the pipe are lost, discard the pipe so that
+				// they are not written by the next transfer
+				closeSplicePipe();
+				throw new IOException("Short splice to file");
+			}
+			position += m;
+			len -= m;
 		}
+	}
 
-		return result;
+	private void closeSplicePipe() throws IOException {
+		assert spliceLock.isHeldByCurrentThread();
+		if (spliceReadFd >= 0) {
+			Native.close(spliceReadFd);
+			Native.close(spliceWriteFd);
+			spliceReadFd = -1;
+			spliceWriteFd = -1;
+		}
 	}
 
 	protected void implConfigureBlocking(boolean block) throws IOException {
-		Native.setBlocking(fdVal, block);
+		if (fdBlocking != block) {
+			Native.setBlocking(fdVal, block);
+			fdBlocking = block;
+		}
 	}
 
 	public final UnixSocketAddress getRemoteSocketAddress() {
@@ -278,31 +868,34 @@ class UnixSocketChannelImpl
 	
 	@Override
 	public boolean isConnected() {
-		synchronized (stateLock) {
-			return (state == ST_CONNECTED);
-		}
+		return (state == ST_CONNECTED);
 	}
 
 	@Override
 	public boolean isConnectionPending() {
-		synchronized (stateLock) {
-			return (state == ST_PENDING);
-		}
+		return (state == ST_PENDING);
 	}
 
 	void ensureOpenAndUnconnected() throws IOException { // package-private
-		synchronized (stateLock) {
-			if (!isOpen())
-				throw new ClosedChannelException();
-			if (state == ST_CONNECTED)
-				throw new AlreadyConnectedException();
-			if (state == ST_PENDING)
-				throw new ConnectionPendingException();
-		}
+		if (!isOpen())
+			throw new ClosedChannelException();
+		int s = state;
+		if (s == ST_CONNECTED)
+			throw new AlreadyConnectedException();
+		if (s == ST_PENDING)
+			throw new ConnectionPendingException();
 	}
 
 	@Override
 	public boolean connect(SocketAddress sa) throws IOException {
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				return implConnect(sa);
+			}
+		}
+	}
+
+	private boolean implConnect(SocketAddress sa) throws IOException {
 		UnixSocketAddress usa = (UnixSocketAddress) sa;
 		ensureOpenAndUnconnected();
 		synchronized (blockingLock()) {
@@ -338,36 +931,82 @@ class UnixSocketChannelImpl
 				throw x;
 			}
 			synchronized (stateLock) {
+				this.remoteAddress = usa;
 				if (n > 0) {
-
 					// Connection succeeded; disallow further
 					// invocation
-					state = ST_CONNECTED;
-					if (isOpen())
-						this.remoteAddress = usa;
+					STATE.compareAndSet(this, ST_UNCONNECTED, ST_CONNECTED);
 					return true;
 				}
 				// If nonblocking and no exception then connection
 				// pending; disallow another invocation
-				if (!isBlocking()) {
-					this.remoteAddress = usa;
-					state = ST_PENDING;
-				} else
-					assert false;
+				if (!isBlocking())
+					STATE.compareAndSet(this, ST_UNCONNECTED, ST_PENDING);
+			}
+			if (isBlocking()) {
+				// a blocking connect only returns without a connection when
+				// the send timeout expired with the listen backlog still full
+				close();
+				throw new SocketTimeoutException("Connect timed out");
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Connects this channel, waiting at most timeout milliseconds for room
+	 * in the listen backlog of the peer. The channel must be in blocking
+	 * mode, a timeout of zero waits indefinitely. As with
+	 * {@link java.net.Socket#connect(SocketAddress, int)} the channel is
+	 * closed if the connection cannot be established in time.
+	 *
+	 * The wait is done by the kernel, bounded by SO_SNDTIMEO for the
+	 * duration of the call.
+	 *
+	 * @throws SocketTimeoutException if the timeout expired
+	 */
+	public void connect(SocketAddress sa, int timeout) throws IOException {
+		if (timeout < 0)
+			throw new IllegalArgumentException("connect: timeout can't be negative");
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				synchronized (blockingLock()) {
+					if (!isBlocking())
+						throw new IllegalBlockingModeException();
+					if (timeout == 0) {
+						implConnect(sa);
+						return;
+					}
+					ensureOpenAndUnconnected();
+					int saved = UnixNet.getSendTimeout(fdVal);
+					UnixNet.setSendTimeout(fdVal, timeout);
+					try {
+						implConnect(sa);
+					} finally {
+						if (isOpen())
+							UnixNet.setSendTimeout(fdVal, saved);
+					}
+				}
+			}
+		}
+	}
+
 	public boolean finishConnect() throws IOException {
-		synchronized (stateLock) {
-			if (!isOpen())
-				throw new ClosedChannelException();
-			if (state == ST_CONNECTED)
-				return true;
-			if (state != ST_PENDING)
-				throw new NoConnectionPendingException();
+		synchronized (readLock) {
+			synchronized (writeLock) {
+				return implFinishConnect();
+			}
 		}
+	}
+
+	private boolean implFinishConnect() throws IOException {
+		if (!isOpen())
+			throw new ClosedChannelException();
+		int s = state;
+		if (s == ST_CONNECTED)
+			return true;
+		if (s != ST_PENDING)
+			throw new NoConnectionPendingException();
 		int n = 0;
 		try {
 			try {
@@ -379,30 +1018,35 @@ class UnixSocketChannelImpl
 						}
 					}
 					if (!isBlocking()) {
-						for (;;) {
-							n = UnixNet.connect(
-									fd,
-										this.remoteAddress);
-							if ((n == IOStatus.INTERRUPTED)
-									&& isOpen())
-								continue;
-							break;
+						// wait for writability without blocking and check
+						// for an asynchronous error before retrying
+						n = UnixNet.poll(fd, Poll.POLLOUT(), 0);
+						if (n == 0 || n == IOStatus.INTERRUPTED) {
+							n = IOStatus.UNAVAILABLE;
+						} else {
+							int err = UnixNet.getSocketError(fdVal);
+							if (err != 0)
+								UnixNet.handleSocketError(err);
+							// completes an in-progress connect (EISCONN) or
+							// retries one refused with EAGAIN by a full
+							// AF_UNIX listen backlog
+							for (;;) {
+								n = UnixNet.connect(fd, this.remoteAddress);
+								if ((n == IOStatus.INTERRUPTED) && isOpen())
+									continue;
+								break;
+							}
 						}
 					} else {
+						// the kernel waits for room in the listen backlog
 						for (;;) {
-							n = UnixNet.connect(
-									fd,
-										this.remoteAddress);
-							if (n == 0) {
-								// Loop in case of
-								// spurious notifications
-								continue;
-							}
-							if ((n == IOStatus.INTERRUPTED)
-									&& isOpen())
+							n = UnixNet.connect(fd, this.remoteAddress);
+							if ((n == IOStatus.INTERRUPTED) && isOpen())
 								continue;
 							break;
 						}
+						if (n == IOStatus.UNAVAILABLE)
+							throw new SocketTimeoutException("Connect timed out");
 					}
 				}
 			} finally {
@@ -428,9 +1072,7 @@ class UnixSocketChannelImpl
 			throw x;
 		}
 		if (n > 0) {
-			synchronized (stateLock) {
-				state = ST_CONNECTED;
-			}
+			STATE.compareAndSet(this, ST_PENDING, ST_CONNECTED);
 			return true;
 		}
 		return false;
@@ -467,15 +1109,11 @@ class UnixSocketChannelImpl
 	}
 
 	public boolean isInputOpen() {
-		synchronized (stateLock) {
-			return isInputOpen;
-		}
+		return isInputOpen;
 	}
 
 	public boolean isOutputOpen() {
-		synchronized (stateLock) {
-			return isOutputOpen;
-		}
+		return isOutputOpen;
 	}
 
 	// AbstractInterruptibleChannel synchronizes invocations of this method
@@ -484,7 +1122,23 @@ class UnixSocketChannelImpl
 	// (which is volatile) will have been set to false.
 	//
 	protected void implCloseSelectableChannel() throws IOException {
-		Native.close(fdVal);
+		synchronized (stateLock) {
+			isInputOpen = false;
+			isOutputOpen = false;
+
+			// If this channel is not registered then it's safe to close the fd
+			// immediately since we know at this point that no thread is
+			// blocked in an I/O operation upon the channel and, since the
+			// channel is marked closed, no thread will start another such
+			// operation.  If this channel is registered then we don't close
+			// the fd since it might be in use by a selector.  In that case
+			// closing this channel caused its keys to be cancelled, so the
+			// last selector to deregister a key for this channel will invoke
+			// kill() to close the fd.
+			//
+			if (!isRegistered())
+				kill();
+		}
 	}
 
 	public void kill() throws IOException {
@@ -496,10 +1150,82 @@ class UnixSocketChannelImpl
 				return;
 			}
 			assert !isOpen() && !isRegistered();
+			Native.close(fdVal);
 			state = ST_KILLED;
+			// a thread in transferTo closes the pipe itself once done
+			if (spliceLock.tryLock()) {
+				try {
+					closeSplicePipe();
+				} finally {
+					spliceLock.unlock();
+				}
+			}
 		}
 	}
 
+	/**
+	 * Translates native poll revent ops into a ready operation ops
+	 */
+	public boolean translateReadyOps(int ops, int initialOps,
+			UnixSelectionKeyImpl sk) {
+		int intOps = sk.nioInterestOps(); // Do this just once, it synchronizes
+		int oldOps = sk.nioReadyOps();
+		int newOps = initialOps;
+
+		if ((ops & Poll.POLLNVAL()) != 0) {
+			// This should only happen if this channel is pre-closed while a
+			// selection operation is in progress
+			// ## Throw an error if this channel has not been pre-closed
+			return false;
+		}
+
+		if ((ops & (Poll.POLLERR() | Poll.POLLHUP())) != 0) {
+			newOps = intOps;
+			sk.nioReadyOps(newOps);
+			return (newOps & ~oldOps) != 0;
+		}
+
+		if (((ops & Poll.POLLIN()) != 0) &&
+				((intOps & SelectionKey.OP_READ) != 0) &&
+				(state == ST_CONNECTED))
+			newOps |= SelectionKey.OP_READ;
+
+		if (((ops & Poll.POLLOUT()) != 0) &&
+				((intOps & SelectionKey.OP_CONNECT) != 0) &&
+				((state == ST_UNCONNECTED) || (state == ST_PENDING)))
+			newOps |= SelectionKey.OP_CONNECT;
+
+		if (((ops & Poll.POLLOUT()) != 0) &&
+				((intOps & SelectionKey.OP_WRITE) != 0) &&
+				(state == ST_CONNECTED))
+			newOps |= SelectionKey.OP_WRITE;
+
+		sk.nioReadyOps(newOps);
+		return (newOps & ~oldOps) != 0;
+	}
+
+	public boolean translateAndUpdateReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, sk.nioReadyOps(), sk);
+	}
+
+	public boolean translateAndSetReadyOps(int ops, UnixSelectionKeyImpl sk) {
+		return translateReadyOps(ops, 0, sk);
+	}
+
+	/**
+	 * Translates an interest operation set into a native poll event set
+	 */
+	public int translateInterestOps(int ops) {
+		int newOps = 0;
+		if ((ops & SelectionKey.OP_READ) != 0)
+			newOps |= Poll.POLLIN();
+		if ((ops & SelectionKey.OP_WRITE) != 0)
+			newOps |= Poll.POLLOUT();
+		if ((ops & SelectionKey.OP_CONNECT) != 0)
+			newOps |= Poll.POLLOUT();
+		return newOps;
+	}
+
 	// package-private
 	int poll(int events, long timeout) throws IOException {
 		assert Thread.holdsLock(blockingLock()) && !isBlocking();
@@ -507,10 +1233,8 @@ class UnixSocketChannelImpl
 		int n = 0;
 		try {
 			begin();
-			synchronized (stateLock) {
-				if (!isOpen())
-					return 0;
-			}
+			if (!isOpen())
+				return 0;
 			n = UnixNet.poll(fd, events, timeout);
 		} finally {
 			readerCleanup();
@@ -567,7 +1291,23 @@ class UnixSocketChannelImpl
 
 	@Override
 	public Socket socket() {
-		return new UnixSocket(this);
+		synchronized (stateLock) {
+			if (socket == null)
+				socket = new UnixSocket(this);
+			return socket;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that can be read without blocking, zero
+	 * once input has been shut down.
+	 */
+	public int available() throws IOException {
+		if (!isOpen())
+			throw new ClosedChannelException();
+		if (!isInputOpen)
+			return 0;
+		return UnixNet.available(fd);
 	}
 
 	public boolean isBound() {
@@ -0,0 +1,148 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+
+/**
+ * The input stream of a {@link UnixSocket}.
+ *
+ * Bytes are read into a direct buffer and served from there, so a read of
+ * a single byte or of a small array does not pin or allocate and usually
+ * does not need a system call. Reads of at least the buffer size go to the
+ * array directly.
+ */
+class UnixSocketInputStream extends InputStream {
+
+	static final int BUFFER_SIZE = 8192;
+
+	private final UnixSocketChannelImpl ch;
+
+	// bytes between position and limit have not been read yet
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	private boolean eof;
+
+	UnixSocketInputStream(UnixSocketChannelImpl ch) {
+		this.ch = ch;
+		buffer.flip();
+	}
+
+	/**
+	 * Reads into the empty buffer.
+	 *
+	 * @return false at end-of-stream
+	 */
+	private boolean fill() throws IOException {
+		if (eof)
+			return false;
+		if (!ch.isBlocking())
+			throw new IllegalBlockingModeException();
+		buffer.clear();
+		int n;
+		try {
+			n = ch.read(buffer);
+		} finally {
+			buffer.flip();
+		}
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		int rem = buffer.remaining();
+		if (rem > 0) {
+			int n = Math.min(rem, len);
+			buffer.get(b, off, n);
+			return n;
+		}
+		if (len >= BUFFER_SIZE) {
+			// large reads bypass the buffer
+			if (eof)
+				return -1;
+			if (!ch.isBlocking())
+				throw new IllegalBlockingModeException();
+			int n = ch.read(ByteBuffer.wrap(b, off, len));
+			if (n < 0)
+				eof = true;
+			return n;
+		}
+		if (!fill())
+			return -1;
+		int n = Math.min(buffer.remaining(), len);
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		if (!buffer.hasRemaining() && !fill())
+			return 0;
+		int k = (int) Math.min(buffer.remaining(), n);
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+
+	/**
+	 * Returns the number of buffered bytes plus the number of bytes the
+	 * socket has received (FIONREAD).
+	 */
+	@Override
+	public synchronized int available() throws IOException {
+		if (eof)
+			return 0;
+		long n = (long) buffer.remaining() + ch.available();
+		return (int) Math.min(n, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Writes all remaining bytes of the stream to out. To the output stream
+	 * of another unix socket the bytes are written from the direct buffer,
+	 * without copying them to the heap.
+	 */
+	public synchronized long transferTo(OutputStream out) throws IOException {
+		long total = 0;
+		if (out instanceof UnixSocketOutputStream) {
+			UnixSocketOutputStream uout = (UnixSocketOutputStream) out;
+			while (buffer.hasRemaining() || fill()) {
+				int n = buffer.remaining();
+				uout.write(buffer);
+				total += n;
+			}
+		} else {
+			byte[] b = new byte[BUFFER_SIZE];
+			while (buffer.hasRemaining() || fill()) {
+				int n = buffer.remaining();
+				buffer.get(b, 0, n);
+				out.write(b, 0, n);
+				total += n;
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public void close() throws IOException {
+		ch.close();
+	}
+
+}
@@ -0,0 +1,67 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+
+/**
+ * The output stream of a {@link UnixSocket}.
+ *
+ * Like the stream of a java.net.Socket it is not buffered, every write is
+ * sent before it returns. Small writes are copied into a direct buffer so
+ * they do not pin or allocate, writes of at least the buffer size are sent
+ * from the array directly.
+ */
+class UnixSocketOutputStream extends OutputStream {
+
+	static final int BUFFER_SIZE = 8192;
+
+	private final UnixSocketChannelImpl ch;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	UnixSocketOutputStream(UnixSocketChannelImpl ch) {
+		this.ch = ch;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		buffer.clear();
+		buffer.put((byte) b);
+		buffer.flip();
+		write(buffer);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return;
+		if (len >= BUFFER_SIZE) {
+			write(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+		buffer.clear();
+		buffer.put(b, off, len);
+		buffer.flip();
+		write(buffer);
+	}
+
+	/**
+	 * Writes all remaining bytes of src
+	 */
+	synchronized void write(ByteBuffer src) throws IOException {
+		if (!ch.isBlocking())
+			throw new IllegalBlockingModeException();
+		while (src.hasRemaining())
+			ch.write(src);
+	}
+
+	@Override
+	public void close() throws IOException {
+		ch.close();
+	}
+
+}
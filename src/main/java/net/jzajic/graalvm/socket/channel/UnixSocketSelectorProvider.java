@@ -1,5 +1,6 @@
 package net.jzajic.graalvm.socket.channel;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.net.ProtocolFamily;
 import java.nio.channels.DatagramChannel;
@@ -9,16 +10,25 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelector;
 import java.nio.channels.spi.SelectorProvider;
 
+import com.oracle.svm.core.posix.headers.Socket;
+
+import net.jzajic.graalvm.headers.LinuxSocket;
+import net.jzajic.graalvm.posix.Native;
+import net.jzajic.graalvm.posix.UnixNet;
+import net.jzajic.graalvm.socket.UnixProtocolFamily;
+
 public class UnixSocketSelectorProvider extends SelectorProvider {
 
 	@Override
 	public DatagramChannel openDatagramChannel() throws IOException {
-		return SelectorProvider.provider().openDatagramChannel();
+		return new UnixDatagramChannel(this);
 	}
 
 	@Override
 	public DatagramChannel openDatagramChannel(ProtocolFamily family) throws IOException {
-		return SelectorProvider.provider().openDatagramChannel(family);
+		if (family != UnixProtocolFamily.UNIX)
+			throw new UnsupportedOperationException("Protocol family not supported");
+		return new UnixDatagramChannel(this);
 	}
 
 	@Override
@@ -28,12 +38,12 @@ public class UnixSocketSelectorProvider extends SelectorProvider {
 
 	@Override
 	public AbstractSelector openSelector() throws IOException {
-		return SelectorProvider.provider().openSelector();
+		return new UnixSelectorImpl(this);
 	}
 
 	@Override
 	public ServerSocketChannel openServerSocketChannel() throws IOException {
-		return SelectorProvider.provider().openServerSocketChannel();
+		return new UnixServerSocketChannel(this);
 	}
 
 	@Override
@@ -41,8 +51,85 @@ public class UnixSocketSelectorProvider extends SelectorProvider {
 		return new UnixSocketChannelImpl(this);
 	}
 
+	/**
+	 * Opens an unconnected SOCK_SEQPACKET channel.
+	 */
+	public UnixSeqpacketChannel openSeqpacketChannel() throws IOException {
+		return new UnixSeqpacketChannel(this);
+	}
+
+	/**
+	 * Opens a SOCK_SEQPACKET server channel, accepted connections are
+	 * {@link UnixSeqpacketChannel}s.
+	 */
+	public UnixServerSocketChannel openSeqpacketServerChannel() throws IOException {
+		return new UnixServerSocketChannel(this, Socket.SOCK_SEQPACKET());
+	}
+
+	/**
+	 * Creates a pair of connected SOCK_STREAM channels.
+	 *
+	 * @see #socketpair(int)
+	 */
+	public UnixSocketChannelImpl[] socketpair() throws IOException {
+		return socketpair(Socket.SOCK_STREAM());
+	}
+
+	/**
+	 * Creates a pair of connected blocking channels with socketpair(2),
+	 * without binding to a path. Data written to one channel is read from
+	 * the other in both directions.
+	 *
+	 * The sockets are unnamed, so the channels have no local or remote
+	 * address. For SOCK_SEQPACKET the channels are
+	 * {@link UnixSeqpacketChannel}s. SOCK_DGRAM channels preserve message
+	 * boundaries: each write sends one datagram and each read returns at
+	 * most one, a zero-length datagram reads as 0 bytes rather than
+	 * end-of-stream.
+	 *
+	 * @param type SOCK_STREAM, SOCK_DGRAM or SOCK_SEQPACKET
+	 */
+	public UnixSocketChannelImpl[] socketpair(int type) throws IOException {
+		boolean seqpacket = (type == Socket.SOCK_SEQPACKET());
+		boolean dgram = (type == Socket.SOCK_DGRAM());
+		if (!seqpacket && !dgram && type != Socket.SOCK_STREAM())
+			throw new IllegalArgumentException("Unsupported socket type: " + type);
+		FileDescriptor[] fds = UnixNet.socketpair(type, LinuxSocket.SOCK_CLOEXEC());
+		UnixSocketChannelImpl[] pair = new UnixSocketChannelImpl[2];
+		try {
+			for (int i = 0; i < 2; i++) {
+				if (seqpacket)
+					pair[i] = new UnixSeqpacketChannel(this, fds[i], true);
+				else if (dgram)
+					pair[i] = new UnixDatagramPairChannel(this, fds[i], true);
+				else
+					pair[i] = new UnixSocketChannelImpl(this, fds[i], true);
+			}
+		} catch (IOException x) {
+			Native.close(UnixNet.fdval(fds[0]));
+			Native.close(UnixNet.fdval(fds[1]));
+			throw x;
+		}
+		return pair;
+	}
+
+	/**
+	 * Returns the I/O metrics summed over all socket channels, or null if
+	 * metrics are not enabled. System calls restarted after EINTR are
+	 * counted by {@link ChannelMetrics#readsRestarted()} and
+	 * {@link ChannelMetrics#writesRestarted()}.
+	 *
+	 * @see ChannelMetrics
+	 */
+	public ChannelMetrics metrics() {
+		return ChannelMetrics.total();
+	}
+
+	private static final UnixSocketSelectorProvider INSTANCE = new UnixSocketSelectorProvider();
+
+	// Channels can only be registered with selectors of the same provider
 	public static SelectorProvider provider() {
-		return new UnixSocketSelectorProvider();
+		return INSTANCE;
 	}
 	
 }
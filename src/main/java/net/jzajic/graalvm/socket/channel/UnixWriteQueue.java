@@ -0,0 +1,283 @@
+package net.jzajic.graalvm.socket.channel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An outbound queue of a socket channel that coalesces small writes.
+ *
+ * Buffers are enqueued by any number of threads and written by
+ * {@link #flush()}, typically when the channel is writable. A flush
+ * gathers up to IOV_MAX queued buffers into one writev call: runs of small
+ * buffers are first copied into a direct staging buffer of the queue, so
+ * they take a single iovec, larger buffers are written in place. On a
+ * non-blocking channel a flush stops at the first partial write and the
+ * next flush continues with the remaining bytes.
+ *
+ * The queue tracks the bytes not written yet. When they exceed the high
+ * watermark the queue becomes unwritable, and writable again once flushes
+ * have brought them down to the low watermark, so producers can apply
+ * backpressure with {@link #isWritable()} or a {@link WritabilityListener}.
+ * Enqueueing never fails, the watermarks are advisory.
+ *
+ * An enqueued buffer is owned by the queue and must not be modified until
+ * it has been written.
+ */
+public class UnixWriteQueue {
+
+	/**
+	 * Notified when a queue crosses its watermarks. The listener is invoked
+	 * by the thread that changed the state, notifications of concurrent
+	 * changes may arrive out of order, so a listener should check
+	 * {@link UnixWriteQueue#isWritable()}.
+	 */
+	public interface WritabilityListener {
+		void writabilityChanged(UnixWriteQueue queue, boolean writable);
+	}
+
+	public static final int DEFAULT_LOW_WATERMARK = 32 * 1024;
+	public static final int DEFAULT_HIGH_WATERMARK = 64 * 1024;
+
+	// buffers up to this size are copied into the staging buffer
+	private static final int COPY_THRESHOLD = 1024;
+
+	private static final int STAGING_SIZE = 64 * 1024;
+
+	private final UnixSocketChannelImpl ch;
+	private final long lowWatermark;
+	private final long highWatermark;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+
+	// bytes enqueued and not written yet
+	private final AtomicLong pending = new AtomicLong();
+
+	private final AtomicBoolean writable = new AtomicBoolean(true);
+	private volatile WritabilityListener listener;
+
+	// held by the thread flushing or clearing the queue
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	// -- The following fields are owned by the thread holding flushing
+
+	// batch taken from the queue, entries from first to count not written
+	private final ByteBuffer[] batch = new ByteBuffer[IOUtil.IOV_MAX];
+	private int first;
+	private int count;
+
+	// allocated on the first small buffer
+	private ByteBuffer staging;
+
+	public UnixWriteQueue(UnixSocketChannelImpl ch) {
+		this(ch, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK);
+	}
+
+	/**
+	 * @param lowWatermark pending bytes at or below which an unwritable
+	 *            queue becomes writable
+	 * @param highWatermark pending bytes above which the queue becomes
+	 *            unwritable
+	 */
+	public UnixWriteQueue(UnixSocketChannelImpl ch, long lowWatermark, long highWatermark) {
+		if (ch == null)
+			throw new NullPointerException();
+		if (lowWatermark < 0 || highWatermark < lowWatermark)
+			throw new IllegalArgumentException("Invalid watermarks");
+		this.ch = ch;
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	public UnixSocketChannelImpl channel() {
+		return ch;
+	}
+
+	public void setWritabilityListener(WritabilityListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Enqueues the remaining bytes of the buffer. May be invoked by any
+	 * thread.
+	 *
+	 * @return true if the queue is still writable
+	 */
+	public boolean enqueue(ByteBuffer src) {
+		int rem = src.remaining();
+		if (rem == 0)
+			return isWritable();
+		queue.offer(src);
+		pending.addAndGet(rem);
+		updateWritability();
+		return isWritable();
+	}
+
+	/**
+	 * Returns true if the bytes not written yet have not exceeded the high
+	 * watermark, or have since dropped to the low watermark.
+	 */
+	public boolean isWritable() {
+		return writable.get();
+	}
+
+	/**
+	 * Returns the number of bytes enqueued and not written yet.
+	 */
+	public long pendingBytes() {
+		return pending.get();
+	}
+
+	public boolean isEmpty() {
+		return pending.get() == 0;
+	}
+
+	/**
+	 * Writes queued bytes until the queue is empty or the channel takes no
+	 * more bytes. Returns immediately if another thread is flushing.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long flush() throws IOException {
+		long written = 0;
+		while (flushing.compareAndSet(false, true)) {
+			boolean full;
+			try {
+				written += drain();
+				full = first < count;
+			} finally {
+				flushing.set(false);
+			}
+			// a buffer enqueued while releasing is flushed by this thread
+			// unless the channel is full
+			if (full || queue.isEmpty())
+				break;
+		}
+		return written;
+	}
+
+	/**
+	 * Discards the bytes not written yet, typically after the channel has
+	 * been closed. Returns without effect if another thread is flushing.
+	 *
+	 * @return the number of bytes discarded
+	 */
+	public long clear() {
+		if (!flushing.compareAndSet(false, true))
+			return 0;
+		try {
+			long n = 0;
+			for (int i = first; i < count; i++) {
+				n += batch[i].remaining();
+				batch[i] = null;
+			}
+			first = count = 0;
+			ByteBuffer b;
+			while ((b = queue.poll()) != null)
+				n += b.remaining();
+			release(n);
+			return n;
+		} finally {
+			flushing.set(false);
+		}
+	}
+
+	private long drain() throws IOException {
+		long written = 0;
+		for (;;) {
+			if (first == count && !fill())
+				return written;
+			long n = ch.write(batch, first, count - first);
+			if (n > 0) {
+				written += n;
+				release(n);
+			}
+			while (first < count && !batch[first].hasRemaining())
+				batch[first++] = null;
+			if (first < count)
+				return written;
+		}
+	}
+
+	// Takes the next batch from the queue, copying runs of small buffers
+	// into the staging buffer. Returns false if the queue is empty.
+	private boolean fill() {
+		first = count = 0;
+		if (staging != null)
+			staging.clear();
+		// start of the open run in the staging buffer, -1 if none
+		int run = -1;
+		ByteBuffer b;
+		while ((b = queue.peek()) != null) {
+			int rem = b.remaining();
+			if (rem <= COPY_THRESHOLD) {
+				if (staging == null)
+					staging = ByteBuffer.allocateDirect(STAGING_SIZE);
+				if (rem <= staging.remaining()) {
+					if (run < 0) {
+						if (count == batch.length)
+							break;
+						run = staging.position();
+						count++;
+					}
+					staging.put(b);
+					queue.poll();
+					continue;
+				}
+			}
+			if (run >= 0) {
+				batch[count - 1] = slice(run);
+				run = -1;
+			}
+			if (count == batch.length)
+				break;
+			batch[count++] = b;
+			queue.poll();
+		}
+		if (run >= 0)
+			batch[count - 1] = slice(run);
+		return count > 0;
+	}
+
+	private ByteBuffer slice(int from) {
+		ByteBuffer s = staging.duplicate();
+		s.flip();
+		s.position(from);
+		return s.slice();
+	}
+
+	private void release(long n) {
+		pending.addAndGet(-n);
+		updateWritability();
+	}
+
+	private void updateWritability() {
+		for (;;) {
+			long p = pending.get();
+			boolean w = writable.get();
+			if (w && p > highWatermark) {
+				if (writable.compareAndSet(true, false))
+					fireWritabilityChanged(false);
+			} else if (!w && p <= lowWatermark) {
+				if (writable.compareAndSet(false, true))
+					fireWritabilityChanged(true);
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void fireWritabilityChanged(boolean w) {
+		WritabilityListener l = listener;
+		if (l != null)
+			l.writabilityChanged(this, w);
+	}
+
+	@Override
+	public String toString() {
+		return "UnixWriteQueue[pending=" + pending.get() + (writable.get() ? "" : ", unwritable") + "]";
+	}
+
+}
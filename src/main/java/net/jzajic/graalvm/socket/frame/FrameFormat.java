@@ -0,0 +1,148 @@
+package net.jzajic.graalvm.socket.frame;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The layout of the length prefix of frames: a fixed size unsigned integer
+ * of 2, 4 or 8 bytes in a given byte order, or an unsigned LEB128 varint.
+ * The prefix holds the length of the payload only.
+ *
+ * Frames longer than the maximum frame length are rejected by both the
+ * reader and the writer, which also bounds the receive buffer of a
+ * {@link FrameReader}.
+ */
+public final class FrameFormat {
+
+	// maximum length of a varint prefix of an int
+	private static final int MAX_VARINT_LENGTH = 5;
+
+	private final int prefixLength; // 0 for varint
+	private final ByteOrder order;
+	private final int maxFrameLength;
+
+	private FrameFormat(int prefixLength, ByteOrder order, int maxFrameLength) {
+		if (maxFrameLength < 0)
+			throw new IllegalArgumentException("maxFrameLength < 0");
+		if (prefixLength == 2 && maxFrameLength > 0xFFFF)
+			throw new IllegalArgumentException("maxFrameLength does not fit into a 2 byte prefix");
+		this.prefixLength = prefixLength;
+		this.order = order;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * Returns a format with a fixed size prefix.
+	 *
+	 * @param prefixLength 2, 4 or 8
+	 */
+	public static FrameFormat fixed(int prefixLength, ByteOrder order, int maxFrameLength) {
+		if (prefixLength != 2 && prefixLength != 4 && prefixLength != 8)
+			throw new IllegalArgumentException("prefixLength must be 2, 4 or 8");
+		if (order == null)
+			throw new NullPointerException("order");
+		return new FrameFormat(prefixLength, order, maxFrameLength);
+	}
+
+	/**
+	 * Returns a format with an unsigned LEB128 varint prefix.
+	 */
+	public static FrameFormat varint(int maxFrameLength) {
+		return new FrameFormat(0, null, maxFrameLength);
+	}
+
+	public int maxFrameLength() {
+		return maxFrameLength;
+	}
+
+	/**
+	 * Returns the largest length of a prefix in this format.
+	 */
+	public int maxPrefixLength() {
+		return (prefixLength > 0) ? prefixLength : MAX_VARINT_LENGTH;
+	}
+
+	/**
+	 * Writes the prefix of a payload of the given length at the position of
+	 * dst and advances the position.
+	 *
+	 * @throws IllegalArgumentException if the length exceeds the maximum
+	 */
+	public void encode(int length, ByteBuffer dst) {
+		if (length < 0 || length > maxFrameLength)
+			throw new IllegalArgumentException("Frame length " + length + " exceeds maximum " + maxFrameLength);
+		if (prefixLength == 0) {
+			while ((length & ~0x7F) != 0) {
+				dst.put((byte) ((length & 0x7F) | 0x80));
+				length >>>= 7;
+			}
+			dst.put((byte) length);
+			return;
+		}
+		ByteOrder saved = dst.order();
+		dst.order(order);
+		switch (prefixLength) {
+			case 2:
+				dst.putShort((short) length);
+				break;
+			case 4:
+				dst.putInt(length);
+				break;
+			default:
+				dst.putLong(length);
+				break;
+		}
+		dst.order(saved);
+	}
+
+	/**
+	 * Decodes the prefix at the absolute index of src without changing the
+	 * buffer.
+	 *
+	 * @param limit index after the last byte available
+	 * @return the payload length shifted left by 8 bits or'ed with the length
+	 *         of the prefix, or -1 if the prefix is not complete
+	 * @throws ProtocolException if the length exceeds the maximum
+	 */
+	long decode(ByteBuffer src, int index, int limit) throws ProtocolException {
+		long length;
+		int n;
+		if (prefixLength == 0) {
+			length = 0;
+			n = 0;
+			for (;;) {
+				if (index + n >= limit)
+					return -1;
+				int b = src.get(index + n);
+				length |= (long) (b & 0x7F) << (7 * n);
+				n++;
+				if ((b & 0x80) == 0)
+					break;
+				if (n == MAX_VARINT_LENGTH)
+					throw new ProtocolException("Malformed varint frame prefix");
+			}
+		} else {
+			if (limit - index < prefixLength)
+				return -1;
+			n = prefixLength;
+			boolean big = (order == ByteOrder.BIG_ENDIAN);
+			length = 0;
+			for (int i = 0; i < n; i++) {
+				int b = src.get(index + (big ? i : n - 1 - i)) & 0xFF;
+				length = (length << 8) | b;
+			}
+		}
+		if (length < 0 || length > maxFrameLength)
+			throw new ProtocolException("Frame length " + length + " exceeds maximum " + maxFrameLength);
+		return (length << 8) | n;
+	}
+
+	@Override
+	public String toString() {
+		if (prefixLength == 0)
+			return "FrameFormat[varint, max=" + maxFrameLength + "]";
+		return "FrameFormat[" + prefixLength + " bytes, " + order + ", max=" + maxFrameLength + "]";
+	}
+
+}
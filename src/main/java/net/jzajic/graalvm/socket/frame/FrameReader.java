@@ -0,0 +1,125 @@
+package net.jzajic.graalvm.socket.frame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads length-prefixed frames from a channel into a direct receive buffer
+ * that is allocated once and reused.
+ *
+ * Each read fills as much of the buffer as the channel has available, so
+ * small frames are usually decoded several per system call. Frames are
+ * handed out as a read-only view of the receive buffer, without copying.
+ * The view is the same object for every frame and is only valid until the
+ * next call to {@link #read()}: a caller that keeps a payload must copy it.
+ *
+ * A FrameReader is not safe for use by multiple threads.
+ */
+public class FrameReader {
+
+	private final ReadableByteChannel ch;
+	private final FrameFormat format;
+
+	// receive buffer, bytes between start and end are not consumed yet
+	private final ByteBuffer buffer;
+	private int start;
+	private int end;
+
+	// read-only view of the receive buffer handed out for each frame
+	private final ByteBuffer frame;
+
+	private boolean eof;
+
+	/**
+	 * Creates a reader with a receive buffer that holds one frame of the
+	 * maximum length.
+	 */
+	public FrameReader(ReadableByteChannel ch, FrameFormat format) {
+		this(ch, format, format.maxPrefixLength() + format.maxFrameLength());
+	}
+
+	/**
+	 * @param bufferSize size of the receive buffer, at least the maximum
+	 *            length of a prefixed frame
+	 */
+	public FrameReader(ReadableByteChannel ch, FrameFormat format, int bufferSize) {
+		if (ch == null || format == null)
+			throw new NullPointerException();
+		if (bufferSize < format.maxPrefixLength() + format.maxFrameLength())
+			throw new IllegalArgumentException("bufferSize too small for the maximum frame length");
+		this.ch = ch;
+		this.format = format;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.frame = buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the payload of the next frame, reading from the channel as
+	 * needed. The returned buffer is positioned at the payload and its limit
+	 * is the end of the payload.
+	 *
+	 * @return the payload, or null if the channel is in non-blocking mode and
+	 *         no complete frame is available yet, or at end-of-stream
+	 * @throws EOFException if the stream ends within a frame
+	 * @throws java.net.ProtocolException if a frame exceeds the maximum length
+	 */
+	public ByteBuffer read() throws IOException {
+		if (start == end)
+			start = end = 0;
+		for (;;) {
+			long prefix = format.decode(buffer, start, end);
+			if (prefix >= 0) {
+				int header = (int) (prefix & 0xFF);
+				int length = (int) (prefix >>> 8);
+				int frameEnd = start + header + length;
+				if (frameEnd <= end) {
+					frame.limit(frameEnd).position(start + header);
+					start = frameEnd;
+					return frame;
+				}
+				if (frameEnd > buffer.capacity())
+					compact();
+			} else if (end == buffer.capacity()) {
+				compact();
+			}
+			if (eof) {
+				if (start != end)
+					throw new EOFException("Stream ended within a frame");
+				return null;
+			}
+			buffer.limit(buffer.capacity()).position(end);
+			int n = ch.read(buffer);
+			if (n < 0)
+				eof = true;
+			else if (n == 0)
+				return null;
+			else
+				end += n;
+		}
+	}
+
+	/**
+	 * Returns true once the channel has reached end-of-stream.
+	 */
+	public boolean isEndOfStream() {
+		return eof;
+	}
+
+	/**
+	 * Returns the number of received bytes not yet returned as frames.
+	 */
+	public int buffered() {
+		return end - start;
+	}
+
+	// Moves the unconsumed bytes to the start of the receive buffer
+	private void compact() {
+		buffer.limit(end).position(start);
+		buffer.compact();
+		end -= start;
+		start = 0;
+	}
+
+}
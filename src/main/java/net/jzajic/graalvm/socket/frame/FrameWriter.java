@@ -0,0 +1,83 @@
+package net.jzajic.graalvm.socket.frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Writes length-prefixed frames to a channel. The prefix is encoded into a
+ * small direct buffer owned by the writer and sent together with the
+ * payload in one gathering write, the payload is not copied.
+ *
+ * On a channel in non-blocking mode a frame may be written only in part,
+ * {@link #flush()} then continues with the rest of it. The payload buffer
+ * must not be modified until the frame has been written completely.
+ *
+ * A FrameWriter is not safe for use by multiple threads.
+ */
+public class FrameWriter {
+
+	private final GatheringByteChannel ch;
+	private final FrameFormat format;
+
+	private final ByteBuffer header;
+	private final ByteBuffer[] srcs = new ByteBuffer[2];
+
+	// true while a frame has not been written completely
+	private boolean pending;
+
+	public FrameWriter(GatheringByteChannel ch, FrameFormat format) {
+		if (ch == null || format == null)
+			throw new NullPointerException();
+		this.ch = ch;
+		this.format = format;
+		this.header = ByteBuffer.allocateDirect(format.maxPrefixLength());
+		this.srcs[0] = header;
+	}
+
+	/**
+	 * Writes the remaining bytes of the payload as one frame.
+	 *
+	 * @return true if the frame was written completely, false if the channel
+	 *         is in non-blocking mode and {@link #flush()} has to complete it
+	 * @throws IllegalArgumentException if the payload exceeds the maximum
+	 *         frame length
+	 * @throws IllegalStateException if the previous frame is still pending
+	 */
+	public boolean write(ByteBuffer payload) throws IOException {
+		if (pending)
+			throw new IllegalStateException("Previous frame not flushed");
+		header.clear();
+		format.encode(payload.remaining(), header);
+		header.flip();
+		srcs[1] = payload;
+		pending = true;
+		return flush();
+	}
+
+	/**
+	 * Continues writing a frame that was written only in part.
+	 *
+	 * @return true if no frame is pending anymore
+	 */
+	public boolean flush() throws IOException {
+		if (!pending)
+			return true;
+		ByteBuffer payload = srcs[1];
+		while (header.hasRemaining() || payload.hasRemaining()) {
+			if (ch.write(srcs) == 0)
+				return false;
+		}
+		srcs[1] = null;
+		pending = false;
+		return true;
+	}
+
+	/**
+	 * Returns true if a frame has not been written completely.
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+
+}
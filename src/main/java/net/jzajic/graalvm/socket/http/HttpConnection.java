@@ -0,0 +1,659 @@
+package net.jzajic.graalvm.socket.http;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.util.ArrayDeque;
+
+import com.oracle.svm.core.posix.headers.Poll;
+
+import net.jzajic.graalvm.posix.UnixNet;
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+import net.jzajic.graalvm.socket.channel.UnixSocketChannelImpl;
+import net.jzajic.graalvm.socket.channel.UnixSocketSelectorProvider;
+
+/**
+ * A persistent HTTP/1.1 connection over a blocking unix socket channel.
+ *
+ * Requests may be pipelined: several requests can be sent with
+ * {@link #send(HttpRequest)} before their responses are received, in the
+ * same order, with {@link #receive()}. Receiving a response skips whatever
+ * is left of the body of the previous one.
+ *
+ * Responses are read into a direct receive buffer owned by the connection.
+ * The response head is copied out of it once and header fields are kept as
+ * offsets into that copy, so parsing allocates no strings. Body bytes are
+ * handed out as read-only views of the receive buffer, see
+ * {@link HttpResponse#next(int)}, with chunked transfer coding removed.
+ *
+ * A connection is not safe for use by multiple threads.
+ */
+public class HttpConnection implements Closeable {
+
+	static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+	// body bytes skipped when a pooled response is closed early, the
+	// connection is closed instead if more are left
+	private static final long SKIP_LIMIT = 64 * 1024;
+
+	// body framing of the current response
+	private static final int BODY_NONE = 0;    // no body, or body complete
+	private static final int BODY_LENGTH = 1;  // Content-Length
+	private static final int BODY_CHUNKED = 2; // chunked transfer coding
+	private static final int BODY_EOF = 3;     // delimited by end-of-stream
+
+	// position within a chunked body
+	private static final int CHUNK_SIZE = 0;
+	private static final int CHUNK_DATA = 1;
+	private static final int CHUNK_CRLF = 2;
+	private static final int CHUNK_TRAILER = 3;
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final UnixSocketChannelImpl ch;
+
+	// the client that keeps this connection alive, null if not pooled
+	final UnixHttpClient client;
+
+	// receive buffer, bytes between start and end are not consumed yet
+	private final ByteBuffer buffer;
+	private int start;
+	private int end;
+
+	// read-only view of the receive buffer handed out for body bytes
+	private final ByteBuffer view;
+
+	// buffer the request heads are encoded into, grown as needed
+	private ByteBuffer head = ByteBuffer.allocateDirect(1024);
+	private final ByteBuffer[] srcs = new ByteBuffer[2];
+
+	// methods of the requests sent whose responses were not received yet
+	private final ArrayDeque<String> inflight = new ArrayDeque<String>();
+
+	// head of the current response, copied from the receive buffer
+	byte[] headBytes = new byte[1024];
+	int headLength;
+
+	// offsets into headBytes of the status line parts and header fields,
+	// four per field: name start, name end, value start, value end
+	int status;
+	int minorVersion;
+	int reasonStart;
+	int reasonEnd;
+	int[] fields = new int[4 * 32];
+	int fieldCount;
+	long contentLength;
+	boolean chunked;
+
+	// the current response and the state of its body
+	private HttpResponse current;
+	private int bodyMode;
+	private long bodyRemaining;
+	private int chunkState;
+
+	// false once the server or the framing of a response ends the connection
+	private boolean reusable = true;
+	private boolean closed;
+
+	/**
+	 * Connects to the server with a receive buffer of the default size.
+	 */
+	public static HttpConnection open(UnixSocketAddress address) throws IOException {
+		return open(address, DEFAULT_BUFFER_SIZE, null);
+	}
+
+	static HttpConnection open(UnixSocketAddress address, int bufferSize, UnixHttpClient client) throws IOException {
+		UnixSocketChannelImpl ch = (UnixSocketChannelImpl) UnixSocketSelectorProvider.provider().openSocketChannel();
+		try {
+			ch.connect(address);
+			return new HttpConnection(ch, bufferSize, client);
+		} catch (IOException | RuntimeException x) {
+			ch.close();
+			throw x;
+		}
+	}
+
+	/**
+	 * Creates a connection over a connected channel in blocking mode.
+	 *
+	 * @param bufferSize size of the receive buffer, which bounds the size of
+	 *            a response head
+	 */
+	public HttpConnection(UnixSocketChannelImpl ch, int bufferSize) {
+		this(ch, bufferSize, null);
+	}
+
+	private HttpConnection(UnixSocketChannelImpl ch, int bufferSize, UnixHttpClient client) {
+		if (!ch.isBlocking())
+			throw new IllegalBlockingModeException();
+		if (bufferSize < 256)
+			throw new IllegalArgumentException("bufferSize < 256");
+		this.ch = ch;
+		this.client = client;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.view = buffer.asReadOnlyBuffer();
+		this.srcs[0] = head;
+	}
+
+	public UnixSocketChannelImpl channel() {
+		return ch;
+	}
+
+	/**
+	 * Sends the request. The response is received with {@link #receive()}
+	 * after the responses of the requests sent before.
+	 */
+	public void send(HttpRequest request) throws IOException {
+		ensureOpen();
+		if (!reusable)
+			throw new IOException("Connection is closed by the server");
+		encodeHead(request);
+		ByteBuffer body = request.body();
+		srcs[0] = head;
+		srcs[1] = (body != null) ? body.duplicate() : EMPTY;
+		try {
+			while (head.hasRemaining() || srcs[1].hasRemaining())
+				ch.write(srcs);
+		} catch (IOException x) {
+			reusable = false;
+			throw x;
+		} finally {
+			srcs[1] = null;
+		}
+		inflight.add(request.method());
+	}
+
+	/**
+	 * Receives the head of the response to the oldest request not answered
+	 * yet. Interim (1xx) responses are skipped.
+	 *
+	 * @throws IllegalStateException if no request is waiting for a response
+	 */
+	public HttpResponse receive() throws IOException {
+		ensureOpen();
+		if (current != null) {
+			skipBody(Long.MAX_VALUE);
+			current = null;
+		}
+		String method = inflight.peek();
+		if (method == null)
+			throw new IllegalStateException("No request sent");
+		if (!reusable)
+			throw new IOException("Connection is closed by the server");
+		try {
+			do {
+				readHead();
+			} while (status >= 100 && status < 200 && status != 101);
+		} catch (IOException x) {
+			reusable = false;
+			throw x;
+		}
+		inflight.poll();
+
+		if (status == 101 || minorVersion == 0 && !hasToken("connection", "keep-alive")
+				|| hasToken("connection", "close"))
+			reusable = false;
+		chunkState = CHUNK_SIZE;
+		if (method.equals("HEAD") || status == 204 || status == 304 || status == 101) {
+			bodyMode = BODY_NONE;
+		} else if (chunked) {
+			bodyMode = BODY_CHUNKED;
+		} else if (contentLength >= 0) {
+			bodyMode = (contentLength > 0) ? BODY_LENGTH : BODY_NONE;
+			bodyRemaining = contentLength;
+		} else {
+			bodyMode = BODY_EOF;
+			reusable = false;
+		}
+		current = new HttpResponse(this);
+		return current;
+	}
+
+	/**
+	 * Returns the number of requests sent whose responses were not received.
+	 */
+	public int pending() {
+		return inflight.size();
+	}
+
+	/**
+	 * Returns true if further requests can be sent on this connection.
+	 */
+	public boolean isReusable() {
+		return reusable && !closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			reusable = false;
+			ch.close();
+		}
+	}
+
+	// -- Response body, used by HttpResponse
+
+	boolean isCurrent(HttpResponse response) {
+		return current == response;
+	}
+
+	boolean isBodyComplete() {
+		return bodyMode == BODY_NONE;
+	}
+
+	/**
+	 * Returns the next bytes of the body of the current response, at most
+	 * max bytes, or null at the end of the body.
+	 */
+	ByteBuffer nextBody(int max) throws IOException {
+		try {
+			for (;;) {
+				switch (bodyMode) {
+					case BODY_NONE:
+						return null;
+					case BODY_LENGTH:
+						if (bodyRemaining == 0) {
+							bodyMode = BODY_NONE;
+							return null;
+						}
+						return bodySlice(max, false);
+					case BODY_EOF:
+						if (start == end && !fill()) {
+							bodyMode = BODY_NONE;
+							return null;
+						}
+						return bodySlice(max, true);
+					default:
+						break;
+				}
+				switch (chunkState) {
+					case CHUNK_SIZE:
+						bodyRemaining = readChunkSize();
+						chunkState = (bodyRemaining == 0) ? CHUNK_TRAILER : CHUNK_DATA;
+						break;
+					case CHUNK_DATA:
+						if (bodyRemaining > 0)
+							return bodySlice(max, false);
+						chunkState = CHUNK_CRLF;
+						break;
+					case CHUNK_CRLF:
+						if (lineLength(readLine()) != 0)
+							throw new ProtocolException("Missing CRLF after chunk data");
+						chunkState = CHUNK_SIZE;
+						break;
+					default:
+						// trailer fields are discarded
+						while (lineLength(readLine()) != 0) {
+						}
+						bodyMode = BODY_NONE;
+						return null;
+				}
+			}
+		} catch (IOException x) {
+			reusable = false;
+			throw x;
+		}
+	}
+
+	/**
+	 * Ends the current response, skipping the rest of its body. The
+	 * connection is returned to its client or closed if it cannot be used
+	 * anymore.
+	 */
+	void endResponse(HttpResponse response) throws IOException {
+		if (current != response)
+			return;
+		try {
+			if (!closed)
+				skipBody((client != null) ? SKIP_LIMIT : Long.MAX_VALUE);
+		} finally {
+			current = null;
+			if (client != null) {
+				if (isReusable() && inflight.isEmpty())
+					client.release(this);
+				else
+					close();
+			} else if (!reusable) {
+				close();
+			}
+		}
+	}
+
+	private void skipBody(long limit) throws IOException {
+		ByteBuffer b;
+		while ((b = nextBody(Integer.MAX_VALUE)) != null) {
+			limit -= b.remaining();
+			if (limit < 0) {
+				// not worth reading, the connection is given up instead
+				reusable = false;
+				return;
+			}
+		}
+	}
+
+	private ByteBuffer bodySlice(int max, boolean untilEof) throws IOException {
+		if (start == end && !fill())
+			throw new EOFException("Connection closed within response body");
+		int n = Math.min(end - start, max);
+		if (!untilEof) {
+			n = (int) Math.min(n, bodyRemaining);
+			bodyRemaining -= n;
+		}
+		view.limit(start + n).position(start);
+		start += n;
+		return view;
+	}
+
+	// -- Receive buffer
+
+	/**
+	 * Reads more bytes into the receive buffer, making room as needed.
+	 *
+	 * @return false at end-of-stream
+	 */
+	private boolean fill() throws IOException {
+		if (start == end) {
+			start = end = 0;
+		} else if (end == buffer.capacity()) {
+			buffer.limit(end).position(start);
+			buffer.compact();
+			end -= start;
+			start = 0;
+		}
+		if (end == buffer.capacity())
+			throw new ProtocolException("Line or response head exceeds the receive buffer");
+		buffer.limit(buffer.capacity()).position(end);
+		int n = ch.read(buffer);
+		if (n < 0)
+			return false;
+		end += n;
+		return true;
+	}
+
+	/**
+	 * Reads a line, the line starts at start and the index of its LF is
+	 * returned. start is moved past the LF by the caller.
+	 */
+	private int readLine() throws IOException {
+		int from = start;
+		for (;;) {
+			for (int i = from; i < end; i++) {
+				if (buffer.get(i) == '\n')
+					return i;
+			}
+			int scanned = end - start;
+			if (!fill())
+				throw new EOFException("Connection closed within response");
+			from = start + scanned;
+		}
+	}
+
+	// Returns the length of the line ending at lf without CR and consumes it
+	private int lineLength(int lf) {
+		int len = lf - start;
+		if (len > 0 && buffer.get(lf - 1) == '\r')
+			len--;
+		start = lf + 1;
+		return len;
+	}
+
+	private long readChunkSize() throws IOException {
+		int lf = readLine();
+		long size = 0;
+		int digits = 0;
+		for (int i = start; i < lf; i++) {
+			int d = Character.digit(buffer.get(i), 16);
+			if (d < 0)
+				break; // chunk extension or CR
+			if (++digits > 15)
+				throw new ProtocolException("Chunk size too large");
+			size = (size << 4) | d;
+		}
+		if (digits == 0)
+			throw new ProtocolException("Malformed chunk size");
+		start = lf + 1;
+		return size;
+	}
+
+	// -- Response head
+
+	private void readHead() throws IOException {
+		int scanned = 0;
+		for (;;) {
+			int eoh = findEndOfHead(start + scanned);
+			if (eoh >= 0) {
+				headLength = eoh - start;
+				if (headBytes.length < headLength)
+					headBytes = new byte[Math.max(headLength, 2 * headBytes.length)];
+				buffer.limit(eoh).position(start);
+				buffer.get(headBytes, 0, headLength);
+				start = eoh;
+				parseHead();
+				return;
+			}
+			scanned = Math.max(0, end - start - 2);
+			if (!fill()) {
+				if (start == end)
+					throw new EOFException("Connection closed by the server");
+				throw new EOFException("Connection closed within response head");
+			}
+		}
+	}
+
+	// Returns the index after the empty line ending the head, or -1
+	private int findEndOfHead(int from) {
+		for (int i = from; i < end; i++) {
+			if (buffer.get(i) != '\n')
+				continue;
+			if (i + 1 < end && buffer.get(i + 1) == '\n')
+				return i + 2;
+			if (i + 2 < end && buffer.get(i + 1) == '\r' && buffer.get(i + 2) == '\n')
+				return i + 3;
+		}
+		return -1;
+	}
+
+	private void parseHead() throws ProtocolException {
+		byte[] b = headBytes;
+		int lineEnd = lineEnd(0);
+		// HTTP/1.x SP status [SP reason]
+		if (lineEnd < 12 || b[0] != 'H' || b[1] != 'T' || b[2] != 'T' || b[3] != 'P' || b[4] != '/'
+				|| b[5] != '1' || b[6] != '.' || b[8] != ' ')
+			throw new ProtocolException("Malformed status line");
+		minorVersion = b[7] - '0';
+		status = 0;
+		for (int i = 9; i < 12; i++) {
+			if (b[i] < '0' || b[i] > '9')
+				throw new ProtocolException("Malformed status code");
+			status = status * 10 + (b[i] - '0');
+		}
+		reasonStart = Math.min(13, lineEnd);
+		reasonEnd = lineEnd;
+
+		fieldCount = 0;
+		contentLength = -1;
+		chunked = false;
+		int pos = next(lineEnd);
+		for (;;) {
+			lineEnd = lineEnd(pos);
+			if (lineEnd == pos)
+				break;
+			if (b[pos] == ' ' || b[pos] == '\t')
+				throw new ProtocolException("Folded header fields are not supported");
+			int colon = pos;
+			while (colon < lineEnd && b[colon] != ':')
+				colon++;
+			if (colon == lineEnd || colon == pos)
+				throw new ProtocolException("Malformed header field");
+			int vs = colon + 1;
+			int ve = lineEnd;
+			while (vs < ve && (b[vs] == ' ' || b[vs] == '\t'))
+				vs++;
+			while (ve > vs && (b[ve - 1] == ' ' || b[ve - 1] == '\t'))
+				ve--;
+			addField(pos, colon, vs, ve);
+			pos = next(lineEnd);
+		}
+	}
+
+	private void addField(int ns, int ne, int vs, int ve) throws ProtocolException {
+		if (4 * fieldCount == fields.length) {
+			int[] a = new int[2 * fields.length];
+			System.arraycopy(fields, 0, a, 0, fields.length);
+			fields = a;
+		}
+		int i = 4 * fieldCount++;
+		fields[i] = ns;
+		fields[i + 1] = ne;
+		fields[i + 2] = vs;
+		fields[i + 3] = ve;
+		if (equalsIgnoreCase(ns, ne, "content-length")) {
+			long len = 0;
+			if (vs == ve)
+				throw new ProtocolException("Malformed Content-Length");
+			for (int j = vs; j < ve; j++) {
+				byte c = headBytes[j];
+				if (c < '0' || c > '9' || len > (Long.MAX_VALUE - 9) / 10)
+					throw new ProtocolException("Malformed Content-Length");
+				len = len * 10 + (c - '0');
+			}
+			if (contentLength >= 0 && contentLength != len)
+				throw new ProtocolException("Conflicting Content-Length");
+			contentLength = len;
+		} else if (equalsIgnoreCase(ns, ne, "transfer-encoding")) {
+			// chunked has to be the final coding
+			int s = ve - "chunked".length();
+			chunked = s >= vs && equalsIgnoreCase(s, ve, "chunked") && (s == vs || isDelimiter(headBytes[s - 1]));
+		}
+	}
+
+	// Returns the end of the line starting at pos, before any CR
+	private int lineEnd(int pos) {
+		int i = pos;
+		while (i < headLength && headBytes[i] != '\n')
+			i++;
+		if (i > pos && headBytes[i - 1] == '\r')
+			i--;
+		return i;
+	}
+
+	// Returns the start of the line after the line ending at lineEnd
+	private int next(int lineEnd) {
+		int i = lineEnd;
+		while (i < headLength && headBytes[i] != '\n')
+			i++;
+		return i + 1;
+	}
+
+	boolean equalsIgnoreCase(int s, int e, String name) {
+		if (e - s != name.length())
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			int c = headBytes[s + i] & 0xFF;
+			int d = name.charAt(i);
+			if (c != d && Character.toLowerCase(c) != Character.toLowerCase(d))
+				return false;
+		}
+		return true;
+	}
+
+	// Returns true if a header field with the name lists the token
+	boolean hasToken(String name, String token) {
+		for (int f = 0; f < 4 * fieldCount; f += 4) {
+			if (!equalsIgnoreCase(fields[f], fields[f + 1], name))
+				continue;
+			int vs = fields[f + 2];
+			int ve = fields[f + 3];
+			int s = vs;
+			while (s < ve) {
+				while (s < ve && isDelimiter(headBytes[s]))
+					s++;
+				int e = s;
+				while (e < ve && !isDelimiter(headBytes[e]))
+					e++;
+				if (e > s && equalsIgnoreCase(s, e, token))
+					return true;
+				s = e;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isDelimiter(byte c) {
+		return c == ',' || c == ' ' || c == '\t';
+	}
+
+	// -- Request head
+
+	private void encodeHead(HttpRequest request) {
+		for (;;) {
+			head.clear();
+			try {
+				putAscii(request.method());
+				head.put((byte) ' ');
+				putAscii(request.target());
+				putAscii(" HTTP/1.1\r\n");
+				if (!request.hasHeader("Host"))
+					putAscii("Host: localhost\r\n");
+				for (int i = 0; i < request.headerCount(); i++) {
+					putAscii(request.headerName(i));
+					putAscii(": ");
+					putAscii(request.headerValue(i));
+					putAscii("\r\n");
+				}
+				ByteBuffer body = request.body();
+				if (!request.hasHeader("Content-Length") && !request.hasHeader("Transfer-Encoding")) {
+					String method = request.method();
+					if (body != null || method.equals("POST") || method.equals("PUT") || method.equals("PATCH")) {
+						putAscii("Content-Length: ");
+						putDecimal((body != null) ? body.remaining() : 0);
+						putAscii("\r\n");
+					}
+				}
+				putAscii("\r\n");
+				head.flip();
+				return;
+			} catch (BufferOverflowException x) {
+				head = ByteBuffer.allocateDirect(2 * head.capacity());
+			}
+		}
+	}
+
+	private void putAscii(String s) {
+		for (int i = 0; i < s.length(); i++)
+			head.put((byte) s.charAt(i));
+	}
+
+	private void putDecimal(long v) {
+		long div = 1;
+		while (div <= v / 10)
+			div *= 10;
+		for (; div > 0; div /= 10)
+			head.put((byte) ('0' + (v / div) % 10));
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (closed)
+			throw new ClosedChannelException();
+	}
+
+	/**
+	 * Returns true if the connection is idle and the server did not close it
+	 */
+	boolean isIdleAndHealthy() {
+		if (closed || !reusable || current != null || !inflight.isEmpty() || start != end)
+			return false;
+		try {
+			return UnixNet.poll(ch.getFD(), Poll.POLLIN(), 0) == 0;
+		} catch (IOException x) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package net.jzajic.graalvm.socket.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An HTTP/1.1 request: method, request target, header fields and an
+ * optional body. Requests are not modified by sending them and can be sent
+ * again.
+ *
+ * A Host header of "localhost" is added unless one is set, and a
+ * Content-Length header is added for requests with a body unless a
+ * Content-Length or Transfer-Encoding header is set.
+ */
+public final class HttpRequest {
+
+	private final String method;
+	private final String target;
+
+	// name and value of each header field, in order
+	private final List<String> headers = new ArrayList<String>();
+
+	private ByteBuffer body;
+
+	public HttpRequest(String method, String target) {
+		checkToken(method, "method");
+		checkToken(target, "target");
+		this.method = method;
+		this.target = target;
+	}
+
+	public static HttpRequest get(String target) {
+		return new HttpRequest("GET", target);
+	}
+
+	public static HttpRequest post(String target, ByteBuffer body) {
+		return new HttpRequest("POST", target).body(body);
+	}
+
+	/**
+	 * Adds a header field.
+	 */
+	public HttpRequest header(String name, String value) {
+		checkToken(name, "header name");
+		if (name.indexOf(':') >= 0)
+			throw new IllegalArgumentException("Illegal character in header name");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\r' || c == '\n' || c > 0xFF)
+				throw new IllegalArgumentException("Illegal character in header value");
+		}
+		headers.add(name);
+		headers.add(value);
+		return this;
+	}
+
+	/**
+	 * Sets the body to the remaining bytes of the buffer, the position of the
+	 * buffer is not modified when the request is sent.
+	 */
+	public HttpRequest body(ByteBuffer body) {
+		this.body = body;
+		return this;
+	}
+
+	public String method() {
+		return method;
+	}
+
+	public String target() {
+		return target;
+	}
+
+	public ByteBuffer body() {
+		return body;
+	}
+
+	int headerCount() {
+		return headers.size() / 2;
+	}
+
+	String headerName(int i) {
+		return headers.get(2 * i);
+	}
+
+	String headerValue(int i) {
+		return headers.get(2 * i + 1);
+	}
+
+	boolean hasHeader(String name) {
+		for (int i = 0; i < headers.size(); i += 2) {
+			if (headers.get(i).equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+
+	private static void checkToken(String s, String what) {
+		if (s.isEmpty())
+			throw new IllegalArgumentException("Empty " + what);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c <= ' ' || c >= 0x7F)
+				throw new IllegalArgumentException("Illegal character in " + what);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + target;
+	}
+
+}
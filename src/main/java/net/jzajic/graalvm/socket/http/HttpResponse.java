@@ -0,0 +1,204 @@
+package net.jzajic.graalvm.socket.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A response received on an {@link HttpConnection}. The body is read as a
+ * channel, either copied into a buffer with {@link #read(ByteBuffer)} or
+ * without copying with {@link #next(int)}.
+ *
+ * Status and header fields are read from the head buffer of the connection
+ * and are available until the response is closed or the next response is
+ * received on the connection. Closing the response ends it, a connection
+ * of a {@link UnixHttpClient} is then returned to the client for reuse.
+ */
+public class HttpResponse implements ReadableByteChannel {
+
+	private final HttpConnection conn;
+	private boolean open = true;
+
+	HttpResponse(HttpConnection conn) {
+		this.conn = conn;
+	}
+
+	public int status() {
+		checkCurrent();
+		return conn.status;
+	}
+
+	/**
+	 * Returns the minor version of the response, 0 for HTTP/1.0
+	 */
+	public int minorVersion() {
+		checkCurrent();
+		return conn.minorVersion;
+	}
+
+	public String reason() {
+		return string(conn.reasonStart, conn.reasonEnd);
+	}
+
+	public int headerCount() {
+		checkCurrent();
+		return conn.fieldCount;
+	}
+
+	public String headerName(int i) {
+		checkIndex(i);
+		return string(conn.fields[4 * i], conn.fields[4 * i + 1]);
+	}
+
+	public String headerValue(int i) {
+		checkIndex(i);
+		return string(conn.fields[4 * i + 2], conn.fields[4 * i + 3]);
+	}
+
+	/**
+	 * Returns the value of the first header field with the name, compared
+	 * ignoring case, or null
+	 */
+	public String header(String name) {
+		int i = indexOf(name);
+		return (i < 0) ? null : headerValue(i);
+	}
+
+	public boolean hasHeader(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	/**
+	 * Returns true if the value of the first header field with the name
+	 * equals value ignoring case, without creating a string of the value.
+	 */
+	public boolean headerEquals(String name, String value) {
+		int i = indexOf(name);
+		return i >= 0 && conn.equalsIgnoreCase(conn.fields[4 * i + 2], conn.fields[4 * i + 3], value);
+	}
+
+	/**
+	 * Returns the Content-Length of the response, or -1 if it has none
+	 */
+	public long contentLength() {
+		checkCurrent();
+		return conn.contentLength;
+	}
+
+	public boolean isChunked() {
+		checkCurrent();
+		return conn.chunked;
+	}
+
+	private int indexOf(String name) {
+		checkCurrent();
+		for (int i = 0; i < conn.fieldCount; i++) {
+			if (conn.equalsIgnoreCase(conn.fields[4 * i], conn.fields[4 * i + 1], name))
+				return i;
+		}
+		return -1;
+	}
+
+	private void checkIndex(int i) {
+		checkCurrent();
+		if (i < 0 || i >= conn.fieldCount)
+			throw new IndexOutOfBoundsException();
+	}
+
+	private void checkCurrent() {
+		if (!open || !conn.isCurrent(this))
+			throw new IllegalStateException("Response is closed");
+	}
+
+	private String string(int s, int e) {
+		checkCurrent();
+		return new String(conn.headBytes, s, e - s, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns the next bytes of the body as a read-only view of the receive
+	 * buffer of the connection, reading from the socket if no bytes are
+	 * buffered. The view is reused and valid until the next call.
+	 *
+	 * @param max maximum number of bytes returned
+	 * @return the bytes, or null at the end of the body
+	 */
+	public ByteBuffer next(int max) throws IOException {
+		if (!open || !conn.isCurrent(this))
+			throw new ClosedChannelException();
+		if (max <= 0)
+			throw new IllegalArgumentException("max <= 0");
+		return conn.nextBody(max);
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int rem = dst.remaining();
+		if (rem == 0) {
+			if (!open)
+				throw new ClosedChannelException();
+			return 0;
+		}
+		ByteBuffer b = next(rem);
+		if (b == null)
+			return -1;
+		int n = b.remaining();
+		dst.put(b);
+		return n;
+	}
+
+	// Largest array allocated for a body before any of it has been read
+	private static final int MAX_INITIAL_BODY = 64 * 1024;
+
+	/**
+	 * Reads the rest of the body into an array.
+	 */
+	public byte[] readAllBytes() throws IOException {
+		long len = contentLength();
+		// the declared length is only trusted up to a bound, the array grows
+		// as the body actually arrives
+		byte[] a = new byte[(len >= 0) ? (int) Math.min(len, MAX_INITIAL_BODY) : 8192];
+		int n = 0;
+		ByteBuffer b;
+		while ((b = next(Integer.MAX_VALUE)) != null) {
+			int r = b.remaining();
+			if (a.length - n < r)
+				a = Arrays.copyOf(a, Math.max(n + r, 2 * a.length));
+			b.get(a, n, r);
+			n += r;
+		}
+		return (n == a.length) ? a : Arrays.copyOf(a, n);
+	}
+
+	/**
+	 * Returns true once the whole body has been read.
+	 */
+	public boolean isBodyComplete() {
+		return !conn.isCurrent(this) || conn.isBodyComplete();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Ends the response. Unread bytes of the body are skipped.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (open) {
+			open = false;
+			conn.endResponse(this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpResponse[" + (open && conn.isCurrent(this) ? String.valueOf(conn.status) : "closed") + "]";
+	}
+
+}
@@ -0,0 +1,127 @@
+package net.jzajic.graalvm.socket.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+
+/**
+ * An HTTP/1.1 client for a server listening on a unix socket, such as the
+ * API socket of a container runtime.
+ *
+ * Connections are kept alive between requests: closing an
+ * {@link HttpResponse} returns its connection to the client, and the most
+ * recently used idle connection is taken for the next request after
+ * checking with a non-blocking poll that the server has not closed it.
+ * For pipelining, {@link #connect()} opens a connection that is used
+ * directly.
+ *
+ * The client is safe for use by multiple threads, a response and its
+ * connection are used by one thread at a time.
+ */
+public class UnixHttpClient implements Closeable {
+
+	private final UnixSocketAddress address;
+	private final int maxIdle;
+	private final int bufferSize;
+
+	private final ConcurrentLinkedDeque<HttpConnection> idle = new ConcurrentLinkedDeque<HttpConnection>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	private volatile boolean closed;
+
+	public UnixHttpClient(UnixSocketAddress address) {
+		this(address, 8, HttpConnection.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param maxIdle maximum number of idle connections kept alive
+	 * @param bufferSize size of the receive buffer of each connection, which
+	 *            bounds the size of a response head
+	 */
+	public UnixHttpClient(UnixSocketAddress address, int maxIdle, int bufferSize) {
+		if (address == null)
+			throw new NullPointerException();
+		if (maxIdle < 0)
+			throw new IllegalArgumentException("maxIdle < 0");
+		this.address = address;
+		this.maxIdle = maxIdle;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sends the request and receives the head of its response. The response
+	 * must be closed to make its connection available again.
+	 */
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		if (closed)
+			throw new IOException("Client is closed");
+		HttpConnection conn = takeIdle();
+		if (conn == null)
+			conn = HttpConnection.open(address, bufferSize, this);
+		try {
+			conn.send(request);
+			return conn.receive();
+		} catch (IOException | RuntimeException x) {
+			conn.close();
+			throw x;
+		}
+	}
+
+	/**
+	 * Opens a connection that is not kept by the client, for sending
+	 * pipelined requests.
+	 */
+	public HttpConnection connect() throws IOException {
+		if (closed)
+			throw new IOException("Client is closed");
+		return HttpConnection.open(address, bufferSize, null);
+	}
+
+	private HttpConnection takeIdle() throws IOException {
+		HttpConnection conn;
+		while ((conn = idle.pollFirst()) != null) {
+			idleCount.decrementAndGet();
+			if (conn.isIdleAndHealthy())
+				return conn;
+			conn.close();
+		}
+		return null;
+	}
+
+	void release(HttpConnection conn) throws IOException {
+		if (closed) {
+			conn.close();
+			return;
+		}
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			conn.close();
+			return;
+		}
+		idle.offerFirst(conn);
+		if (closed)
+			closeIdle(); // raced with close
+	}
+
+	private void closeIdle() throws IOException {
+		HttpConnection conn;
+		while ((conn = idle.pollFirst()) != null) {
+			idleCount.decrementAndGet();
+			conn.close();
+		}
+	}
+
+	/**
+	 * Closes the idle connections, connections in use are closed when their
+	 * response is closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		closeIdle();
+	}
+
+}
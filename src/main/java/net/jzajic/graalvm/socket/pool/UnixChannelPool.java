@@ -0,0 +1,435 @@
+package net.jzajic.graalvm.socket.pool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.oracle.svm.core.posix.headers.Poll;
+
+import net.jzajic.graalvm.posix.UnixNet;
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+import net.jzajic.graalvm.socket.channel.UnixSocketChannelImpl;
+import net.jzajic.graalvm.socket.channel.UnixSocketSelectorProvider;
+
+/**
+ * A bounded pool of connected, blocking unix socket channels, partitioned
+ * by address.
+ *
+ * At most maxPerAddress channels of an address are borrowed at the same
+ * time, further borrowers wait. Idle channels are reused most recently used
+ * first and are checked with a non-blocking poll before they are handed
+ * out: an idle connection that is readable (end-of-stream or unsolicited
+ * data) or has been hung up is closed and counted as evicted. Channels idle
+ * for longer than maxIdleMillis are evicted by {@link #evictIdle()}, which
+ * also tops partitions up to minIdlePerAddress connections and runs
+ * periodically when an eviction interval is given.
+ */
+public class UnixChannelPool implements Closeable {
+
+	private final int maxPerAddress;
+	private final int minIdlePerAddress;
+	private final long maxIdleNanos;
+
+	private final ConcurrentHashMap<UnixSocketAddress, Partition> partitions = new ConcurrentHashMap<>();
+
+	// maps borrowed channels to their partition
+	private final ConcurrentHashMap<SocketChannel, Partition> borrowed = new ConcurrentHashMap<>();
+
+	// background eviction, null if disabled
+	private final ScheduledExecutorService evictor;
+
+	private volatile boolean closed;
+
+	// statistics
+	private final LongAdder borrows = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder borrowWaitNanos = new LongAdder();
+	private final LongAccumulator maxBorrowWaitNanos = new LongAccumulator(Math::max, 0);
+
+	public UnixChannelPool(int maxPerAddress, int minIdlePerAddress, long maxIdleMillis) {
+		this(maxPerAddress, minIdlePerAddress, maxIdleMillis, 0);
+	}
+
+	/**
+	 * @param maxPerAddress maximum number of channels per address
+	 * @param minIdlePerAddress number of idle connections kept open per address
+	 * @param maxIdleMillis idle time after which a channel is evicted, zero
+	 *            or less to keep idle channels
+	 * @param evictionIntervalMillis interval of the background eviction, zero
+	 *            or less to only evict on {@link #evictIdle()}
+	 */
+	public UnixChannelPool(int maxPerAddress, int minIdlePerAddress, long maxIdleMillis, long evictionIntervalMillis) {
+		if (maxPerAddress < 1)
+			throw new IllegalArgumentException("maxPerAddress < 1");
+		if (minIdlePerAddress < 0 || minIdlePerAddress > maxPerAddress)
+			throw new IllegalArgumentException("minIdlePerAddress out of range");
+		this.maxPerAddress = maxPerAddress;
+		this.minIdlePerAddress = minIdlePerAddress;
+		this.maxIdleNanos = maxIdleMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxIdleMillis) : Long.MAX_VALUE;
+		if (evictionIntervalMillis > 0) {
+			evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "unix-channel-pool-evictor");
+				t.setDaemon(true);
+				return t;
+			});
+			evictor.scheduleWithFixedDelay(() -> {
+				try {
+					evictIdle();
+				} catch (RuntimeException x) {
+					// keep the schedule alive, failures are retried next round
+				}
+			}, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+	}
+
+	/**
+	 * Opens connections to the address until minIdlePerAddress channels are
+	 * idle.
+	 *
+	 * @return the number of connections opened
+	 */
+	public int prewarm(UnixSocketAddress address) throws IOException {
+		ensureOpen();
+		return fill(partition(address));
+	}
+
+	/**
+	 * Borrows a connected channel, waiting if maxPerAddress channels of the
+	 * address are already borrowed.
+	 *
+	 * @throws SocketTimeoutException if no channel became available in time
+	 */
+	public UnixSocketChannelImpl borrow(UnixSocketAddress address, long timeout, TimeUnit unit)
+			throws IOException, InterruptedException {
+		ensureOpen();
+		Partition p = partition(address);
+		long start = System.nanoTime();
+		if (!p.permits.tryAcquire(timeout, unit)) {
+			timeouts.increment();
+			throw new SocketTimeoutException("Timed out waiting for a connection to " + address);
+		}
+		long waited = System.nanoTime() - start;
+		borrows.increment();
+		borrowWaitNanos.add(waited);
+		maxBorrowWaitNanos.accumulate(waited);
+
+		try {
+			UnixSocketChannelImpl ch = takeIdle(p);
+			if (ch != null) {
+				hits.increment();
+			} else {
+				misses.increment();
+				ch = connect(p);
+			}
+			borrowed.put(ch, p);
+			return ch;
+		} catch (IOException | RuntimeException x) {
+			p.permits.release();
+			throw x;
+		}
+	}
+
+	/**
+	 * Returns a borrowed channel to the pool. Closed channels only free
+	 * their slot. The channel is put back into blocking mode.
+	 */
+	public void release(SocketChannel channel) {
+		Partition p = borrowed.remove(channel);
+		if (p == null)
+			throw new IllegalArgumentException("Channel not borrowed from this pool");
+		try {
+			if (!channel.isOpen()) {
+				p.open.decrementAndGet();
+			} else if (closed || p.open.get() > maxPerAddress) {
+				discard(p, (UnixSocketChannelImpl) channel);
+			} else {
+				if (!channel.isBlocking())
+					channel.configureBlocking(true);
+				p.idle.addFirst(new IdleChannel((UnixSocketChannelImpl) channel, System.nanoTime()));
+			}
+		} catch (IOException x) {
+			discard(p, (UnixSocketChannelImpl) channel);
+		} finally {
+			p.permits.release();
+		}
+	}
+
+	/**
+	 * Closes a borrowed channel that is known to be unusable and frees its
+	 * slot.
+	 */
+	public void invalidate(SocketChannel channel) {
+		Partition p = borrowed.remove(channel);
+		if (p == null)
+			throw new IllegalArgumentException("Channel not borrowed from this pool");
+		discard(p, (UnixSocketChannelImpl) channel);
+		p.permits.release();
+	}
+
+	/**
+	 * Closes idle channels that expired or failed the health check and
+	 * refills the partitions to minIdlePerAddress connections.
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+		for (Partition p : partitions.values()) {
+			Iterator<IdleChannel> i = p.idle.descendingIterator();
+			while (i.hasNext()) {
+				IdleChannel ic = i.next();
+				boolean expired = now - ic.since > maxIdleNanos && p.idle.size() > minIdlePerAddress;
+				if ((expired || !isHealthy(ic.channel)) && p.idle.removeFirstOccurrence(ic)) {
+					evictions.increment();
+					discard(p, ic.channel);
+				}
+			}
+			if (!closed) {
+				try {
+					fill(p);
+				} catch (IOException x) {
+					// the server may be down, retried on the next eviction run
+				}
+			}
+		}
+	}
+
+	public Stats stats() {
+		int idle = 0;
+		int open = 0;
+		for (Partition p : partitions.values()) {
+			idle += p.idle.size();
+			open += p.open.get();
+		}
+		return new Stats(borrows.sum(), hits.sum(), misses.sum(), evictions.sum(), timeouts.sum(),
+				borrowWaitNanos.sum(), maxBorrowWaitNanos.get(), open, idle, borrowed.size());
+	}
+
+	/**
+	 * Closes the idle channels, borrowed channels are closed when they are
+	 * released.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (evictor != null)
+			evictor.shutdownNow();
+		for (Partition p : partitions.values()) {
+			IdleChannel ic;
+			while ((ic = p.idle.pollFirst()) != null)
+				discard(p, ic.channel);
+		}
+	}
+
+	/**
+	 * Checks an idle connection without blocking. An idle connection must
+	 * neither be readable nor hung up, either means that the peer closed it
+	 * or that the protocol is out of sync.
+	 */
+	static boolean isHealthy(UnixSocketChannelImpl ch) {
+		if (!ch.isOpen() || !ch.isConnected())
+			return false;
+		try {
+			return UnixNet.poll(ch.getFD(), Poll.POLLIN(), 0) == 0;
+		} catch (IOException x) {
+			return false;
+		}
+	}
+
+	private UnixSocketChannelImpl takeIdle(Partition p) {
+		IdleChannel ic;
+		while ((ic = p.idle.pollFirst()) != null) {
+			if (System.nanoTime() - ic.since <= maxIdleNanos && isHealthy(ic.channel))
+				return ic.channel;
+			evictions.increment();
+			discard(p, ic.channel);
+		}
+		return null;
+	}
+
+	private int fill(Partition p) throws IOException {
+		int opened = 0;
+		while (p.idle.size() < minIdlePerAddress && p.permits.tryAcquire()) {
+			try {
+				if (p.open.get() >= maxPerAddress)
+					break;
+				p.idle.addLast(new IdleChannel(connect(p), System.nanoTime()));
+				opened++;
+			} finally {
+				p.permits.release();
+			}
+		}
+		return opened;
+	}
+
+	private UnixSocketChannelImpl connect(Partition p) throws IOException {
+		UnixSocketChannelImpl ch = (UnixSocketChannelImpl) UnixSocketSelectorProvider.provider().openSocketChannel();
+		try {
+			ch.connect(p.address);
+		} catch (IOException | RuntimeException x) {
+			ch.close();
+			throw x;
+		}
+		p.open.incrementAndGet();
+		return ch;
+	}
+
+	private void discard(Partition p, UnixSocketChannelImpl ch) {
+		p.open.decrementAndGet();
+		try {
+			ch.close();
+		} catch (IOException x) {
+			// ignore
+		}
+	}
+
+	private Partition partition(UnixSocketAddress address) {
+		Partition p = partitions.get(address);
+		if (p == null) {
+			// copy the key, addresses are mutable
+			UnixSocketAddress key = new UnixSocketAddress(address.getPath());
+			p = partitions.computeIfAbsent(key, Partition::new);
+		}
+		return p;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new ClosedChannelException();
+	}
+
+	private final class Partition {
+		final UnixSocketAddress address;
+		final Semaphore permits = new Semaphore(maxPerAddress, true);
+		// most recently released first
+		final ConcurrentLinkedDeque<IdleChannel> idle = new ConcurrentLinkedDeque<>();
+		// connections opened and not yet closed, idle or borrowed
+		final AtomicInteger open = new AtomicInteger();
+
+		Partition(UnixSocketAddress address) {
+			this.address = address;
+		}
+	}
+
+	private static final class IdleChannel {
+		final UnixSocketChannelImpl channel;
+		final long since;
+
+		IdleChannel(UnixSocketChannelImpl channel, long since) {
+			this.channel = channel;
+			this.since = since;
+		}
+	}
+
+	/**
+	 * A snapshot of the pool statistics
+	 */
+	public static final class Stats {
+		private final long borrows;
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long timeouts;
+		private final long borrowWaitNanos;
+		private final long maxBorrowWaitNanos;
+		private final int open;
+		private final int idle;
+		private final int borrowed;
+
+		Stats(long borrows, long hits, long misses, long evictions, long timeouts,
+				long borrowWaitNanos, long maxBorrowWaitNanos, int open, int idle, int borrowed) {
+			this.borrows = borrows;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.timeouts = timeouts;
+			this.borrowWaitNanos = borrowWaitNanos;
+			this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+			this.open = open;
+			this.idle = idle;
+			this.borrowed = borrowed;
+		}
+
+		public long getBorrows() {
+			return borrows;
+		}
+
+		/**
+		 * Borrows served by an idle channel
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * Borrows that had to open a new connection
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		public double getHitRate() {
+			long total = hits + misses;
+			return total == 0 ? 0.0 : (double) hits / total;
+		}
+
+		/**
+		 * Idle channels closed because they expired or failed the health check
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		public long getTotalBorrowWaitNanos() {
+			return borrowWaitNanos;
+		}
+
+		public long getAverageBorrowWaitNanos() {
+			return borrows == 0 ? 0 : borrowWaitNanos / borrows;
+		}
+
+		public long getMaxBorrowWaitNanos() {
+			return maxBorrowWaitNanos;
+		}
+
+		public int getOpen() {
+			return open;
+		}
+
+		public int getIdle() {
+			return idle;
+		}
+
+		public int getBorrowed() {
+			return borrowed;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats[borrows=" + borrows + ", hits=" + hits + ", misses=" + misses
+					+ ", evictions=" + evictions + ", timeouts=" + timeouts
+					+ ", avgWaitNanos=" + getAverageBorrowWaitNanos() + ", maxWaitNanos=" + maxBorrowWaitNanos
+					+ ", open=" + open + ", idle=" + idle + ", borrowed=" + borrowed + "]";
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package net.jzajic.graalvm.socket.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.oracle.svm.core.posix.headers.Poll;
+
+import net.jzajic.graalvm.posix.EPoll;
+import net.jzajic.graalvm.socket.channel.UnixSocketChannelImpl;
+import net.jzajic.graalvm.socket.channel.UnixWriteQueue;
+
+/**
+ * A connection served by a {@link UnixServer}, owned by a single
+ * {@link Reactor}.
+ *
+ * The channel is non-blocking and only used by the reactor thread, so
+ * reads and writes never contend. Except for {@link #write(ByteBuffer)} and
+ * {@link #close()}, the methods of a connection must be invoked on its
+ * reactor thread, other threads hand work to the connection with
+ * {@link Reactor#execute(Runnable)}.
+ */
+public final class Connection {
+
+	private final Reactor reactor;
+	private final UnixSocketChannelImpl channel;
+	private final int fd;
+
+	// bytes written with write(ByteBuffer), flushed by the reactor thread
+	private final UnixWriteQueue outbound;
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	// -- The following fields are only accessed by the reactor thread
+	private Object attachment;
+	private boolean writeInterest;
+	private boolean closed;
+
+	Connection(Reactor reactor, UnixSocketChannelImpl channel, int fd) {
+		this.reactor = reactor;
+		this.channel = channel;
+		this.fd = fd;
+		this.outbound = new UnixWriteQueue(channel);
+	}
+
+	public UnixSocketChannelImpl channel() {
+		return channel;
+	}
+
+	public Reactor reactor() {
+		return reactor;
+	}
+
+	public Object attachment() {
+		return attachment;
+	}
+
+	/**
+	 * Attaches an object, typically the protocol state of the connection.
+	 *
+	 * @return the previous attachment
+	 */
+	public Object attach(Object ob) {
+		Object old = attachment;
+		attachment = ob;
+		return old;
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Returns the outbound queue of {@link #write(ByteBuffer)}, to observe
+	 * its watermarks.
+	 */
+	public UnixWriteQueue outbound() {
+		return outbound;
+	}
+
+	/**
+	 * Enqueues the remaining bytes of the buffer for writing. May be
+	 * invoked by any thread. Writes are flushed by the reactor thread once
+	 * per iteration of its loop, so writes made while handling events are
+	 * coalesced into few writev calls, and continue when the channel
+	 * becomes writable. The buffer must not be modified until it has been
+	 * written.
+	 *
+	 * @return false if the outbound queue is above its high watermark and
+	 *         the writer should hold back
+	 */
+	public boolean write(ByteBuffer src) {
+		boolean writable = outbound.enqueue(src);
+		if (flushScheduled.compareAndSet(false, true)) {
+			// ignored once the reactor has stopped, the connection is closed
+			reactor.tryExecute(this::flush);
+		}
+		return writable;
+	}
+
+	public boolean isWriteInterest() {
+		return writeInterest;
+	}
+
+	/**
+	 * Sets whether {@link ConnectionHandler#writable(Connection)} is invoked
+	 * when the channel can take more bytes, typically after a write left
+	 * bytes unwritten.
+	 */
+	public void setWriteInterest(boolean on) throws IOException {
+		if (closed || writeInterest == on)
+			return;
+		int err = EPoll.ctlMod(reactor.epfd, fd, on ? Poll.POLLIN() | Poll.POLLOUT() : Poll.POLLIN());
+		if (err != 0)
+			throw new IOException("epoll_ctl failed: " + err);
+		writeInterest = on;
+	}
+
+	/**
+	 * Closes the connection. May be invoked by any thread, the channel is
+	 * closed on the reactor thread. Has no effect once the reactor has
+	 * stopped, which closes all its connections.
+	 */
+	public void close() {
+		if (reactor.inReactor())
+			reactor.close(this);
+		else
+			reactor.tryExecute(() -> reactor.close(this));
+	}
+
+	// -- Reactor thread only
+
+	int fd() {
+		return fd;
+	}
+
+	// Returns false if the connection has been closed already
+	boolean markClosed() {
+		if (closed)
+			return false;
+		closed = true;
+		return true;
+	}
+
+	// Flushes the outbound queue, waiting for POLLOUT if the channel is full
+	private void flush() {
+		flushScheduled.set(false);
+		if (closed)
+			return;
+		try {
+			outbound.flush();
+			if (!outbound.isEmpty())
+				setWriteInterest(true);
+		} catch (IOException x) {
+			reactor.close(this);
+		}
+	}
+
+	void dispatch(ConnectionHandler handler, int events) {
+		try {
+			if ((events & (Poll.POLLIN() | Poll.POLLHUP() | Poll.POLLERR())) != 0)
+				handler.readable(this);
+			if (!closed && (events & Poll.POLLOUT()) != 0) {
+				// the outbound queue goes first, the handler is invoked once
+				// it has been written
+				if (!outbound.isEmpty())
+					outbound.flush();
+				if (outbound.isEmpty())
+					handler.writable(this);
+			}
+		} catch (IOException x) {
+			reactor.close(this);
+		} catch (Throwable x) {
+			reactor.close(this);
+			Reactor.uncaught(x);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Connection[fd=" + fd + (closed ? ", closed" : "") + "]";
+	}
+
+}
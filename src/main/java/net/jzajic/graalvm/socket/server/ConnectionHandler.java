@@ -0,0 +1,43 @@
+package net.jzajic.graalvm.socket.server;
+
+import java.io.IOException;
+
+/**
+ * Serves the connections of a {@link UnixServer}.
+ *
+ * The methods are invoked on the reactor thread that owns the connection
+ * and must not block. Readiness is level-triggered: readable is invoked as
+ * long as bytes are available or the peer has closed, so a handler that
+ * reads end-of-stream has to close the connection. An IOException thrown
+ * by a method closes the connection.
+ */
+public interface ConnectionHandler {
+
+	/**
+	 * Invoked once the connection is registered with its reactor.
+	 */
+	default void opened(Connection c) throws IOException {
+	}
+
+	/**
+	 * Invoked when the channel has bytes to read, has reached
+	 * end-of-stream or has failed.
+	 */
+	void readable(Connection c) throws IOException;
+
+	/**
+	 * Invoked when the channel can take more bytes while write interest is
+	 * set with {@link Connection#setWriteInterest(boolean)}. The default
+	 * clears write interest.
+	 */
+	default void writable(Connection c) throws IOException {
+		c.setWriteInterest(false);
+	}
+
+	/**
+	 * Invoked after the connection has been closed.
+	 */
+	default void closed(Connection c) {
+	}
+
+}
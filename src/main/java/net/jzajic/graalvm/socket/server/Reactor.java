@@ -0,0 +1,475 @@
+package net.jzajic.graalvm.socket.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graalvm.nativeimage.StackValue;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+
+import com.oracle.svm.core.posix.headers.Poll;
+import com.oracle.svm.core.posix.headers.linux.LinuxEPoll;
+
+import net.jzajic.graalvm.posix.EPoll;
+import net.jzajic.graalvm.posix.Native;
+import net.jzajic.graalvm.socket.channel.UnixSocketChannelImpl;
+
+/**
+ * An epoll event loop of a {@link UnixServer}, polled by its own thread.
+ *
+ * A reactor owns its connections exclusively: they are registered,
+ * dispatched and closed on the reactor thread only, which keeps them in an
+ * array indexed by file descriptor. Other threads interact with a reactor
+ * through lock-free queues, handing over accepted channels and tasks
+ * submitted with {@link #execute(Runnable)}, and wake it through a pipe.
+ *
+ * The acceptor of the server is a reactor without connections that polls
+ * the listening socket.
+ */
+public final class Reactor {
+
+	// maximum number of events to poll in one call to epoll_wait
+	private static final int MAX_EVENTS = 512;
+
+	private final UnixServer server;
+	private final ConnectionHandler handler;
+	private final String name;
+
+	// epoll file descriptor
+	final int epfd;
+
+	// address of poll array when polling with epoll_wait
+	private final LinuxEPoll.epoll_event pollArray;
+
+	// file descriptors used for wakeup
+	private final int fd0;
+	private final int fd1;
+
+	// listening socket polled by the acceptor, -1 for other reactors
+	private final int listenFd;
+
+	// time at which the listening socket is polled again after a failed
+	// accept, 0 while it is polled, acceptor thread only
+	private long acceptResumeNanos;
+
+	// connections by file descriptor, reactor thread only
+	private Connection[] connections = new Connection[64];
+
+	private final ConcurrentLinkedQueue<UnixSocketChannelImpl> incoming = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+	private volatile boolean stopped;
+
+	// Number of threads handing work to the reactor, or'ed with CLOSED once
+	// the reactor thread has stopped taking work. The wakeup pipe is closed
+	// only after the count has dropped to zero.
+	private static final int CLOSED = Integer.MIN_VALUE;
+	private final AtomicInteger callers = new AtomicInteger();
+
+	private volatile Thread thread;
+
+	// connections assigned to this reactor, including those not yet registered
+	private final AtomicInteger load = new AtomicInteger();
+
+	// statistics, written by the reactor thread only
+	private volatile long events;
+	private volatile long iterations;
+	private volatile long busyNanos;
+	private volatile long maxLoopNanos;
+	private final long startNanos = System.nanoTime();
+
+	Reactor(UnixServer server, ConnectionHandler handler, String name, int listenFd) throws IOException {
+		this.server = server;
+		this.handler = handler;
+		this.name = name;
+		this.listenFd = listenFd;
+		this.epfd = EPoll.create();
+		this.pollArray = EPoll.allocatePollArray(MAX_EVENTS);
+		try {
+			long fds = Native.makePipe(false);
+			this.fd0 = (int) (fds >>> 32);
+			this.fd1 = (int) fds;
+		} catch (IOException ioe) {
+			EPoll.freePollArray(pollArray);
+			Native.close(epfd);
+			throw ioe;
+		}
+		EPoll.ctlAdd(epfd, fd0, Poll.POLLIN());
+		if (listenFd >= 0)
+			EPoll.ctlAdd(epfd, listenFd, Poll.POLLIN());
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of connections assigned to this reactor.
+	 */
+	public int load() {
+		return load.get();
+	}
+
+	/**
+	 * Returns true if the current thread is the thread of this reactor.
+	 */
+	public boolean inReactor() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Runs the task on the reactor thread. Tasks submitted by the reactor
+	 * thread itself run at the end of the current iteration. A task that
+	 * has been accepted always runs, also when the reactor is stopping.
+	 *
+	 * @throws RejectedExecutionException if the reactor has been stopped
+	 */
+	public void execute(Runnable task) {
+		if (!tryExecute(task))
+			throw new RejectedExecutionException();
+	}
+
+	// Returns false instead of throwing if the reactor has been stopped
+	boolean tryExecute(Runnable task) {
+		if (!enter())
+			return false;
+		try {
+			taskQueue.offer(task);
+			if (!inReactor())
+				wakeup();
+		} finally {
+			exit();
+		}
+		return true;
+	}
+
+	public Stats stats() {
+		return new Stats(System.nanoTime() - startNanos, load.get(), events, iterations, busyNanos, maxLoopNanos);
+	}
+
+	// Hands an accepted non-blocking channel to this reactor, the channel
+	// is closed if the reactor has been stopped
+	void assign(UnixSocketChannelImpl ch) {
+		if (!enter()) {
+			closeQuietly(ch);
+			return;
+		}
+		try {
+			load.incrementAndGet();
+			incoming.offer(ch);
+			wakeup();
+		} finally {
+			exit();
+		}
+	}
+
+	void start() {
+		Thread t = new Thread(this::run, name);
+		thread = t;
+		t.start();
+	}
+
+	void stop() {
+		stopped = true;
+		if (enter()) {
+			try {
+				wakeup();
+			} finally {
+				exit();
+			}
+		}
+	}
+
+	void join() throws InterruptedException {
+		Thread t = thread;
+		if (t != null && t != Thread.currentThread())
+			t.join();
+	}
+
+	// Registers a thread about to use the queues or the wakeup pipe,
+	// returns false once the reactor no longer takes work
+	private boolean enter() {
+		for (;;) {
+			int c = callers.get();
+			if ((c & CLOSED) != 0)
+				return false;
+			if (callers.compareAndSet(c, c + 1))
+				return true;
+		}
+	}
+
+	private void exit() {
+		callers.decrementAndGet();
+	}
+
+	// Stops taking work and waits for the threads handing work over
+	private void closeGate() {
+		int c = callers.getAndUpdate(v -> v | CLOSED);
+		while ((c & ~CLOSED) != 0) {
+			Thread.yield();
+			c = callers.get();
+		}
+	}
+
+	// Callers must hold the gate, see enter
+	private void wakeup() {
+		if (wakeupPending.compareAndSet(false, true)) {
+			CCharPointer b = StackValue.get(CCharPointer.class);
+			b.write((byte) 1);
+			try {
+				Native.write(fd1, 1, b);
+			} catch (IOException ioe) {
+				throw new InternalError(ioe);
+			}
+		}
+	}
+
+	private void drainWakeup() throws IOException {
+		wakeupPending.set(false);
+		CCharPointer buf = StackValue.get(128);
+		while (Native.read(fd0, 128, buf) == 128) {
+			// drain
+		}
+	}
+
+	private void registerIncoming() {
+		UnixSocketChannelImpl ch;
+		while ((ch = incoming.poll()) != null) {
+			int fd = ch.getFDVal();
+			if (EPoll.ctlAdd(epfd, fd, Poll.POLLIN()) != 0) {
+				load.decrementAndGet();
+				closeQuietly(ch);
+				continue;
+			}
+			if (fd >= connections.length)
+				connections = Arrays.copyOf(connections, Math.max(fd + 1, 2 * connections.length));
+			Connection c = new Connection(this, ch, fd);
+			connections[fd] = c;
+			try {
+				handler.opened(c);
+			} catch (IOException x) {
+				close(c);
+			} catch (Throwable x) {
+				close(c);
+				uncaught(x);
+			}
+		}
+	}
+
+	// Closes a connection on the reactor thread
+	void close(Connection c) {
+		if (!c.markClosed())
+			return;
+		int fd = c.fd();
+		EPoll.ctlDel(epfd, fd);
+		// clear the slot before the descriptor can be reused
+		connections[fd] = null;
+		closeQuietly(c.channel());
+		c.outbound().clear();
+		load.decrementAndGet();
+		try {
+			handler.closed(c);
+		} catch (Throwable x) {
+			uncaught(x);
+		}
+	}
+
+	private static void closeQuietly(UnixSocketChannelImpl ch) {
+		try {
+			ch.close();
+		} catch (IOException x) {
+			// ignore
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = taskQueue.poll()) != null) {
+			try {
+				task.run();
+			} catch (Throwable x) {
+				uncaught(x);
+			}
+		}
+	}
+
+	// Stops polling the listening socket for the given time, acceptor only
+	void pauseAccept(long millis) {
+		EPoll.ctlDel(epfd, listenFd);
+		long t = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		acceptResumeNanos = (t == 0) ? 1 : t;
+	}
+
+	// Returns the epoll_wait timeout, -1 unless accepting is paused
+	private int pollTimeout() {
+		if (acceptResumeNanos == 0)
+			return -1;
+		long remaining = acceptResumeNanos - System.nanoTime();
+		if (remaining <= 0)
+			return 0;
+		return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+	}
+
+	private void resumeAccept() throws IOException {
+		if (acceptResumeNanos != 0 && acceptResumeNanos - System.nanoTime() <= 0) {
+			acceptResumeNanos = 0;
+			int err = EPoll.ctlAdd(epfd, listenFd, Poll.POLLIN());
+			if (err != 0)
+				throw new IOException("epoll_ctl failed: " + err);
+		}
+	}
+
+	static void uncaught(Throwable x) {
+		Thread t = Thread.currentThread();
+		t.getUncaughtExceptionHandler().uncaughtException(t, x);
+	}
+
+	private void run() {
+		try {
+			while (!stopped) {
+				int n = EPoll.wait(epfd, pollArray, MAX_EVENTS, pollTimeout());
+				long start = System.nanoTime();
+				resumeAccept();
+				for (int i = 0; i < n; i++) {
+					LinuxEPoll.epoll_event event = EPoll.getEvent(pollArray, i);
+					int fd = EPoll.getDescriptor(event);
+					if (fd == fd0) {
+						drainWakeup();
+					} else if (fd == listenFd) {
+						server.acceptReady();
+					} else {
+						Connection c = (fd < connections.length) ? connections[fd] : null;
+						if (c != null)
+							c.dispatch(handler, EPoll.getEvents(event));
+					}
+				}
+				registerIncoming();
+				runTasks();
+				long took = System.nanoTime() - start;
+				events += n;
+				iterations++;
+				busyNanos += took;
+				if (took > maxLoopNanos)
+					maxLoopNanos = took;
+			}
+		} catch (IOException x) {
+			uncaught(x);
+		} finally {
+			stopped = true;
+			// after this no other thread can queue work or write to the
+			// wakeup pipe, the work queued before is handled below
+			closeGate();
+			registerIncoming();
+			for (Connection c : connections) {
+				if (c != null)
+					close(c);
+			}
+			runTasks();
+			release();
+		}
+	}
+
+	// Frees the native resources, also used for reactors that never started.
+	// The reactor thread calls it after closing the gate.
+	void release() {
+		Native.close(epfd);
+		EPoll.freePollArray(pollArray);
+		Native.close(fd0);
+		Native.close(fd1);
+	}
+
+	@Override
+	public String toString() {
+		return "Reactor[" + name + ", load=" + load.get() + "]";
+	}
+
+	/**
+	 * A snapshot of the reactor statistics
+	 */
+	public static final class Stats {
+		private final long uptimeNanos;
+		private final int connections;
+		private final long events;
+		private final long iterations;
+		private final long busyNanos;
+		private final long maxLoopNanos;
+
+		Stats(long uptimeNanos, int connections, long events, long iterations, long busyNanos, long maxLoopNanos) {
+			this.uptimeNanos = uptimeNanos;
+			this.connections = connections;
+			this.events = events;
+			this.iterations = iterations;
+			this.busyNanos = busyNanos;
+			this.maxLoopNanos = maxLoopNanos;
+		}
+
+		public long getUptimeNanos() {
+			return uptimeNanos;
+		}
+
+		public int getConnections() {
+			return connections;
+		}
+
+		/**
+		 * Readiness events dispatched, including wakeups
+		 */
+		public long getEvents() {
+			return events;
+		}
+
+		/**
+		 * Returns the rate of events since an earlier snapshot of the same
+		 * reactor, or since the reactor was created if earlier is null.
+		 */
+		public double getEventsPerSecond(Stats earlier) {
+			long e = events - (earlier == null ? 0 : earlier.events);
+			long t = uptimeNanos - (earlier == null ? 0 : earlier.uptimeNanos);
+			return t <= 0 ? 0.0 : e * 1e9 / t;
+		}
+
+		/**
+		 * Returns the number of returns from epoll_wait
+		 */
+		public long getIterations() {
+			return iterations;
+		}
+
+		/**
+		 * Time spent handling events and tasks, excluding the wait for events
+		 */
+		public long getBusyNanos() {
+			return busyNanos;
+		}
+
+		/**
+		 * Average time from the return of epoll_wait until the next wait
+		 */
+		public long getAverageLoopNanos() {
+			return iterations == 0 ? 0 : busyNanos / iterations;
+		}
+
+		public long getMaxLoopNanos() {
+			return maxLoopNanos;
+		}
+
+		/**
+		 * Returns the fraction of the uptime spent busy
+		 */
+		public double getUtilization() {
+			return uptimeNanos <= 0 ? 0.0 : (double) busyNanos / uptimeNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats[connections=" + connections + ", events=" + events + ", iterations=" + iterations
+					+ ", avgLoopNanos=" + getAverageLoopNanos() + ", maxLoopNanos=" + maxLoopNanos
+					+ ", utilization=" + getUtilization() + "]";
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+package net.jzajic.graalvm.socket.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.jzajic.graalvm.socket.UnixSocketAddress;
+import net.jzajic.graalvm.socket.channel.UnixServerSocketChannel;
+import net.jzajic.graalvm.socket.channel.UnixSocketChannelImpl;
+
+/**
+ * A unix socket server running a fixed number of reactors, by default one
+ * per available processor.
+ *
+ * An acceptor thread polls the listening socket and accepts connections in
+ * batches with accept4, handing each connection to a reactor chosen by the
+ * {@link Balancing} policy. From then on the connection is owned by that
+ * reactor: its readiness events are dispatched to the
+ * {@link ConnectionHandler} on the reactor thread until it is closed, so
+ * the I/O path of a connection involves no locks and no other thread.
+ */
+public class UnixServer implements Closeable {
+
+	/**
+	 * How accepted connections are assigned to reactors.
+	 */
+	public enum Balancing {
+		/** Reactors in turn */
+		ROUND_ROBIN,
+		/** The reactor with the fewest connections */
+		LEAST_LOADED
+	}
+
+	// maximum number of connections accepted per readiness event
+	private static final int ACCEPT_BATCH = 64;
+
+	private static final int DEFAULT_BACKLOG = 128;
+
+	// delay before accepting again after accept failed, doubled on each
+	// consecutive failure
+	private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+	private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+	private final UnixSocketAddress address;
+	private final ConnectionHandler handler;
+	private final int loops;
+	private final Balancing balancing;
+	private final int backlog;
+
+	private volatile boolean closed;
+
+	private final Object stateLock = new Object();
+
+	// -- The following fields are protected by stateLock
+	private boolean started;
+	private UnixServerSocketChannel ssc;
+	private Reactor acceptor;
+	private List<Reactor> reactors = Collections.emptyList();
+
+	// acceptor thread only
+	private int next;
+	private long acceptBackoffMillis;
+
+	public UnixServer(UnixSocketAddress address, ConnectionHandler handler) {
+		this(address, handler, Runtime.getRuntime().availableProcessors(), Balancing.ROUND_ROBIN, DEFAULT_BACKLOG);
+	}
+
+	/**
+	 * @param address the address to bind
+	 * @param handler serves the connections of all reactors
+	 * @param loops number of reactors
+	 * @param balancing assignment of accepted connections to reactors
+	 * @param backlog listen backlog, zero or less for the default
+	 */
+	public UnixServer(UnixSocketAddress address, ConnectionHandler handler, int loops, Balancing balancing, int backlog) {
+		if (address == null || handler == null || balancing == null)
+			throw new NullPointerException();
+		if (loops < 1)
+			throw new IllegalArgumentException("loops < 1");
+		this.address = address;
+		this.handler = handler;
+		this.loops = loops;
+		this.balancing = balancing;
+		this.backlog = backlog > 0 ? backlog : DEFAULT_BACKLOG;
+	}
+
+	/**
+	 * Binds the address and starts the reactor and acceptor threads.
+	 *
+	 * @throws IllegalStateException if the server has already been started
+	 */
+	public UnixServer start() throws IOException {
+		synchronized (stateLock) {
+			if (closed)
+				throw new ClosedChannelException();
+			if (started)
+				throw new IllegalStateException("Already started");
+			started = true;
+			List<Reactor> list = new ArrayList<>(loops);
+			UnixServerSocketChannel ch = UnixServerSocketChannel.open();
+			try {
+				ch.bind(address, backlog);
+				ch.configureBlocking(false);
+				for (int i = 0; i < loops; i++)
+					list.add(new Reactor(this, handler, "unix-reactor-" + i, -1));
+				acceptor = new Reactor(this, handler, "unix-acceptor", ch.getFDVal());
+			} catch (IOException | RuntimeException x) {
+				for (Reactor r : list)
+					r.release();
+				ch.close();
+				throw x;
+			}
+			ssc = ch;
+			reactors = Collections.unmodifiableList(list);
+			for (Reactor r : list)
+				r.start();
+			acceptor.start();
+		}
+		return this;
+	}
+
+	public UnixSocketAddress localAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the reactors serving connections, empty until the server has
+	 * been started.
+	 */
+	public List<Reactor> reactors() {
+		synchronized (stateLock) {
+			return reactors;
+		}
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	// Invoked on the acceptor thread when the listening socket is readable.
+	// The listening socket is level-triggered, so when accept fails, for
+	// example with EMFILE, it is removed from the acceptor for a backoff
+	// period instead of being reported ready again immediately.
+	void acceptReady() {
+		List<Reactor> list = reactors;
+		try {
+			for (int i = 0; i < ACCEPT_BATCH; i++) {
+				UnixSocketChannelImpl ch = (UnixSocketChannelImpl) ssc.acceptNonBlocking();
+				if (ch == null)
+					break;
+				acceptBackoffMillis = 0;
+				choose(list).assign(ch);
+			}
+		} catch (IOException x) {
+			if (closed)
+				return;
+			// report the first failure of a series only
+			if (acceptBackoffMillis == 0) {
+				acceptBackoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+				Reactor.uncaught(x);
+			} else {
+				acceptBackoffMillis = Math.min(2 * acceptBackoffMillis, MAX_ACCEPT_BACKOFF_MILLIS);
+			}
+			acceptor.pauseAccept(acceptBackoffMillis);
+		}
+	}
+
+	private Reactor choose(List<Reactor> list) {
+		int n = list.size();
+		if (balancing == Balancing.ROUND_ROBIN) {
+			Reactor r = list.get(next);
+			next = (next + 1 == n) ? 0 : next + 1;
+			return r;
+		}
+		Reactor best = list.get(0);
+		int min = best.load();
+		for (int i = 1; i < n && min > 0; i++) {
+			Reactor r = list.get(i);
+			int l = r.load();
+			if (l < min) {
+				best = r;
+				min = l;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Stops accepting, closes the listening socket and all connections and
+	 * waits for the reactor threads to terminate, unless invoked on one of
+	 * them.
+	 */
+	@Override
+	public void close() throws IOException {
+		UnixServerSocketChannel ch;
+		Reactor a;
+		List<Reactor> list;
+		synchronized (stateLock) {
+			if (closed)
+				return;
+			closed = true;
+			ch = ssc;
+			a = acceptor;
+			list = reactors;
+		}
+		boolean interrupted = false;
+		try {
+			if (a != null) {
+				a.stop();
+				try {
+					a.join();
+				} catch (InterruptedException x) {
+					interrupted = true;
+				}
+			}
+			if (ch != null)
+				ch.close();
+			for (Reactor r : list)
+				r.stop();
+			for (Reactor r : list) {
+				try {
+					r.join();
+				} catch (InterruptedException x) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "UnixServer[" + address + ", loops=" + loops + ", " + balancing + (closed ? ", closed" : "") + "]";
+	}
+
+}
@@ -0,0 +1,43 @@
+package net.jzajic.graalvm.socket.frame;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel that returns the bytes of an array, at most chunk bytes per
+ * read, followed by end-of-stream.
+ */
+class ChunkedChannel implements ReadableByteChannel {
+
+	private final ByteBuffer src;
+	private final int chunk;
+	private boolean open = true;
+
+	ChunkedChannel(byte[] bytes, int chunk) {
+		this.src = ByteBuffer.wrap(bytes);
+		this.chunk = chunk;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) {
+		if (!src.hasRemaining())
+			return -1;
+		int n = Math.min(chunk, Math.min(src.remaining(), dst.remaining()));
+		ByteBuffer slice = src.duplicate();
+		slice.limit(slice.position() + n);
+		dst.put(slice);
+		src.position(src.position() + n);
+		return n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+}
@@ -0,0 +1,120 @@
+package net.jzajic.graalvm.socket.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class FrameFormatTest {
+
+	private static ByteBuffer bytes(int... values) {
+		ByteBuffer b = ByteBuffer.allocate(values.length);
+		for (int v : values)
+			b.put((byte) v);
+		b.flip();
+		return b;
+	}
+
+	private static long decode(FrameFormat format, ByteBuffer src) throws ProtocolException {
+		return format.decode(src, src.position(), src.limit());
+	}
+
+	@Test
+	public void varintOfMaximumLengthTakesFiveBytes() throws Exception {
+		FrameFormat format = FrameFormat.varint(Integer.MAX_VALUE);
+		ByteBuffer b = ByteBuffer.allocate(format.maxPrefixLength());
+		format.encode(Integer.MAX_VALUE, b);
+		assertEquals(5, b.position());
+		b.flip();
+		long prefix = decode(format, b);
+		assertEquals(5, prefix & 0xFF);
+		assertEquals(Integer.MAX_VALUE, prefix >>> 8);
+	}
+
+	@Test
+	public void varintRoundTrip() throws Exception {
+		FrameFormat format = FrameFormat.varint(Integer.MAX_VALUE);
+		int[] lengths = { 0, 1, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456 };
+		int[] sizes = { 1, 1, 1, 2, 2, 3, 3, 4, 4, 5 };
+		for (int i = 0; i < lengths.length; i++) {
+			ByteBuffer b = ByteBuffer.allocate(5);
+			format.encode(lengths[i], b);
+			assertEquals(sizes[i], b.position());
+			b.flip();
+			long prefix = decode(format, b);
+			assertEquals(sizes[i], prefix & 0xFF);
+			assertEquals(lengths[i], prefix >>> 8);
+		}
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void varintWithContinuationBitOnFifthByteIsMalformed() throws Exception {
+		decode(FrameFormat.varint(Integer.MAX_VALUE), bytes(0x80, 0x80, 0x80, 0x80, 0x80, 0x00));
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void fiveByteVarintBeyondIntIsRejected() throws Exception {
+		// 2^35 - 1
+		decode(FrameFormat.varint(Integer.MAX_VALUE), bytes(0xFF, 0xFF, 0xFF, 0xFF, 0x7F));
+	}
+
+	@Test
+	public void incompleteVarintNeedsMoreBytes() throws Exception {
+		assertEquals(-1, decode(FrameFormat.varint(Integer.MAX_VALUE), bytes(0x80, 0x80)));
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void eightBytePrefixOverflowingToNegativeIsRejected() throws Exception {
+		FrameFormat format = FrameFormat.fixed(8, ByteOrder.BIG_ENDIAN, Integer.MAX_VALUE);
+		decode(format, bytes(0x80, 0, 0, 0, 0, 0, 0, 1));
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void littleEndianEightBytePrefixOverflowingToNegativeIsRejected() throws Exception {
+		FrameFormat format = FrameFormat.fixed(8, ByteOrder.LITTLE_ENDIAN, Integer.MAX_VALUE);
+		decode(format, bytes(1, 0, 0, 0, 0, 0, 0, 0x80));
+	}
+
+	@Test
+	public void fixedPrefixRoundTrip() throws Exception {
+		for (int size : new int[] { 2, 4, 8 }) {
+			for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+				FrameFormat format = FrameFormat.fixed(size, order, 0xFFFF);
+				ByteBuffer b = ByteBuffer.allocate(size);
+				format.encode(0xFEDC, b);
+				b.flip();
+				long prefix = decode(format, b);
+				assertEquals(size, prefix & 0xFF);
+				assertEquals(0xFEDC, prefix >>> 8);
+			}
+		}
+	}
+
+	@Test
+	public void lengthAboveMaximumIsRejected() throws Exception {
+		FrameFormat format = FrameFormat.fixed(4, ByteOrder.BIG_ENDIAN, 100);
+		try {
+			decode(format, bytes(0, 0, 0, 101));
+			fail();
+		} catch (ProtocolException x) {
+			// expected
+		}
+		try {
+			format.encode(101, ByteBuffer.allocate(4));
+			fail();
+		} catch (IllegalArgumentException x) {
+			// expected
+		}
+		assertEquals(100L << 8 | 4, decode(format, bytes(0, 0, 0, 100)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void twoBytePrefixCannotHoldLargerMaximum() {
+		FrameFormat.fixed(2, ByteOrder.BIG_ENDIAN, 0x10000);
+	}
+
+}
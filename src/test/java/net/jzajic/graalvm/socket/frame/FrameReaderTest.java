@@ -0,0 +1,130 @@
+package net.jzajic.graalvm.socket.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class FrameReaderTest {
+
+	private static final FrameFormat FIXED = FrameFormat.fixed(4, ByteOrder.BIG_ENDIAN, 64);
+	private static final FrameFormat VARINT = FrameFormat.varint(200);
+
+	// Encodes frames with payloads of the given lengths, payload byte i of
+	// frame f is (f + i)
+	private static byte[] frames(FrameFormat format, int... lengths) {
+		ByteBuffer b = ByteBuffer.allocate(4096);
+		for (int f = 0; f < lengths.length; f++) {
+			format.encode(lengths[f], b);
+			for (int i = 0; i < lengths[f]; i++)
+				b.put((byte) (f + i));
+		}
+		byte[] bytes = new byte[b.position()];
+		b.flip();
+		b.get(bytes);
+		return bytes;
+	}
+
+	private static void assertFrame(int f, int length, ByteBuffer payload) {
+		assertEquals(length, payload.remaining());
+		for (int i = 0; i < length; i++)
+			assertEquals((byte) (f + i), payload.get(payload.position() + i));
+	}
+
+	@Test
+	public void readsFramesDeliveredByteByByte() throws Exception {
+		int[] lengths = { 0, 1, 64, 17 };
+		FrameReader r = new FrameReader(new ChunkedChannel(frames(FIXED, lengths), 1), FIXED);
+		for (int f = 0; f < lengths.length; f++)
+			assertFrame(f, lengths[f], r.read());
+		assertNull(r.read());
+		assertTrue(r.isEndOfStream());
+	}
+
+	@Test
+	public void framesCrossingTheEndOfTheBufferAreCompacted() throws Exception {
+		// the receive buffer holds exactly one maximum frame (4 + 64 bytes),
+		// so the later frames wrap past its end in every chunking
+		int[] lengths = { 30, 40, 64, 5, 64, 63, 1, 64, 0, 50 };
+		byte[] bytes = frames(FIXED, lengths);
+		for (int chunk : new int[] { 1, 3, 7, 32, 68, 1000 }) {
+			FrameReader r = new FrameReader(new ChunkedChannel(bytes, chunk), FIXED);
+			for (int f = 0; f < lengths.length; f++)
+				assertFrame(f, lengths[f], r.read());
+			assertNull(r.read());
+			assertEquals(0, r.buffered());
+		}
+	}
+
+	@Test
+	public void varintPrefixesCrossingTheEndOfTheBufferAreCompacted() throws Exception {
+		int[] lengths = { 150, 127, 128, 200, 3, 200, 199 };
+		byte[] bytes = frames(VARINT, lengths);
+		for (int chunk : new int[] { 1, 5, 64, 202 }) {
+			FrameReader r = new FrameReader(new ChunkedChannel(bytes, chunk), VARINT);
+			for (int f = 0; f < lengths.length; f++)
+				assertFrame(f, lengths[f], r.read());
+			assertNull(r.read());
+		}
+	}
+
+	@Test
+	public void endOfStreamWithinPrefix() throws Exception {
+		byte[] bytes = frames(FIXED, 10);
+		byte[] truncated = new byte[14 + 2];
+		System.arraycopy(bytes, 0, truncated, 0, 14);
+		System.arraycopy(bytes, 0, truncated, 14, 2);
+		FrameReader r = new FrameReader(new ChunkedChannel(truncated, 100), FIXED);
+		assertFrame(0, 10, r.read());
+		try {
+			r.read();
+			fail();
+		} catch (EOFException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void endOfStreamWithinVarintPrefix() throws Exception {
+		FrameReader r = new FrameReader(new ChunkedChannel(new byte[] { (byte) 0x80 }, 1), VARINT);
+		try {
+			r.read();
+			fail();
+		} catch (EOFException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void endOfStreamWithinBody() throws Exception {
+		byte[] bytes = frames(FIXED, 10);
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		FrameReader r = new FrameReader(new ChunkedChannel(truncated, 3), FIXED);
+		try {
+			r.read();
+			fail();
+		} catch (EOFException x) {
+			// expected
+		}
+	}
+
+	@Test(expected = ProtocolException.class)
+	public void frameAboveMaximumIsRejected() throws Exception {
+		byte[] bytes = { 0, 0, 0, 65 };
+		new FrameReader(new ChunkedChannel(bytes, 4), FIXED).read();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bufferMustHoldAMaximumFrame() {
+		new FrameReader(new ChunkedChannel(new byte[0], 1), FIXED, 67);
+	}
+
+}
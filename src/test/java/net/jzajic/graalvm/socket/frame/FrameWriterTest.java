@@ -0,0 +1,95 @@
+package net.jzajic.graalvm.socket.frame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+
+import org.junit.Test;
+
+public class FrameWriterTest {
+
+	/**
+	 * A channel that takes at most chunk bytes per write, like a
+	 * non-blocking socket with a small send buffer.
+	 */
+	static class ChunkedSink implements GatheringByteChannel {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int chunk;
+
+		ChunkedSink(int chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			long n = 0;
+			for (int i = offset; i < offset + length; i++)
+				n += write(srcs[i]);
+			return n;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = Math.min(chunk, src.remaining());
+			for (int i = 0; i < n; i++)
+				out.write(src.get());
+			chunk -= n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void partialWriteIsCompletedByFlush() throws Exception {
+		FrameFormat format = FrameFormat.varint(1000);
+		ChunkedSink sink = new ChunkedSink(3);
+		FrameWriter w = new FrameWriter(sink, format);
+		byte[] payload = new byte[300];
+		for (int i = 0; i < payload.length; i++)
+			payload[i] = (byte) i;
+		assertFalse(w.write(ByteBuffer.wrap(payload)));
+		assertTrue(w.isPending());
+		while (!w.flush())
+			sink.chunk = 50;
+		assertFalse(w.isPending());
+
+		byte[] written = sink.out.toByteArray();
+		FrameReader r = new FrameReader(new ChunkedChannel(written, 7), format);
+		ByteBuffer frame = r.read();
+		byte[] read = new byte[frame.remaining()];
+		frame.get(read);
+		assertArrayEquals(payload, read);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void frameAboveMaximumIsRejected() throws Exception {
+		FrameFormat format = FrameFormat.fixed(2, ByteOrder.BIG_ENDIAN, 10);
+		new FrameWriter(new ChunkedSink(100), format).write(ByteBuffer.allocate(11));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void writeWhilePendingIsRejected() throws Exception {
+		FrameWriter w = new FrameWriter(new ChunkedSink(1), FrameFormat.varint(10));
+		w.write(ByteBuffer.allocate(5));
+		w.write(ByteBuffer.allocate(5));
+	}
+
+}